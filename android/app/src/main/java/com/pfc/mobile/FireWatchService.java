@@ -0,0 +1,281 @@
+package com.pfc.mobile;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.getcapacitor.JSObject;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Foreground service that keeps a fire-watch session alive with the screen
+ * off or the app in the background.
+ *
+ * The plugin lends its {@link TopdonCameraManager} for the duration of the
+ * session; the service only holds it weakly, since the USB permission and
+ * monitor stay bound to the activity that created them. The service holds a
+ * partial wake lock, renewed for as long as the session runs, drives the
+ * manager's adaptive sampling and shows alarms as notifications. However the
+ * session ends, the manager's fire watch is stopped, which sends the
+ * "fireWatchStopped" event; ends the user did not ask for (the activity was
+ * destroyed, the system stopped the service) are also shown as a
+ * notification. One camera is watched in the background at a time; starting
+ * a session on another camera moves it there.
+ */
+public class FireWatchService extends Service {
+    private static final String TAG = "FireWatchService";
+
+    private static final String CHANNEL_ID = "fire_watch";
+    private static final String ALARM_CHANNEL_ID = "fire_watch_alarm";
+    private static final int NOTIFICATION_ID = 4201;
+    private static final int ALARM_NOTIFICATION_ID = 4202;
+
+    private static final String ACTION_STOP = "com.pfc.mobile.action.STOP_FIRE_WATCH";
+    private static final String EXTRA_IDLE_FPS = "idleFps";
+    private static final String EXTRA_ACTIVE_FPS = "activeFps";
+    private static final String EXTRA_CHANGE_CELSIUS = "changeCelsius";
+    private static final String EXTRA_HOLD_MS = "holdMs";
+
+    /** Reasons reported with the "fireWatchStopped" event */
+    public static final String REASON_STOPPED = "stopped";
+    public static final String REASON_NOTIFICATION = "notification";
+    public static final String REASON_APP_CLOSED = "appClosed";
+    public static final String REASON_SYSTEM = "system";
+
+    /**
+     * The wake lock is re-acquired well before it times out; the timeout only
+     * matters if the process stops renewing it
+     */
+    private static final long WAKE_LOCK_TIMEOUT_MS = 60 * 60 * 1000L;
+    private static final long WAKE_LOCK_RENEW_MS = 30 * 60 * 1000L;
+
+    private static volatile WeakReference<TopdonCameraManager> session = new WeakReference<>(null);
+    private static volatile boolean running;
+    private static volatile String stopReason;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private PowerManager.WakeLock wakeLock;
+
+    private final Runnable renewWakeLock = new Runnable() {
+        @Override
+        public void run() {
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+            handler.postDelayed(this, WAKE_LOCK_RENEW_MS);
+        }
+    };
+
+    /**
+     * Start a session on {@code manager}: processing drops to {@code idleFps}
+     * while the scene is stable and returns to {@code activeFps} on change
+     */
+    public static void start(Context context, TopdonCameraManager manager, int idleFps, int activeFps,
+                             float changeCelsius, long holdMillis) {
+        TopdonCameraManager previous = session.get();
+        if (previous != null && previous != manager) {
+            previous.stopAdaptiveSampling();
+        }
+        session = new WeakReference<>(manager);
+        stopReason = null;
+        Intent intent = new Intent(context, FireWatchService.class);
+        intent.putExtra(EXTRA_IDLE_FPS, idleFps);
+        intent.putExtra(EXTRA_ACTIVE_FPS, activeFps);
+        intent.putExtra(EXTRA_CHANGE_CELSIUS, changeCelsius);
+        intent.putExtra(EXTRA_HOLD_MS, holdMillis);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    /**
+     * End the session; {@code reason} is reported with the stop event
+     */
+    public static void stop(Context context, String reason) {
+        stopReason = reason;
+        context.stopService(new Intent(context, FireWatchService.class));
+    }
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * True while a session runs on {@code manager}
+     */
+    public static boolean isWatching(TopdonCameraManager manager) {
+        return running && session.get() == manager;
+    }
+
+    /**
+     * Show a tripped alarm as a heads-up notification (the WebView may be asleep)
+     */
+    public static void notifyAlarm(Context context, JSObject alarm) {
+        if (!running || !alarm.optBoolean("tripped", false)) {
+            return;
+        }
+        String zone = alarm.optString("zone", FireWatchMonitor.ZONE_FRAME);
+        String text = FireWatchMonitor.KIND_RATE_OF_RISE.equals(alarm.optString("kind", ""))
+                ? String.format("%s: rising %.1f °C/s (%.1f °C)", zone,
+                        alarm.optDouble("rate", 0), alarm.optDouble("temperature", 0))
+                : String.format("%s: %.1f °C", zone, alarm.optDouble("temperature", 0));
+
+        Notification notification = new NotificationCompat.Builder(context, ALARM_CHANNEL_ID)
+                .setContentTitle("Alarme surveillance feu")
+                .setContentText(text)
+                .setSmallIcon(context.getApplicationInfo().icon)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setContentIntent(openAppIntent(context))
+                .setAutoCancel(true)
+                .build();
+        notificationManager(context).notify(ALARM_NOTIFICATION_ID, notification);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        createChannels(this);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopReason = REASON_NOTIFICATION;
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        TopdonCameraManager manager = session.get();
+        if (intent == null || manager == null) {
+            // No camera to watch (e.g. the process was restarted): nothing to do
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        startForeground(NOTIFICATION_ID, buildSessionNotification());
+        running = true;
+
+        if (wakeLock == null) {
+            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "pfc:fire-watch");
+            wakeLock.setReferenceCounted(false);
+        }
+        handler.removeCallbacks(renewWakeLock);
+        renewWakeLock.run();
+
+        manager.startAdaptiveSampling(
+                intent.getIntExtra(EXTRA_IDLE_FPS, 1),
+                intent.getIntExtra(EXTRA_ACTIVE_FPS, 25),
+                intent.getFloatExtra(EXTRA_CHANGE_CELSIUS, 0.5f),
+                intent.getLongExtra(EXTRA_HOLD_MS, 10000L));
+        Log.d(TAG, "Fire watch session started");
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        boolean wasRunning = running;
+        running = false;
+        String reason = stopReason != null ? stopReason : REASON_SYSTEM;
+        stopReason = null;
+        TopdonCameraManager manager = session.get();
+        session = new WeakReference<>(null);
+        if (manager != null) {
+            manager.stopAdaptiveSampling();
+            manager.stopFireWatch(reason);
+        }
+        handler.removeCallbacks(renewWakeLock);
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+        if (wasRunning && !REASON_STOPPED.equals(reason) && !REASON_NOTIFICATION.equals(reason)) {
+            notifyStopped(reason);
+        }
+        Log.d(TAG, "Fire watch session stopped: " + reason);
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * The watch ended without the user asking: nobody may be looking at the app
+     */
+    private void notifyStopped(String reason) {
+        String text = REASON_APP_CLOSED.equals(reason)
+                ? "L'application a été fermée, la zone n'est plus surveillée"
+                : "La session a été interrompue, la zone n'est plus surveillée";
+        Notification notification = new NotificationCompat.Builder(this, ALARM_CHANNEL_ID)
+                .setContentTitle("Surveillance feu arrêtée")
+                .setContentText(text)
+                .setSmallIcon(getApplicationInfo().icon)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setContentIntent(openAppIntent(this))
+                .setAutoCancel(true)
+                .build();
+        notificationManager(this).notify(ALARM_NOTIFICATION_ID, notification);
+    }
+
+    private Notification buildSessionNotification() {
+        Intent stopIntent = new Intent(this, FireWatchService.class);
+        stopIntent.setAction(ACTION_STOP);
+        PendingIntent stop = PendingIntent.getService(this, 0, stopIntent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Surveillance feu en cours")
+                .setContentText("La caméra thermique surveille la zone")
+                .setSmallIcon(getApplicationInfo().icon)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .setContentIntent(openAppIntent(this))
+                .addAction(0, "Arrêter", stop)
+                .build();
+    }
+
+    private static PendingIntent openAppIntent(Context context) {
+        Intent launch = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (launch == null) {
+            return null;
+        }
+        launch.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getActivity(context, 0, launch,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private static void createChannels(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationManager manager = notificationManager(context);
+        NotificationChannel session = new NotificationChannel(CHANNEL_ID, "Surveillance feu",
+                NotificationManager.IMPORTANCE_LOW);
+        session.setDescription("Session de surveillance après travaux par point chaud");
+        manager.createNotificationChannel(session);
+
+        NotificationChannel alarms = new NotificationChannel(ALARM_CHANNEL_ID, "Alarmes surveillance feu",
+                NotificationManager.IMPORTANCE_HIGH);
+        alarms.setDescription("Seuils de température ou de montée en température dépassés");
+        manager.createNotificationChannel(alarms);
+    }
+
+    private static NotificationManager notificationManager(Context context) {
+        return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+}
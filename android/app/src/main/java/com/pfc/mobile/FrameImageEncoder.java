@@ -0,0 +1,196 @@
+package com.pfc.mobile;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Base64;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes ARGB frames to JPEG/WebP/PNG with one reused Bitmap and output buffer.
+ *
+ * Two transports are supported:
+ * - "base64": the encoded bytes go into the payload as a string (legacy)
+ * - "file": the bytes are written into one of a small ring of files in the
+ *   app cache and only the absolute path goes over the bridge; JS loads it
+ *   with Capacitor.convertFileSrc(path)
+ *
+ * The ring files stay open, so the file transport allocates nothing per
+ * frame besides the compressor's own work. Not thread-safe: give each
+ * producer (stream, capture) its own instance.
+ */
+public class FrameImageEncoder {
+    private static final String TAG = "FrameImageEncoder";
+
+    public static final String TRANSPORT_BASE64 = "base64";
+    public static final String TRANSPORT_FILE = "file";
+
+    public static final String ENCODING_JPEG = "jpeg";
+    public static final String ENCODING_WEBP = "webp";
+    public static final String ENCODING_PNG = "png";
+
+    private static final int DEFAULT_QUALITY = 85;
+
+    private final int width;
+    private final int height;
+    private final Bitmap bitmap;
+    private final ReusableOutputStream output;
+
+    private final File directory;
+    private final String filePrefix;
+    private final RandomAccessFile[] ringFiles;
+    private final String[] ringPaths;
+    private int ringIndex;
+
+    private String transport = TRANSPORT_BASE64;
+    private String encoding = ENCODING_JPEG;
+    private Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.JPEG;
+    private int quality = DEFAULT_QUALITY;
+
+    /**
+     * @param directory where ring files are written (created if missing)
+     * @param ringSize  number of files reused round-robin; must exceed the
+     *                  number of frames JS may still be loading
+     */
+    public FrameImageEncoder(int width, int height, File directory, String filePrefix, int ringSize) {
+        this.width = width;
+        this.height = height;
+        this.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        // Worst case of an uncompressed ARGB frame, so the buffer never grows
+        this.output = new ReusableOutputStream(width * height * 4);
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.ringFiles = new RandomAccessFile[Math.max(1, ringSize)];
+        this.ringPaths = new String[ringFiles.length];
+    }
+
+    /**
+     * Select transport, encoding and quality; unknown values fall back to defaults
+     */
+    public void configure(String transport, String encoding, int quality) {
+        String previousEncoding = this.encoding;
+        this.transport = TRANSPORT_FILE.equals(transport) ? TRANSPORT_FILE : TRANSPORT_BASE64;
+        if (ENCODING_PNG.equals(encoding)) {
+            this.encoding = ENCODING_PNG;
+            this.compressFormat = Bitmap.CompressFormat.PNG;
+        } else if (ENCODING_WEBP.equals(encoding)) {
+            this.encoding = ENCODING_WEBP;
+            this.compressFormat = webpFormat();
+        } else {
+            this.encoding = ENCODING_JPEG;
+            this.compressFormat = Bitmap.CompressFormat.JPEG;
+        }
+        this.quality = Math.max(1, Math.min(100, quality));
+        if (!this.encoding.equals(previousEncoding)) {
+            // Ring file names carry the extension
+            close();
+        }
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Encode {@code argb} (width*height pixels) and add the result to {@code out}:
+     * "image" (base64) or "path" (file), plus "mimeType", "bytes" and "encodeMs".
+     */
+    public void encode(int[] argb, JSObject out) throws IOException {
+        long start = System.nanoTime();
+
+        bitmap.setPixels(argb, 0, width, 0, 0, width, height);
+        output.reset();
+        if (!bitmap.compress(compressFormat, quality, output)) {
+            throw new IOException("Bitmap.compress failed for " + encoding);
+        }
+
+        if (TRANSPORT_FILE.equals(transport)) {
+            out.put("path", writeToRing());
+        } else {
+            out.put("image", Base64.encodeToString(output.buffer(), 0, output.size(), Base64.NO_WRAP));
+        }
+
+        out.put("mimeType", "image/" + encoding);
+        out.put("bytes", output.size());
+        out.put("encodeMs", (System.nanoTime() - start) / 1000000.0);
+    }
+
+    /**
+     * Bytes of the last encoded image, backed by the reused buffer: valid
+     * until the next {@link #encode} call
+     */
+    public ByteBuffer lastEncoded() {
+        return ByteBuffer.wrap(output.buffer(), 0, output.size());
+    }
+
+    /**
+     * Close the ring files; they are left on disk for the next session to reuse
+     */
+    public void close() {
+        for (int i = 0; i < ringFiles.length; i++) {
+            if (ringFiles[i] != null) {
+                try {
+                    ringFiles[i].close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close " + ringPaths[i], e);
+                }
+                ringFiles[i] = null;
+            }
+        }
+    }
+
+    private String writeToRing() throws IOException {
+        int slot = ringIndex;
+        ringIndex = (ringIndex + 1) % ringFiles.length;
+
+        RandomAccessFile file = ringFiles[slot];
+        if (file == null) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            File target = new File(directory, filePrefix + slot + "." + extension());
+            file = new RandomAccessFile(target, "rw");
+            ringFiles[slot] = file;
+            ringPaths[slot] = target.getAbsolutePath();
+        }
+        file.seek(0);
+        file.write(output.buffer(), 0, output.size());
+        file.setLength(output.size());
+        return ringPaths[slot];
+    }
+
+    private String extension() {
+        return ENCODING_JPEG.equals(encoding) ? "jpg" : encoding;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * ByteArrayOutputStream that exposes its buffer instead of copying it
+     */
+    private static class ReusableOutputStream extends ByteArrayOutputStream {
+        ReusableOutputStream(int capacity) {
+            super(capacity);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pfc.mobile;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Adds the per-pixel temperature matrix of a frame to a payload, encoded by
+ * {@link TemperatureMatrixCodec}, over the same transports as
+ * {@link FrameImageEncoder}: a base64 string, or a path into a small ring of
+ * cache files that JS fetches with Capacitor.convertFileSrc(path) and wraps
+ * as a typed array. Not thread-safe: one instance per producer.
+ */
+public class TemperatureMatrixEncoder {
+    private static final String TAG = "TemperatureMatrixEncoder";
+
+    /** No matrix in the payload */
+    public static final int NONE = -1;
+
+    private final TemperatureMatrixCodec codec;
+    private final float rawPerKelvin;
+    private final File directory;
+    private final String filePrefix;
+    private final RandomAccessFile[] ringFiles;
+    private final String[] ringPaths;
+    private int ringIndex;
+
+    private String transport = FrameImageEncoder.TRANSPORT_BASE64;
+    private int flags = TemperatureMatrixCodec.DELTA | TemperatureMatrixCodec.DEFLATE;
+
+    public TemperatureMatrixEncoder(int width, int height, float rawPerKelvin,
+                                    File directory, String filePrefix, int ringSize) {
+        this.codec = new TemperatureMatrixCodec(width, height);
+        this.rawPerKelvin = rawPerKelvin;
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.ringFiles = new RandomAccessFile[Math.max(1, ringSize)];
+        this.ringPaths = new String[ringFiles.length];
+    }
+
+    /**
+     * @param flags {@link TemperatureMatrixCodec#DELTA} and/or {@link TemperatureMatrixCodec#DEFLATE}
+     */
+    public void configure(String transport, int flags) {
+        this.transport = FrameImageEncoder.TRANSPORT_FILE.equals(transport)
+                ? FrameImageEncoder.TRANSPORT_FILE : FrameImageEncoder.TRANSPORT_BASE64;
+        this.flags = flags & (TemperatureMatrixCodec.DELTA | TemperatureMatrixCodec.DEFLATE);
+    }
+
+    /**
+     * Put "matrix": {width, height, unit "centikelvin", delta, compression
+     * ("deflate" or "none"), bytes, encodeMs, and "data" (base64) or "path"}
+     * into {@code out}
+     */
+    public void encode(ThermalFrame frame, JSObject out) throws IOException {
+        long start = System.nanoTime();
+        int length = codec.encode(frame, rawPerKelvin, flags);
+
+        JSObject matrix = new JSObject();
+        matrix.put("width", codec.getWidth());
+        matrix.put("height", codec.getHeight());
+        matrix.put("unit", "centikelvin");
+        matrix.put("delta", (flags & TemperatureMatrixCodec.DELTA) != 0);
+        matrix.put("compression", (flags & TemperatureMatrixCodec.DEFLATE) != 0 ? "deflate" : "none");
+        matrix.put("bytes", length);
+        if (FrameImageEncoder.TRANSPORT_FILE.equals(transport)) {
+            matrix.put("path", writeToRing(length));
+        } else {
+            matrix.put("data", Base64.encodeToString(codec.buffer(), 0, length, Base64.NO_WRAP));
+        }
+        matrix.put("encodeMs", (System.nanoTime() - start) / 1000000.0);
+        out.put("matrix", matrix);
+    }
+
+    /**
+     * Close the ring files and the compressor
+     */
+    public void close() {
+        for (int i = 0; i < ringFiles.length; i++) {
+            if (ringFiles[i] != null) {
+                try {
+                    ringFiles[i].close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close " + ringPaths[i], e);
+                }
+                ringFiles[i] = null;
+            }
+        }
+        codec.release();
+    }
+
+    private String writeToRing(int length) throws IOException {
+        int slot = ringIndex;
+        ringIndex = (ringIndex + 1) % ringFiles.length;
+
+        RandomAccessFile file = ringFiles[slot];
+        if (file == null) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            File target = new File(directory, filePrefix + slot + ".bin");
+            file = new RandomAccessFile(target, "rw");
+            ringFiles[slot] = file;
+            ringPaths[slot] = target.getAbsolutePath();
+        }
+        file.seek(0);
+        file.write(codec.buffer(), 0, length);
+        file.setLength(length);
+        return ringPaths[slot];
+    }
+}
@@ -0,0 +1,295 @@
+package com.pfc.mobile;
+
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Pushes processed frames to JS at a bounded rate, with ack-based backpressure.
+ *
+ * The processor thread only copies the newest frame into a single pending
+ * slot. A separate delivery thread builds the payload and hands it to the
+ * {@link Listener}, then waits for JS to acknowledge that frame before
+ * sending the next one. While the WebView is busy, newer frames simply
+ * overwrite the pending slot, so at most two frame copies ever exist on the
+ * native side however slow the renderer is.
+ *
+ * With a change gate, image frames that the {@link FrameChangeDetector}
+ * finds unchanged are not rendered at all: JS gets the stats with
+ * "unchanged": true and keeps showing the last image. Ticks are acked like
+ * frames.
+ *
+ * A matrix encoder, if set, adds the per-pixel temperatures to every frame
+ * in either format (not to unchanged ticks).
+ */
+public class ThermalStream implements FrameProcessor.Stage {
+    private static final String TAG = "ThermalStream";
+
+    public static final String FORMAT_STATS = "stats";
+    public static final String FORMAT_IMAGE = "image";
+
+    /** Resend even without an ack after this long, in case an ack was lost */
+    private static final long DEFAULT_ACK_TIMEOUT_MS = 1000;
+
+    public interface Listener {
+        void onFrame(JSObject frame);
+    }
+
+    /**
+     * Adds the rendered image to an outgoing payload (delivery thread only)
+     */
+    public interface ImageEncoder {
+        void encode(ThermalFrame frame, FrameStats stats, JSObject out);
+    }
+
+    private final Object lock = new Object();
+    private final Listener listener;
+    private final ImageEncoder imageEncoder;
+    private ImageEncoder matrixEncoder;
+    private final String format;
+    private final long intervalNanos;
+    private final long ackTimeoutNanos;
+
+    // Written by the processor thread, guarded by lock
+    private final ThermalFrame pendingFrame;
+    private final FrameStats pendingStats = new FrameStats();
+    private boolean hasPending;
+
+    // Owned by the delivery thread
+    private final ThermalFrame sendFrame;
+    private final FrameStats sendStats = new FrameStats();
+    private FrameChangeDetector changeDetector;
+    private long refreshNanos;
+    private long lastImageNanos;
+    private volatile long unchangedFrames;
+    private volatile boolean invalidated;
+
+    // Guarded by lock
+    private long awaitingAckId;
+    private long lastSentNanos;
+    private long droppedFrames;
+    private long sentFrames;
+    private boolean running;
+    private Thread deliveryThread;
+
+    public ThermalStream(int width, int height, int fps, String format,
+                         ImageEncoder imageEncoder, Listener listener) {
+        this.pendingFrame = new ThermalFrame(width, height);
+        this.sendFrame = new ThermalFrame(width, height);
+        this.intervalNanos = 1000000000L / Math.max(1, fps);
+        this.ackTimeoutNanos = DEFAULT_ACK_TIMEOUT_MS * 1000000L;
+        this.format = FORMAT_STATS.equals(format) ? FORMAT_STATS : FORMAT_IMAGE;
+        this.imageEncoder = imageEncoder;
+        this.listener = listener;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Skip rendering frames {@code detector} finds unchanged, but send a full
+     * image at least every {@code refreshMillis} (0 for never). Call before
+     * {@link #start}.
+     */
+    public void setChangeGate(FrameChangeDetector detector, long refreshMillis) {
+        this.changeDetector = detector;
+        this.refreshNanos = Math.max(0, refreshMillis) * 1000000L;
+    }
+
+    /**
+     * Add the temperature matrix to each payload with {@code encoder}
+     * (delivery thread). Call before {@link #start}.
+     */
+    public void setMatrixEncoder(ImageEncoder encoder) {
+        this.matrixEncoder = encoder;
+    }
+
+    /**
+     * The image would look different for the same frame (palette, span...):
+     * send the next one in full
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            deliveryThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    deliveryLoop();
+                }
+            }, "ThermalStreamDelivery");
+            deliveryThread.start();
+        }
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (lock) {
+            running = false;
+            t = deliveryThread;
+            deliveryThread = null;
+            lock.notifyAll();
+        }
+        if (t != null) {
+            try {
+                t.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * JS rendered the frame with this id; the next frame may be sent
+     */
+    public void acknowledge(long frameId) {
+        synchronized (lock) {
+            if (awaitingAckId != 0 && frameId >= awaitingAckId) {
+                awaitingAckId = 0;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public long getDroppedFrames() {
+        synchronized (lock) {
+            return droppedFrames;
+        }
+    }
+
+    /**
+     * Frames sent as "unchanged" ticks instead of images
+     */
+    public long getUnchangedFrames() {
+        return unchangedFrames;
+    }
+
+    public long getSentFrames() {
+        synchronized (lock) {
+            return sentFrames;
+        }
+    }
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            if (hasPending && awaitingAckId != 0) {
+                droppedFrames++;
+            }
+            pendingFrame.copyFrom(frame);
+            pendingStats.copyFrom(stats);
+            hasPending = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void deliveryLoop() {
+        while (true) {
+            long dropped;
+            synchronized (lock) {
+                if (!waitUntilSendable()) {
+                    return;
+                }
+                sendFrame.copyFrom(pendingFrame);
+                sendStats.copyFrom(pendingStats);
+                hasPending = false;
+                awaitingAckId = sendFrame.sequence;
+                lastSentNanos = System.nanoTime();
+                sentFrames++;
+                dropped = droppedFrames;
+            }
+
+            try {
+                listener.onFrame(buildPayload(dropped));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to deliver stream frame", e);
+            }
+        }
+    }
+
+    /**
+     * Block (holding lock) until a frame is pending, acked and due.
+     * Returns false once the stream is stopped.
+     */
+    private boolean waitUntilSendable() {
+        while (running) {
+            long now = System.nanoTime();
+            long ackWait = awaitingAckId == 0 ? 0 : lastSentNanos + ackTimeoutNanos - now;
+            long rateWait = lastSentNanos + intervalNanos - now;
+            long waitNanos = Math.max(ackWait, rateWait);
+
+            if (hasPending && waitNanos <= 0) {
+                return true;
+            }
+            try {
+                if (!hasPending) {
+                    lock.wait();
+                } else {
+                    lock.wait(Math.max(1, waitNanos / 1000000L));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private JSObject buildPayload(long dropped) {
+        JSObject data = new JSObject();
+        data.put("frameId", sendFrame.sequence);
+        data.put("timestamp", System.currentTimeMillis()
+                - (System.nanoTime() - sendFrame.timestampNanos) / 1000000L);
+        data.put("width", sendFrame.width);
+        data.put("height", sendFrame.height);
+        data.put("centerTemperature", sendStats.center);
+        data.put("minTemperature", sendStats.min);
+        data.put("maxTemperature", sendStats.max);
+        data.put("meanTemperature", sendStats.mean);
+        data.put("droppedFrames", dropped);
+        boolean unchanged = false;
+        if (FORMAT_IMAGE.equals(format) && imageEncoder != null) {
+            if (isUnchanged()) {
+                data.put("unchanged", true);
+                unchangedFrames++;
+                unchanged = true;
+            } else {
+                imageEncoder.encode(sendFrame, sendStats, data);
+            }
+        }
+        if (matrixEncoder != null && !unchanged) {
+            matrixEncoder.encode(sendFrame, sendStats, data);
+        }
+        return data;
+    }
+
+    /**
+     * Gate check for the frame about to be sent (delivery thread only)
+     */
+    private boolean isUnchanged() {
+        FrameChangeDetector detector = changeDetector;
+        if (detector == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (invalidated || (refreshNanos > 0 && now - lastImageNanos >= refreshNanos)) {
+            invalidated = false;
+            detector.reset();
+        }
+        if (detector.update(sendFrame, sendStats)) {
+            lastImageNanos = now;
+            return false;
+        }
+        return true;
+    }
+}
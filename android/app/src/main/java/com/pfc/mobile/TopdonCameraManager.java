@@ -1,13 +1,11 @@
 package com.pfc.mobile;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.hardware.usb.UsbDevice;
-import android.util.Base64;
 import android.util.Log;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.infisense.iruvc.ircmd.IRCMD;
 import com.infisense.iruvc.usb.USBMonitor;
@@ -16,194 +14,386 @@ import com.infisense.iruvc.uvc.UVCCamera;
 import com.infisense.iruvc.uvc.UVCResult;
 import com.infisense.iruvc.uvc.UVCType;
 
-import java.io.ByteArrayOutputStream;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * Manages Topdon TC001 thermal camera integration
  * Uses official Topdon SDK (libusbIrsdk)
  * 
  * FINAL VERSION - Based on actual SDK documentation
+ *
+ * One instance drives one camera; {@link TopdonCameraRegistry} owns the USB
+ * monitor and hands each attached device to its own manager.
  */
 public class TopdonCameraManager {
     private static final String TAG = "TopdonCameraManager";
-    
-    private Context context;
-    private USBMonitor usbMonitor;
-    private IRCMD ircmd;
-    private UVCCamera uvcCamera;
-    private boolean isInitialized = false;
-    private boolean isCameraConnected = false;
-    
-    private String lastError;
-
-    public TopdonCameraManager(Context context) {
-        this.context = context;
-    }
 
-    /**
-     * Initialize the USB monitor and thermal camera
-     */
-public void initialize(final InitializeCallback callback) {
-    if (isInitialized) {
-        callback.onSuccess("Already initialized");
-        return;
-    }
+    // TC001 sensor resolution
+    public static final int FRAME_WIDTH = 256;
+    public static final int FRAME_HEIGHT = 192;
 
-    // 🔥 Always do USBMonitor stuff on the main (UI) thread
-    new Handler(Looper.getMainLooper()).post(new Runnable() {
-        @Override
-        public void run() {
-            try {
-                Log.d(TAG, "Initializing Topdon thermal camera on UI thread...");
-                Log.d(TAG, "Context class = " + context.getClass().getName());
+    // Frame files JS may still be loading while new ones are written
+    private static final int STREAM_FILE_RING = 4;
+    private static final int CAPTURE_FILE_RING = 16;
 
-                // 👇 Make sure context is an Activity (we passed getActivity() in the plugin)
-                android.app.Activity activity = (android.app.Activity) context;
+    private static final long RELEASE_TIMEOUT_MS = 2000;
 
-                usbMonitor = new USBMonitor(activity, new USBMonitor.OnDeviceConnectListener() {
-                    @Override
-                    public void onAttach(UsbDevice device) {
-                        Log.d(TAG, "USB device attached: " + device.getDeviceName());
-                        requestPermissionAndConnect(device);
-                    }
+    // A reattach within this window reuses the UVCCamera native object
+    private static final long REATTACH_WINDOW_MS = 30000;
 
-                    @Override
-                    public void onGranted(UsbDevice usbDevice, boolean createNew) {
-                        Log.d(TAG, "USB permission granted for: " + usbDevice.getDeviceName());
-                        if (usbMonitor != null) {
-                            USBMonitor.UsbControlBlock ctrlBlock = usbMonitor.openDevice(usbDevice);
-                            if (ctrlBlock != null) {
-                                Log.d(TAG, "Got UsbControlBlock in onGranted, opening camera...");
-                                openCamera(ctrlBlock);
-                            } else {
-                                Log.e(TAG, "openDevice returned null UsbControlBlock");
-                            }
-                        }
-                    }
+    // Radiometric snapshots under files/snapshots, pruned on every write
+    public static final String SNAPSHOT_DIR = "snapshots";
+    public static final int SNAPSHOT_THUMBNAIL_QUALITY = 75;
+    private static final int SNAPSHOT_MAX_COUNT = 50;
+    private static final long SNAPSHOT_MAX_AGE_MS = 7L * 24 * 3600 * 1000;
 
-                    @Override
-                    public void onDettach(UsbDevice device) {
-                        Log.d(TAG, "USB device detached: " + device.getDeviceName());
-                        isCameraConnected = false;
-                        if (ircmd != null) {
-                            ircmd.onDestroy();
-                            ircmd = null;
-                        }
-                    }
+    // Processing rate while pre-warmed and no page has asked for the camera yet
+    private static final int PREWARM_FPS = 2;
+    
+    private final Context context;
 
-                    @Override
-                    public void onConnect(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock, boolean createNew) {
-                        Log.d(TAG, "USB device connected: " + device.getDeviceName());
-                        openCamera(ctrlBlock);
-                    }
+    // Registry slot: 0 for the first camera, names threads and cache files
+    private final int slot;
+    private final String filePrefix;
 
-                    @Override
-                    public void onDisconnect(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
-                        Log.d(TAG, "USB device disconnected: " + device.getDeviceName());
-                        isCameraConnected = false;
-                    }
+    // USB device name this pipeline is bound to, null until a camera attaches
+    private volatile String cameraId;
+    // Serial number of that camera once it could be read, kept across detaches
+    private volatile String deviceSerial;
+    private Runnable releaseListener;
 
-                    @Override
-                    public void onCancel(UsbDevice device) {
-                        Log.d(TAG, "USB permission cancelled for device: " + device.getDeviceName());
-                    }
-                });
+    // One main-thread Handler for every result/UI post
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-                // Register monitor on UI thread
-                usbMonitor.register();
-                isInitialized = true;
-                Log.d(TAG, "USB monitor registered successfully");
+    // Serializes all IRCMD/UVCCamera access and coalesces identical requests
+    private final CameraExecutor cameraExecutor;
+    private volatile IRCMD ircmd;
+    private volatile UVCCamera uvcCamera;
+    private volatile boolean isInitialized = false;
 
-                // 🔍 Check if a device is already connected
-                try {
-                    java.util.List<UsbDevice> devices = usbMonitor.getDeviceList();
-                    if (devices != null && !devices.isEmpty()) {
-                        UsbDevice device = devices.get(0);
-                        Log.d(TAG, "Found already connected USB device: " + device.getDeviceName());
-                        requestPermissionAndConnect(device); // will trigger onGranted/onConnect
-                    } else {
-                        Log.d(TAG, "No USB devices found at initialize()");
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error while checking existing USB devices", e);
-                }
-
-                // ✅ Report status
-                if (isCameraConnected) {
-                    callback.onSuccess("Thermal camera initialized");
-                } else {
-                    callback.onSuccess("USB monitor initialized, waiting for camera");
-                }
-
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to initialize thermal camera", e);
-                callback.onError("Initialization failed: " + e.getMessage());
-            }
+    // DETACHED -> PERMISSION_PENDING -> OPENING -> STREAMING, or ERROR
+    private final CameraStateMachine stateMachine = new CameraStateMachine(new CameraStateMachine.Listener() {
+        @Override
+        public void onStateChanged(CameraStateMachine.State previous, CameraStateMachine.State state,
+                                   String reason) {
+            onCameraStateChanged(previous, state, reason);
         }
     });
-}
-
-
+    private volatile StateListener stateListener;
+
+    // Bumped on every detach/attach so a stale teardown does not hit a reconnected camera
+    private int detachGeneration;
+
+    // Cold start: first initialize/prewarm after load or release, until the first frame
+    private volatile long coldStartNanos;
+    private volatile long coldToReadyNanos = -1;
+    private volatile boolean prewarmThrottled;
+
+    // Latest Y16 frame, shared lock-free between the USB callback and readers
+    private final FrameTripleBuffer frameBuffer = new FrameTripleBuffer(FRAME_WIDTH, FRAME_HEIGHT);
+
+    // Raw Y16 -> Celsius lookup table, shared by every reader
+    private final RadiometricConverter converter = new RadiometricConverter();
+
+    // Palette rendering, striped across cores; palette/span switchable at runtime
+    private final ParallelStripes renderStripes;
+    private final PaletteColorizer colorizer;
+
+    // Converts every new frame once and feeds the stages (stream, ...)
+    private final FrameProcessor frameProcessor = new FrameProcessor(frameBuffer, converter);
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    // Fire-watch zones, measured on every processed frame
+    private final RoiEngine roiEngine = new RoiEngine(FRAME_WIDTH, FRAME_HEIGHT, converter);
+
+    // Frame and zone temperature history, downsampled on query
+    private final TrendStore trendStore = new TrendStore(roiEngine);
+
+    // Optional denoising; the stream and readings opt in separately
+    private final TemporalFilter temporalFilter = new TemporalFilter(FRAME_WIDTH, FRAME_HEIGHT, converter);
+    private boolean filterEnabled;
+    private boolean filterStream;
+    private volatile boolean filterReadings;
+
+    private ThermalStream stream;
+    private FrameImageEncoder streamEncoder;
+    private TemperatureMatrixEncoder streamMatrixEncoder;
+    private FireWatchMonitor fireWatch;
+    private AlarmListener fireWatchListener;
+    private AdaptiveSampler sampler;
+    private ThermalRecorder recorder;
+
+    // Playback, owned by the camera thread
+    private ThermalRecordingPlayer player;
+    private RadiometricConverter playerConverter;
+    private final ThermalFrame playbackFrame = new ThermalFrame(FRAME_WIDTH, FRAME_HEIGHT);
+
+    // Read buffers owned by the camera thread
+    private final ThermalFrame readFrame = new ThermalFrame(FRAME_WIDTH, FRAME_HEIGHT);
+    private final FrameStats readStats = new FrameStats();
+    // Capture buffers and encoders per output scale, created on first use
+    private final int[][] capturePixels = new int[FrameUpscaler.MAX_SCALE + 1][];
+    private final FrameImageEncoder[] captureEncoders = new FrameImageEncoder[FrameUpscaler.MAX_SCALE + 1];
+    private TemperatureMatrixEncoder captureMatrixEncoder;
+
+    // Where frames come from: the USB camera unless a synthetic/replay source is set
+    private final UsbThermalSource usbSource = new UsbThermalSource(FRAME_WIDTH, FRAME_HEIGHT);
+    private ThermalFrameSource frameSource = usbSource;
 
+    /**
+     * Runs on the source thread for every frame: copy and publish only
+     */
+    private final ThermalFrameSource.Sink frameSink = new ThermalFrameSource.Sink() {
+        @Override
+        public void onFrame(byte[] data, int offset, long timestampNanos) {
+            metrics.onFrameArrived(timestampNanos);
+            if (frameBuffer.publish(data, offset, timestampNanos)) {
+                frameProcessor.signal();
+            }
+            stateMachine.onFrame(timestampNanos);
+        }
+    };
 
+    /**
+     * @param slot registry slot, keeps thread names and cache files of
+     *             concurrent cameras apart
+     */
+    public TopdonCameraManager(Context context, int slot) {
+        // Only used for app directories; must not pin the activity
+        this.context = context.getApplicationContext();
+        this.slot = slot;
+        this.filePrefix = slot == 0 ? "" : "cam" + slot + "_";
+        String suffix = slot == 0 ? "" : "-" + slot;
+        this.cameraExecutor = new CameraExecutor("ThermalCamera" + suffix, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        });
+        this.renderStripes = new ParallelStripes(ParallelStripes.defaultParallelism(), "ThermalRender" + suffix);
+        this.colorizer = new PaletteColorizer(converter, renderStripes);
+        frameProcessor.setMetrics(metrics);
+        routeStages();
+        usbSource.start(frameSink);
+    }
 
+    /**
+     * Start the camera ahead of any JS call: load the SDK's native libraries
+     * on the camera thread and throttle processing to {@link #PREWARM_FPS}
+     * until a page calls {@link #initialize}. The registry registers the USB
+     * monitor, so an attached camera is already streaming by then. Safe to
+     * call repeatedly.
+     */
+    public void prewarm(final String reason) {
+        if (isInitialized) {
+            return;
+        }
+        markColdStart();
+        Log.d(TAG, "Pre-warming camera (" + reason + ")");
+        cameraExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    // Static initializers load libusbIrsdk and friends
+                    Class.forName(UVCCamera.class.getName(), true, UVCCamera.class.getClassLoader());
+                    Class.forName(IRCMD.class.getName(), true, IRCMD.class.getClassLoader());
+                    Log.d(TAG, "Native libraries loaded in " + (System.nanoTime() - start) / 1000000L + " ms");
+                } catch (Throwable t) {
+                    Log.w(TAG, "Native library pre-load failed", t);
+                }
+            }
+        });
+        synchronized (this) {
+            if (sampler == null && frameProcessor.getFrameIntervalNanos() == 0) {
+                frameProcessor.setFrameIntervalNanos(1000000000L / PREWARM_FPS);
+                prewarmThrottled = true;
+            }
+        }
+    }
 
+    /**
+     * A page wants the camera: lift the pre-warm throttle. The USB side is
+     * started by {@link TopdonCameraRegistry#initialize}.
+     */
+    public void initialize() {
+        markColdStart();
+        synchronized (this) {
+            if (prewarmThrottled) {
+                prewarmThrottled = false;
+                frameProcessor.setFrameIntervalNanos(0);
+            }
+        }
+    }
 
+    private void markColdStart() {
+        if (coldStartNanos == 0) {
+            coldStartNanos = System.nanoTime();
+        }
+    }
 
+    /**
+     * Device name of the camera this pipeline drives, null before the first attach
+     */
+    public String getCameraId() {
+        return cameraId;
+    }
 
+    public int getSlot() {
+        return slot;
+    }
 
+    /**
+     * Bind to a USB device (registry, main thread). A camera coming back
+     * under a new device name takes over its previous pipeline.
+     *
+     * @param serial the device's serial number, null while it cannot be read
+     */
+    void bindDevice(String deviceName, String serial) {
+        if (!deviceName.equals(cameraId)) {
+            Log.d(TAG, "Camera slot " + slot + " bound to " + deviceName + " (was " + cameraId + ")");
+            cameraId = deviceName;
+        }
+        if (serial != null) {
+            deviceSerial = serial;
+        }
+    }
 
+    /**
+     * Serial number of the last camera bound here, null if never read
+     */
+    String getDeviceSerial() {
+        return deviceSerial;
+    }
 
+    /**
+     * The device bound before its serial could be read turned out to be
+     * another camera: give the name back and wait for ours (registry, main thread)
+     */
+    void unbindDevice(String reason) {
+        Log.d(TAG, "Camera slot " + slot + " unbound from " + cameraId + ": " + reason);
+        cameraId = null;
+        stateMachine.transition(CameraStateMachine.State.DETACHED, reason);
+    }
 
+    /**
+     * No working device (none yet, detached, or failed to open): the registry
+     * may hand this pipeline to the next device that attaches
+     */
+    boolean isFree() {
+        CameraStateMachine.State state = stateMachine.getState();
+        return cameraId == null || state == CameraStateMachine.State.DETACHED
+                || state == CameraStateMachine.State.ERROR;
+    }
 
+    /**
+     * The registry's USB monitor is up: calls no longer wait for initialize
+     */
+    void onMonitorRegistered() {
+        isInitialized = true;
+    }
 
+    /**
+     * False before the USB monitor is up and after {@link #release}
+     */
+    boolean isInitialized() {
+        return isInitialized;
+    }
 
+    /**
+     * Called once {@link #release} is done, so the registry can stop the USB
+     * monitor when no camera is left in use
+     */
+    void setReleaseListener(Runnable listener) {
+        this.releaseListener = listener;
+    }
 
+    /**
+     * USB permission was requested for this camera's device (main thread)
+     */
+    void onPermissionRequested(String deviceName) {
+        stateMachine.transition(CameraStateMachine.State.PERMISSION_PENDING,
+                "Requesting permission for " + deviceName);
+    }
 
+    void onPermissionDenied() {
+        stateMachine.transition(CameraStateMachine.State.ERROR, "USB permission denied");
+    }
 
+    /**
+     * The device is open and ready for UVC (main thread)
+     */
+    void onDeviceOpened(USBMonitor.UsbControlBlock ctrlBlock) {
+        openCameraAsync(ctrlBlock);
+    }
 
+    void onDeviceDetached(String reason) {
+        detachCamera(reason);
+    }
 
     /**
-     * Request USB permission and connect to device
+     * Open the camera on the camera thread
      */
-    private void requestPermissionAndConnect(UsbDevice device) {
-        if (usbMonitor != null) {
-            usbMonitor.requestPermission(device);
-        }
+    private void openCameraAsync(final USBMonitor.UsbControlBlock ctrlBlock) {
+        cameraExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                openCamera(ctrlBlock);
+            }
+        });
     }
 
     /**
-     * Open the thermal camera using IRCMD
+     * Open the thermal camera using IRCMD (camera thread only).
+     * After a brief detach the UVCCamera native object is still there and only
+     * the USB device is reopened; otherwise it is created from scratch.
      */
 private void openCamera(USBMonitor.UsbControlBlock ctrlBlock) {
+    detachGeneration++;
+    stateMachine.transition(CameraStateMachine.State.OPENING, "Opening camera");
     try {
-        Log.d(TAG, "Opening thermal camera with SDK 1.3.7 ...");
-
-        // 1) Create and configure UVCCamera
-        uvcCamera = new UVCCamera();
-        uvcCamera.setUvcType(UVCType.USB_UVC);  // IMPORTANT
-        uvcCamera.setDefaultPreviewMode(
-                CommonParams.FRAMEFORMATType.FRAME_FORMAT_YUYV
-        );
-        uvcCamera.setDefaultPreviewMinFps(1);
-        uvcCamera.setDefaultPreviewMaxFps(25);
-        uvcCamera.setDefaultBandwidth(1.0f);
-
-        // 2) Allocate native object
-        uvcCamera.onCreate();
-        Log.d(TAG, "UVCCamera.onCreate done, nativePtr=" + uvcCamera.getNativePtr());
-
-        // 3) Set preview size (SDK default is 256x192)
-        int sizeResult = uvcCamera.setUSBPreviewSize(256, 192);
-        Log.d(TAG, "setUSBPreviewSize result = " + sizeResult);
-
-        // 4) Open the physical USB device
-        int openResult = uvcCamera.openUVCCamera(ctrlBlock);
-        Log.d(TAG, "openUVCCamera result = " + openResult);
+        int openResult = -1;
+        if (uvcCamera != null) {
+            // Fast path: reuse the native object kept by detachCamera()
+            openResult = uvcCamera.openUVCCamera(ctrlBlock);
+            Log.d(TAG, "Reattach: openUVCCamera on existing UVCCamera result = " + openResult);
+            if (openResult != UVCResult.UVC_SUCCESS.getValue()) {
+                destroyCamera();
+            }
+        }
+
+        if (uvcCamera == null) {
+            Log.d(TAG, "Opening thermal camera with SDK 1.3.7 ...");
+
+            // 1) Create and configure UVCCamera
+            uvcCamera = new UVCCamera();
+            uvcCamera.setUvcType(UVCType.USB_UVC);  // IMPORTANT
+            uvcCamera.setDefaultPreviewMode(
+                    CommonParams.FRAMEFORMATType.FRAME_FORMAT_YUYV
+            );
+            uvcCamera.setDefaultPreviewMinFps(1);
+            uvcCamera.setDefaultPreviewMaxFps(25);
+            uvcCamera.setDefaultBandwidth(1.0f);
+
+            // 2) Allocate native object
+            uvcCamera.onCreate();
+            Log.d(TAG, "UVCCamera.onCreate done, nativePtr=" + uvcCamera.getNativePtr());
+
+            // 3) Set preview size (SDK default is 256x192)
+            int sizeResult = uvcCamera.setUSBPreviewSize(FRAME_WIDTH, FRAME_HEIGHT);
+            Log.d(TAG, "setUSBPreviewSize result = " + sizeResult);
+
+            // 4) Open the physical USB device
+            openResult = uvcCamera.openUVCCamera(ctrlBlock);
+            Log.d(TAG, "openUVCCamera result = " + openResult);
+        }
 
         if (openResult != UVCResult.UVC_SUCCESS.getValue()) {
-            lastError = "openUVCCamera failed: " + openResult;
-            Log.e(TAG, lastError);
+            stateMachine.transition(CameraStateMachine.State.ERROR, "openUVCCamera failed: " + openResult);
             return;   // ⛔ don’t mark camera as connected
         }
 
@@ -216,108 +406,556 @@ private void openCamera(USBMonitor.UsbControlBlock ctrlBlock) {
             Log.w(TAG, "setFrameMode(1) not supported or failed", t);
         }
 
-        // 6) Start preview – required so IRCMD has frames to work with
+        // 6) Register for frames before the preview starts, so the first
+        //    frame completes the connection (OPENING -> STREAMING)
+        uvcCamera.setFrameCallback(usbSource);
+        frameProcessor.start();
         int startRes = uvcCamera.onStartPreview();
         Log.d(TAG, "onStartPreview result = " + startRes);
 
-        // 7) Init IRCMD (temperature engine)
-        ircmd = new IRCMD();
-        ircmd.onCreate();
+        // 7) Init IRCMD (temperature engine), kept across brief detaches
+        if (ircmd == null) {
+            ircmd = new IRCMD();
+            ircmd.onCreate();
+        }
 
-        isCameraConnected = true;
-        Log.d(TAG, "Thermal camera opened successfully, isCameraConnected = true");
+        Log.d(TAG, "Thermal camera opened, waiting for first frame");
 
     } catch (Exception e) {
         Log.e(TAG, "Failed to open thermal camera", e);
-        lastError = "Failed to open camera: " + e.getMessage();
+        stateMachine.transition(CameraStateMachine.State.ERROR, "Failed to open camera: " + e.getMessage());
     }
 }
 
+    /**
+     * The USB device went away: close it but keep the UVCCamera and IRCMD
+     * objects for {@link #REATTACH_WINDOW_MS}, so a loose cable reconnects
+     * without a full native setup. Destroyed after that.
+     */
+    private void detachCamera(String reason) {
+        stateMachine.transition(CameraStateMachine.State.DETACHED, reason);
+        cameraExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (uvcCamera != null) {
+                    uvcCamera.setFrameCallback(null);
+                    uvcCamera.onStopPreview();
+                    uvcCamera.closeUVCCamera();
+                }
+                final int generation = ++detachGeneration;
+                mainHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        cameraExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (generation == detachGeneration
+                                        && stateMachine.getState() == CameraStateMachine.State.DETACHED) {
+                                    Log.d(TAG, "No reattach within " + REATTACH_WINDOW_MS + " ms, destroying camera");
+                                    destroyCamera();
+                                }
+                            }
+                        });
+                    }
+                }, REATTACH_WINDOW_MS);
+            }
+        });
+    }
+
+    /**
+     * Drop the native camera objects (camera thread only)
+     */
+    private void destroyCamera() {
+        if (ircmd != null) {
+            ircmd.onDestroy(); // ✅ CORRECT METHOD from SDK docs: "资源回收"
+            ircmd = null;
+        }
+        if (uvcCamera != null) {
+            uvcCamera.setFrameCallback(null);
+            uvcCamera.closeUVCCamera();
+            uvcCamera = null;
+        }
+    }
+
+    private void onCameraStateChanged(CameraStateMachine.State previous, CameraStateMachine.State state,
+                                      String reason) {
+        Log.d(TAG, "Camera state " + previous + " -> " + state + " (" + reason + ")");
+        if (state == CameraStateMachine.State.STREAMING && coldStartNanos != 0 && coldToReadyNanos < 0) {
+            coldToReadyNanos = System.nanoTime() - coldStartNanos;
+            Log.d(TAG, "Cold start to first frame: " + coldToReadyNanos / 1000000L + " ms");
+        }
+        StateListener listener = stateListener;
+        if (listener != null) {
+            listener.onStateChanged(describeState(previous, state, reason));
+        }
+    }
+
+    private JSObject describeState(CameraStateMachine.State previous, CameraStateMachine.State state,
+                                   String reason) {
+        JSObject event = new JSObject();
+        event.put("cameraId", cameraId);
+        event.put("slot", slot);
+        event.put("state", state.name());
+        if (previous != null) {
+            event.put("previous", previous.name());
+        }
+        if (reason != null) {
+            event.put("reason", reason);
+        }
+        event.put("ready", isReady());
+        long timeToFirstFrame = stateMachine.getLastTimeToFirstFrameNanos();
+        if (state == CameraStateMachine.State.STREAMING && timeToFirstFrame >= 0) {
+            event.put("timeToFirstFrameMs", timeToFirstFrame / 1000000L);
+        }
+        long coldToReady = coldToReadyNanos;
+        if (coldToReady >= 0) {
+            event.put("coldStartMs", coldToReady / 1000000L);
+        }
+        if (state == CameraStateMachine.State.ERROR) {
+            event.put("error", stateMachine.getLastError());
+        }
+        return event;
+    }
 
     /**
-     * Check if camera is ready to capture
+     * Receive every camera state change ("cameraStateChanged" in the plugin)
+     */
+    public void setStateListener(StateListener listener) {
+        this.stateListener = listener;
+    }
+
+    /**
+     * Current state as a cameraStateChanged-shaped object
+     */
+    public JSObject getCameraState() {
+        return describeState(null, stateMachine.getState(), null);
+    }
+
+    /**
+     * Check if camera is ready to capture: frames are flowing and IRCMD is up
      */
     public boolean isReady() {
-    boolean ready = isInitialized && isCameraConnected && ircmd != null;
-    Log.d(TAG, "isReady() -> " + ready +
-        " (isInitialized=" + isInitialized +
-        ", isCameraConnected=" + isCameraConnected +
-        ", ircmd=" + (ircmd != null) + ")");
-    return ready;
-}
+        return isInitialized && stateMachine.isStreaming() && ircmd != null;
+    }
 
     /**
      * Capture a thermal image
      * 
-     * Note: The SDK doesn't have a direct "captureFrame" method.
-     * We need to use UVCCamera to get frames.
+     * Resolves from the latest frame published by the UVCCamera frame
+     * callback; no native call is made here.
      */
     public void captureImage(final CaptureCallback callback) {
+        // Legacy default: base64 PNG, as the permis-de-feu pages expect
+        captureImage(FrameImageEncoder.TRANSPORT_BASE64, FrameImageEncoder.ENCODING_PNG, 100, 1,
+                TemperatureMatrixEncoder.NONE, callback);
+    }
+
+    /**
+     * Capture a thermal image with an explicit transport ("base64" or "file"),
+     * encoding ("jpeg", "webp" or "png"), quality and output scale (1-4,
+     * bilinear). Concurrent identical captures share a single encode.
+     *
+     * @param matrixFlags {@link TemperatureMatrixCodec} flags to add the
+     *                    temperature matrix over the same transport, or
+     *                    {@link TemperatureMatrixEncoder#NONE}
+     */
+    public void captureImage(final String transport, final String encoding, final int quality, final int scale,
+                             final int matrixFlags, final CaptureCallback callback) {
         if (!isReady()) {
             callback.onError("Camera not ready. Please ensure Topdon TC001 is connected.");
             return;
         }
 
-        new Thread(new Runnable() {
+        String key = "capture:" + transport + ":" + encoding + ":" + quality + ":" + scale + ":" + matrixFlags;
+        cameraExecutor.submit(key, new CameraExecutor.Job<JSObject>() {
             @Override
-            public void run() {
-                try {
-                    Log.d(TAG, "Capturing thermal image...");
-                    
-                    // The SDK uses UVCCamera for frame capture
-                    // You need to set up a frame callback with UVCCamera
-                    // This is typically done in the preview setup
-                    
-                    // For now, return error with instruction
-                    notifyError(callback, 
-                        "Image capture requires UVCCamera frame callback setup. " +
-                        "Please implement UVCCamera.setFrameCallback() in your preview flow.");
-                    
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to capture thermal image", e);
-                    notifyError(callback, "Capture failed: " + e.getMessage());
+            public JSObject call() throws Exception {
+                Log.d(TAG, "Capturing thermal image...");
+
+                ThermalFrame frame = readLatestFrame();
+                FrameStats stats = readStats;
+                converter.convert(frame, null, stats);
+
+                JSObject result = new JSObject();
+                renderCapture(frame, stats, transport, encoding, quality, scale, result);
+                addCaptureMatrix(frame, transport, matrixFlags, result);
+
+                result.put("width", frame.width);
+                result.put("height", frame.height);
+                result.put("scale", scale);
+                result.put("palette", colorizer.getPalette());
+                result.put("frameId", frame.sequence);
+                result.put("timestamp", System.currentTimeMillis()
+                        - (System.nanoTime() - frame.timestampNanos) / 1000000L);
+                result.put("centerTemperature", stats.center);
+                result.put("minTemperature", stats.min);
+                result.put("maxTemperature", stats.max);
+                result.put("meanTemperature", stats.mean);
+                return result;
+            }
+        }, new CameraExecutor.Callback<JSObject>() {
+            @Override
+            public void onResult(JSObject result) {
+                deliverCapture(callback, result);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                Log.e(TAG, "Failed to capture thermal image", error);
+                callback.onError("Capture failed: " + error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Capture a radiometric snapshot file (raw matrix, metadata, JPEG thumbnail,
+     * see {@link RadiometricSnapshot}) under files/snapshots. Only paths and
+     * summary stats go back to JS: "snapshotPath" for reports and re-analysis,
+     * "path" for a JPEG the WebView can display. Older snapshots beyond the
+     * last {@value #SNAPSHOT_MAX_COUNT}, or older than a week, are deleted.
+     *
+     * @param metadata    capture metadata stored in the file, may be null; not modified
+     * @param quality     JPEG quality of "path", also embedded as the file's thumbnail
+     * @param matrixFlags add the temperature matrix as a file, see
+     *                    {@link #captureImage(String, String, int, int, int, CaptureCallback)}
+     */
+    public void captureSnapshot(final JSObject metadata, final int quality, final int matrixFlags,
+                                final CaptureCallback callback) {
+        if (!isReady()) {
+            callback.onError("Camera not ready. Please ensure Topdon TC001 is connected.");
+            return;
+        }
+
+        cameraExecutor.submit(null, new CameraExecutor.Job<JSObject>() {
+            @Override
+            public JSObject call() throws Exception {
+                ThermalFrame frame = readLatestFrame();
+                FrameStats stats = readStats;
+                converter.convert(frame, null, stats);
+                long captureMillis = System.currentTimeMillis()
+                        - (System.nanoTime() - frame.timestampNanos) / 1000000L;
+
+                JSObject result = new JSObject();
+                renderCapture(frame, stats, FrameImageEncoder.TRANSPORT_FILE, FrameImageEncoder.ENCODING_JPEG,
+                        quality, 1, result);
+                addCaptureMatrix(frame, FrameImageEncoder.TRANSPORT_FILE, matrixFlags, result);
+
+                JSObject meta = metadata != null ? new JSObject(metadata.toString()) : new JSObject();
+                meta.put("palette", colorizer.getPalette());
+                File dir = new File(context.getFilesDir(), SNAPSHOT_DIR);
+                File file = new File(dir, filePrefix + "snap_" + captureMillis + "_" + frame.sequence
+                        + RadiometricSnapshot.EXTENSION);
+                long bytes = RadiometricSnapshot.write(file, frame, stats, converter.getRawPerKelvin(),
+                        captureMillis, meta.toString(), captureEncoder(1).lastEncoded());
+                int pruned = RadiometricSnapshot.prune(dir, SNAPSHOT_MAX_COUNT, SNAPSHOT_MAX_AGE_MS,
+                        System.currentTimeMillis());
+                if (pruned > 0) {
+                    Log.d(TAG, "Deleted " + pruned + " old snapshot(s)");
                 }
+
+                result.put("snapshotPath", file.getAbsolutePath());
+                result.put("snapshotBytes", bytes);
+                result.put("width", frame.width);
+                result.put("height", frame.height);
+                result.put("palette", colorizer.getPalette());
+                result.put("frameId", frame.sequence);
+                result.put("timestamp", captureMillis);
+                result.put("centerTemperature", stats.center);
+                result.put("minTemperature", stats.min);
+                result.put("maxTemperature", stats.max);
+                result.put("meanTemperature", stats.mean);
+                result.put("maxX", stats.maxX);
+                result.put("maxY", stats.maxY);
+                return result;
+            }
+        }, captureCallback(callback, "Failed to capture radiometric snapshot"));
+    }
+
+    /**
+     * Colorize, upscale and encode a capture into {@code result} (camera thread only)
+     */
+    private void renderCapture(ThermalFrame frame, FrameStats stats, String transport, String encoding,
+                               int quality, int scale, JSObject result) throws IOException {
+        FrameImageEncoder encoder = captureEncoder(scale);
+        int[] pixels = capturePixels[scale];
+        long start = System.nanoTime();
+        colorizer.colorize(frame, stats, scale, pixels);
+        long colorized = System.nanoTime();
+        encoder.configure(transport, encoding, quality);
+        encoder.encode(pixels, result);
+        metrics.colorization.record(colorized - start);
+        metrics.encoding.record(System.nanoTime() - colorized);
+    }
+
+    /**
+     * Add the temperature matrix of a capture, from the same raw frame as
+     * the image (camera thread only)
+     */
+    private void addCaptureMatrix(ThermalFrame frame, String transport, int matrixFlags, JSObject result)
+            throws IOException {
+        if (matrixFlags == TemperatureMatrixEncoder.NONE) {
+            return;
+        }
+        if (captureMatrixEncoder == null) {
+            captureMatrixEncoder = new TemperatureMatrixEncoder(FRAME_WIDTH, FRAME_HEIGHT,
+                    converter.getRawPerKelvin(), new File(context.getCacheDir(), "thermal-captures"),
+                    filePrefix + "matrix_", CAPTURE_FILE_RING);
+        }
+        captureMatrixEncoder.configure(transport, matrixFlags);
+        captureMatrixEncoder.encode(frame, result);
+    }
+
+    /**
+     * Capture encoder and pixel buffer for {@code scale}, each scale with
+     * its own file ring so paths handed to JS are not overwritten by another
+     * size (camera thread only)
+     */
+    private FrameImageEncoder captureEncoder(int scale) {
+        if (scale < 1 || scale > FrameUpscaler.MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be 1.." + FrameUpscaler.MAX_SCALE + ": " + scale);
+        }
+        if (captureEncoders[scale] == null) {
+            int width = FRAME_WIDTH * scale;
+            int height = FRAME_HEIGHT * scale;
+            capturePixels[scale] = new int[width * height];
+            captureEncoders[scale] = new FrameImageEncoder(width, height,
+                    new File(context.getCacheDir(), "thermal-captures"),
+                    filePrefix + (scale == 1 ? "capture_" : "capture" + scale + "x_"), CAPTURE_FILE_RING);
+        }
+        return captureEncoders[scale];
+    }
+
+    private void deliverCapture(CaptureCallback callback, JSObject result) {
+        long start = System.nanoTime();
+        callback.onSuccess(result);
+        metrics.onBridgeMessage(imagePayloadBytes(result), System.nanoTime() - start);
+    }
+
+    /**
+     * Characters of the image and matrix payloads (base64 text or file
+     * paths) in a result
+     */
+    private static int imagePayloadBytes(JSObject result) {
+        int bytes = result.optString("image", result.optString("path", "")).length();
+        JSONObject matrix = result.optJSONObject("matrix");
+        if (matrix != null) {
+            bytes += matrix.optString("data", matrix.optString("path", "")).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Copy the latest published frame into the camera thread's read buffer.
+     * Camera thread only.
+     */
+    private ThermalFrame readLatestFrame() {
+        if (!copyLatestReading(readFrame)) {
+            throw new IllegalStateException("No thermal frame received yet. Please try again.");
+        }
+        return readFrame;
+    }
+
+    /**
+     * Latest frame for readings: the filtered one when readings opted in to
+     * the temporal filter and it has output, otherwise the raw one
+     */
+    private boolean copyLatestReading(ThermalFrame dest) {
+        if (filterReadings && temporalFilter.copyLatest(dest)) {
+            return true;
+        }
+        return frameBuffer.copyLatest(dest);
+    }
+
+    /**
+     * Configure the temporal filter.
+     *
+     * @param mode     "ema", "average" or "off"
+     * @param alpha    EMA weight of the new frame (0..1]
+     * @param frames   frames in the box average (rounded up to a power of two, max 16)
+     * @param stream   filter the stream images
+     * @param readings filter spot, batch, capture and ROI readings (and the fire watch)
+     */
+    public void setTemporalFilter(String mode, float alpha, int frames, float sceneChangeCelsius,
+                                  boolean stream, boolean readings) {
+        boolean enabled = TemporalFilter.MODE_EMA.equals(mode) || TemporalFilter.MODE_AVERAGE.equals(mode);
+        if (TemporalFilter.MODE_EMA.equals(mode)) {
+            temporalFilter.configureEma(alpha);
+        } else if (TemporalFilter.MODE_AVERAGE.equals(mode)) {
+            temporalFilter.configureAverage(frames);
+        } else {
+            temporalFilter.reset();
+        }
+        temporalFilter.setSceneChangeThreshold(sceneChangeCelsius);
+
+        synchronized (this) {
+            filterEnabled = enabled;
+            filterStream = enabled && stream;
+            filterReadings = enabled && readings;
+        }
+        routeStages();
+        Log.d(TAG, "Temporal filter: " + (enabled ? mode : "off") + ", stream=" + filterStream
+                + ", readings=" + filterReadings);
+    }
+
+    /**
+     * {mode, alpha, frames, stream, readings, sceneResets}
+     */
+    public JSObject getTemporalFilter() {
+        JSObject result = new JSObject();
+        synchronized (this) {
+            result.put("mode", filterEnabled ? temporalFilter.getMode() : "off");
+            result.put("stream", filterStream);
+            result.put("readings", filterReadings);
+        }
+        result.put("alpha", temporalFilter.getAlpha());
+        result.put("frames", temporalFilter.getAverageFrames());
+        result.put("sceneResets", temporalFilter.getSceneResets());
+        return result;
+    }
+
+    /**
+     * Hang every stage on the raw processor or behind the temporal filter,
+     * per the opt-ins. ROI engine first so the trend store and the fire watch
+     * see this frame's zones.
+     */
+    private synchronized void routeStages() {
+        FrameProcessor.Stage[] ordered = {roiEngine, trendStore, fireWatch, stream};
+        boolean[] filtered = {filterReadings, filterReadings, filterReadings, filterStream};
+
+        frameProcessor.removeStage(temporalFilter);
+        for (FrameProcessor.Stage stage : ordered) {
+            if (stage != null) {
+                frameProcessor.removeStage(stage);
+                temporalFilter.removeStage(stage);
+            }
+        }
+        if (filterEnabled) {
+            frameProcessor.addStage(temporalFilter);
+        }
+        for (int i = 0; i < ordered.length; i++) {
+            if (ordered[i] == null) {
+                continue;
             }
-        }).start();
+            if (filtered[i]) {
+                temporalFilter.addStage(ordered[i]);
+            } else {
+                frameProcessor.addStage(ordered[i]);
+            }
+        }
+    }
+
+    /**
+     * Select the palette ("ironbow", "rainbow", "white-hot", "black-hot") used
+     * by captures and the stream. Takes effect on the next frame.
+     *
+     * @return false if the palette name is unknown
+     */
+    public boolean setPalette(String palette) {
+        boolean known = colorizer.setPalette(palette);
+        invalidateStream();
+        return known;
+    }
+
+    /**
+     * Fixed display span in Celsius for the palette
+     */
+    public void setPaletteSpan(float minCelsius, float maxCelsius) {
+        colorizer.setManualSpan(minCelsius, maxCelsius);
+        invalidateStream();
+    }
+
+    /**
+     * Stretch the palette over each frame's own min/max
+     */
+    public void setAutoPaletteSpan() {
+        colorizer.setAutoSpan();
+        invalidateStream();
+    }
+
+    /**
+     * Span from the frame histogram (see {@link PaletteColorizer#setAgcSpan})
+     */
+    public void setAgcPaletteSpan(float lowPercent, float highPercent, boolean equalize, long smoothingMillis) {
+        colorizer.setAgcSpan(lowPercent, highPercent, equalize, smoothingMillis);
+        invalidateStream();
+    }
+
+    public String getPalette() {
+        return colorizer.getPalette();
+    }
+
+    /**
+     * Rendering changed: a change-gated stream must send its next image in full
+     */
+    private void invalidateStream() {
+        ThermalStream current;
+        synchronized (this) {
+            current = stream;
+        }
+        if (current != null) {
+            current.invalidate();
+        }
+    }
+
+    /**
+     * Paint pixels at or above {@code celsius} in a solid {@code argb} color
+     * on captures and the stream
+     */
+    public void setIsotherm(float celsius, int argb) {
+        colorizer.setIsotherm(celsius, argb);
+        invalidateStream();
+    }
+
+    public void clearIsotherm() {
+        colorizer.clearIsotherm();
+        invalidateStream();
+    }
+
+    /**
+     * Isotherm threshold in Celsius, NaN when off
+     */
+    public float getIsothermCelsius() {
+        return colorizer.getIsothermCelsius();
     }
 
     /**
      * Get temperature at specific point
-     * Uses SDK method: getPointTemperatureInfo
+     * Reads the latest frame through the LUT; falls back to the SDK method
+     * getPointTemperatureInfo until the first frame has arrived
      */
-    public void getPointTemperature(int x, int y, final TemperatureCallback callback) {
+    public void getPointTemperature(final int x, final int y, final TemperatureCallback callback) {
         if (!isReady()) {
             callback.onError("Camera not ready");
             return;
         }
 
-        new Thread(new Runnable() {
+        cameraExecutor.submit("point:" + x + "," + y, new CameraExecutor.Job<Float>() {
             @Override
-            public void run() {
-                try {
-                    int[] temperatureValue = new int[1];
-                    
-                    // ✅ CORRECT METHOD from SDK docs
-                    int result = ircmd.getPointTemperatureInfo(x, y, temperatureValue);
-                    
-                    if (result == 0) {
-                        // Temperature is in Kelvin, convert to Celsius
-                        float tempCelsius = (temperatureValue[0] / 16.0f) - 273.15f;
-                        notifyTemperatureSuccess(callback, tempCelsius);
-                    } else {
-                        notifyTemperatureError(callback, "Failed to get temperature");
+            public Float call() throws Exception {
+                if (copyLatestReading(readFrame)) {
+                    if (x < 0 || y < 0 || x >= readFrame.width || y >= readFrame.height) {
+                        throw new IllegalArgumentException("Point out of frame: " + x + "," + y);
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error getting temperature", e);
-                    notifyTemperatureError(callback, e.getMessage());
+                    return converter.toCelsius(readFrame.rawAt(x, y));
                 }
+
+                int[] temperatureValue = new int[1];
+
+                // ✅ CORRECT METHOD from SDK docs
+                int result = ircmd.getPointTemperatureInfo(x, y, temperatureValue);
+                if (result != 0) {
+                    throw new IllegalStateException("Failed to get temperature");
+                }
+                // Temperature is in 1/16 Kelvin, convert to Celsius
+                return converter.toCelsius(temperatureValue[0]);
             }
-        }).start();
+        }, temperatureCallback(callback, "Error getting temperature"));
     }
 
     /**
      * Get center temperature
-     * Uses SDK methods for frame min/max temperature
+     * Center pixel of the latest frame; falls back to the SDK frame min/max
+     * average until the first frame has arrived
      */
     public void getCenterTemperature(final TemperatureCallback callback) {
         if (!isReady()) {
@@ -325,118 +963,779 @@ private void openCamera(USBMonitor.UsbControlBlock ctrlBlock) {
             return;
         }
 
-        new Thread(new Runnable() {
+        cameraExecutor.submit("center", new CameraExecutor.Job<Float>() {
             @Override
-            public void run() {
-                try {
-                    int[] maxTemp = new int[1];
-                    int[] minTemp = new int[1];
-                    
-                    // ✅ CORRECT METHODS from SDK docs
-                    ircmd.getCurrentFrameMaxTemperature(maxTemp);
-                    ircmd.getCurrentFrameMinTemperature(minTemp);
-                    
-                    // Calculate average as "center" temperature
-                    float avgKelvin = (maxTemp[0] + minTemp[0]) / 2.0f;
-                    float tempCelsius = (avgKelvin / 16.0f) - 273.15f;
-                    
-                    notifyTemperatureSuccess(callback, tempCelsius);
-                    
-                } catch (Exception e) {
-                    Log.e(TAG, "Error getting center temperature", e);
-                    notifyTemperatureError(callback, e.getMessage());
+            public Float call() throws Exception {
+                if (copyLatestReading(readFrame)) {
+                    return converter.toCelsius(readFrame.rawAt(readFrame.width / 2, readFrame.height / 2));
                 }
+
+                int[] maxTemp = new int[1];
+                int[] minTemp = new int[1];
+
+                // ✅ CORRECT METHODS from SDK docs
+                ircmd.getCurrentFrameMaxTemperature(maxTemp);
+                ircmd.getCurrentFrameMinTemperature(minTemp);
+
+                // Calculate average as "center" temperature
+                float avgKelvin = (maxTemp[0] + minTemp[0]) / 2.0f;
+                return (avgKelvin / 16.0f) - 273.15f;
             }
-        }).start();
+        }, temperatureCallback(callback, "Error getting center temperature"));
     }
 
     /**
-     * Convert bitmap to base64 string
+     * Resolve many spot and box readings against one frame in a single call.
+     *
+     * @param points x,y pairs
+     * @param rects  x,y,width,height quadruples
      */
-    private String bitmapToBase64(Bitmap bitmap) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
-        byte[] byteArray = outputStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.NO_WRAP);
+    public void getTemperatures(final int[] points, final int[] rects, final CaptureCallback callback) {
+        if (!isReady()) {
+            callback.onError("Camera not ready");
+            return;
+        }
+
+        cameraExecutor.submit(null, new CameraExecutor.Job<JSObject>() {
+            @Override
+            public JSObject call() throws Exception {
+                ThermalFrame frame = readLatestFrame();
+
+                JSArray pointResults = new JSArray();
+                for (int i = 0; i + 1 < points.length; i += 2) {
+                    int x = points[i];
+                    int y = points[i + 1];
+                    JSObject point = new JSObject();
+                    point.put("x", x);
+                    point.put("y", y);
+                    if (x >= 0 && y >= 0 && x < frame.width && y < frame.height) {
+                        point.put("temperature", converter.toCelsius(frame.rawAt(x, y)));
+                    } else {
+                        point.put("error", "out of frame");
+                    }
+                    pointResults.put(point);
+                }
+
+                JSArray rectResults = new JSArray();
+                FrameStats stats = readStats;
+                for (int i = 0; i + 3 < rects.length; i += 4) {
+                    JSObject rect = new JSObject();
+                    rect.put("x", rects[i]);
+                    rect.put("y", rects[i + 1]);
+                    rect.put("width", rects[i + 2]);
+                    rect.put("height", rects[i + 3]);
+                    if (converter.rectStats(frame, rects[i], rects[i + 1], rects[i + 2], rects[i + 3], stats)) {
+                        rect.put("min", stats.min);
+                        rect.put("max", stats.max);
+                        rect.put("mean", stats.mean);
+                        rect.put("maxX", stats.maxX);
+                        rect.put("maxY", stats.maxY);
+                    } else {
+                        rect.put("error", "out of frame");
+                    }
+                    rectResults.put(rect);
+                }
+
+                JSObject result = new JSObject();
+                result.put("frameId", frame.sequence);
+                result.put("timestamp", System.currentTimeMillis()
+                        - (System.nanoTime() - frame.timestampNanos) / 1000000L);
+                result.put("points", pointResults);
+                result.put("rects", rectResults);
+                return result;
+            }
+        }, new CameraExecutor.Callback<JSObject>() {
+            @Override
+            public void onResult(JSObject result) {
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                Log.e(TAG, "Error getting temperatures", error);
+                callback.onError(error.getMessage());
+            }
+        });
     }
 
     /**
-     * Notify success on main thread
+     * Adapt a TemperatureCallback to the camera executor (results arrive on the main thread)
      */
-    private void notifySuccess(final CaptureCallback callback, final JSObject result) {
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
+    private CameraExecutor.Callback<Float> temperatureCallback(final TemperatureCallback callback,
+                                                               final String logMessage) {
+        return new CameraExecutor.Callback<Float>() {
             @Override
-            public void run() {
-                callback.onSuccess(result);
+            public void onResult(Float temperature) {
+                callback.onSuccess(temperature);
             }
-        });
+
+            @Override
+            public void onError(Exception error) {
+                Log.e(TAG, logMessage, error);
+                callback.onError(error.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Define (or replace) a region of interest measured on every frame.
+     *
+     * @param type    "rect", "ellipse" (inscribed in the box) or "polygon"
+     * @param polygon x,y vertex pairs, polygon only
+     * @throws IllegalArgumentException if the shape is invalid or outside the frame
+     */
+    public void defineRoi(String id, String type, int x, int y, int width, int height, int[] polygon) {
+        RoiEngine.Roi roi;
+        if (RoiEngine.TYPE_RECT.equals(type)) {
+            roi = roiEngine.rect(id, x, y, width, height);
+        } else if (RoiEngine.TYPE_ELLIPSE.equals(type)) {
+            roi = roiEngine.ellipse(id, x, y, width, height);
+        } else if (RoiEngine.TYPE_POLYGON.equals(type)) {
+            roi = roiEngine.polygon(id, polygon);
+        } else {
+            throw new IllegalArgumentException("Unknown ROI type: " + type);
+        }
+        roiEngine.put(roi);
+        Log.d(TAG, "ROI " + id + " defined: " + type + ", " + roi.getPixelCount() + " px");
+    }
+
+    /**
+     * Reshape an existing region of interest
+     *
+     * @return false if no ROI has this id
+     */
+    public boolean updateRoi(String id, String type, int x, int y, int width, int height, int[] polygon) {
+        if (!roiEngine.contains(id)) {
+            return false;
+        }
+        defineRoi(id, type, x, y, width, height, polygon);
+        return true;
+    }
+
+    public boolean removeRoi(String id) {
+        return roiEngine.remove(id);
     }
 
     /**
-     * Notify error on main thread
+     * Temperature history over [from, to] (wall-clock ms), each series reduced
+     * to at most {@code maxPoints}: {from, to, sessionStart, resolutionMs
+     * (0 = frame rate), sourcePoints, series: {min, max, mean, center},
+     * zones: {id: {max, mean}}}, every series as {t: [ms], v: [Celsius]}
      */
-    private void notifyError(final CaptureCallback callback, final String error) {
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
+    public JSObject getTrend(long from, long to, int maxPoints) {
+        TrendStore.Trend trend = trendStore.query(from, to, maxPoints);
+        JSObject series = new JSObject();
+        JSObject zones = new JSObject();
+        for (TrendStore.Series s : trend.series) {
+            JSObject points = new JSObject();
+            JSArray t = new JSArray();
+            JSArray v = new JSArray();
+            for (int i = 0; i < s.times.length; i++) {
+                t.put(s.times[i]);
+                v.put(Double.valueOf(Math.round(s.values[i] * 100f) / 100.0));
+            }
+            points.put("t", t);
+            points.put("v", v);
+            if (s.zone == null) {
+                series.put(s.name, points);
+            } else {
+                JSObject zone = zones.getJSObject(s.zone);
+                if (zone == null) {
+                    zone = new JSObject();
+                    zones.put(s.zone, zone);
+                }
+                zone.put(s.name, points);
+            }
+        }
+        JSObject result = new JSObject();
+        result.put("from", trend.from);
+        result.put("to", trend.to);
+        result.put("sessionStart", trendStore.getSessionStart());
+        result.put("resolutionMs", trend.resolutionMillis);
+        result.put("sourcePoints", trend.sourcePoints);
+        result.put("series", series);
+        result.put("zones", zones);
+        return result;
+    }
+
+    /**
+     * Start a new trend session
+     */
+    public void resetTrend() {
+        trendStore.reset();
+        Log.d(TAG, "Trend history cleared");
+    }
+
+    /**
+     * Latest statistics of the given ROIs (all ROIs when {@code ids} is null):
+     * {rois: [{id, type, min, max, mean, stdDev, maxX, maxY, pixelCount, frameId}]}
+     */
+    public JSObject getRoiStats(String[] ids) {
+        if (ids == null) {
+            ids = roiEngine.ids();
+        }
+        RoiEngine.RoiStats stats = new RoiEngine.RoiStats();
+        JSArray results = new JSArray();
+        for (String id : ids) {
+            JSObject roi = new JSObject();
+            roi.put("id", id);
+            if (!roiEngine.readStats(id, stats)) {
+                roi.put("error", "unknown ROI");
+            } else if (stats.sequence == 0) {
+                roi.put("error", "not measured yet");
+            } else {
+                roi.put("type", stats.type);
+                roi.put("min", stats.min);
+                roi.put("max", stats.max);
+                roi.put("mean", stats.mean);
+                roi.put("stdDev", stats.stdDev);
+                roi.put("maxX", stats.maxX);
+                roi.put("maxY", stats.maxY);
+                roi.put("pixelCount", stats.pixelCount);
+                roi.put("frameId", stats.sequence);
+            }
+            results.put(roi);
+        }
+        JSObject result = new JSObject();
+        result.put("rois", results);
+        return result;
+    }
+
+    /**
+     * Start pushing frames to the listener at up to {@code fps} frames per second.
+     * Images are encoded per {@code transport}/{@code encoding}/{@code quality}
+     * (see {@link FrameImageEncoder}) at {@code scale} (1-4) times the sensor
+     * resolution. With {@code changeCelsius} above 0, frames that moved less
+     * than that are sent as "unchanged" ticks without an image, with a full
+     * image at least every {@code refreshMillis}. With {@code matrixFlags}
+     * other than {@link TemperatureMatrixEncoder#NONE} every frame also
+     * carries its temperature matrix over the same transport. Replaces any
+     * stream already running.
+     */
+    public void startStream(int fps, String format, String transport, String encoding, int quality,
+                            final int scale, float changeCelsius, long refreshMillis, int matrixFlags,
+                            final StreamListener listener) {
+        if (scale < 1 || scale > FrameUpscaler.MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be 1.." + FrameUpscaler.MAX_SCALE + ": " + scale);
+        }
+        stopStream();
+
+        final FrameImageEncoder encoder = new FrameImageEncoder(FRAME_WIDTH * scale, FRAME_HEIGHT * scale,
+                new File(context.getCacheDir(), "thermal-frames"), filePrefix + "frame_", STREAM_FILE_RING);
+        encoder.configure(transport, encoding, quality);
+        final int[] pixels = new int[FRAME_WIDTH * scale * FRAME_HEIGHT * scale];
+
+        ThermalStream newStream = new ThermalStream(FRAME_WIDTH, FRAME_HEIGHT, fps, format,
+                new ThermalStream.ImageEncoder() {
+                    @Override
+                    public void encode(ThermalFrame frame, FrameStats stats, JSObject out) {
+                        long start = System.nanoTime();
+                        colorizer.colorize(frame, stats, scale, pixels);
+                        long colorized = System.nanoTime();
+                        try {
+                            encoder.encode(pixels, out);
+                            metrics.colorization.record(colorized - start);
+                            metrics.encoding.record(System.nanoTime() - colorized);
+                        } catch (IOException e) {
+                            Log.e(TAG, "Failed to encode stream frame", e);
+                            out.put("error", e.getMessage());
+                        }
+                    }
+                },
+                new ThermalStream.Listener() {
+                    @Override
+                    public void onFrame(JSObject frame) {
+                        long start = System.nanoTime();
+                        listener.onFrame(frame);
+                        metrics.onBridgeMessage(imagePayloadBytes(frame), System.nanoTime() - start);
+                    }
+                });
+        TemperatureMatrixEncoder matrixEncoder = null;
+        if (matrixFlags != TemperatureMatrixEncoder.NONE) {
+            final TemperatureMatrixEncoder streamMatrix = new TemperatureMatrixEncoder(FRAME_WIDTH, FRAME_HEIGHT,
+                    converter.getRawPerKelvin(), new File(context.getCacheDir(), "thermal-frames"),
+                    filePrefix + "matrix_", STREAM_FILE_RING);
+            streamMatrix.configure(transport, matrixFlags);
+            newStream.setMatrixEncoder(new ThermalStream.ImageEncoder() {
+                @Override
+                public void encode(ThermalFrame frame, FrameStats stats, JSObject out) {
+                    try {
+                        streamMatrix.encode(frame, out);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to encode stream matrix", e);
+                        out.put("matrixError", e.getMessage());
+                    }
+                }
+            });
+            matrixEncoder = streamMatrix;
+        }
+        if (changeCelsius > 0) {
+            FrameChangeDetector detector = new FrameChangeDetector(FRAME_WIDTH, FRAME_HEIGHT,
+                    FrameChangeDetector.DEFAULT_BLOCK_SIZE);
+            detector.setThreshold(changeCelsius, converter.getRawPerKelvin());
+            newStream.setChangeGate(detector, refreshMillis);
+        }
+        synchronized (this) {
+            stream = newStream;
+            streamEncoder = encoder;
+            streamMatrixEncoder = matrixEncoder;
+        }
+        newStream.start();
+        routeStages();
+        Log.d(TAG, "Stream started: fps=" + fps + ", scale=" + scale + ", change=" + changeCelsius
+                + ", format=" + newStream.getFormat() + ", matrix=" + matrixFlags
+                + ", transport=" + encoder.getTransport() + ", encoding=" + encoder.getEncoding());
+    }
+
+    /**
+     * Stop the frame stream, if any
+     */
+    public void stopStream() {
+        ThermalStream current;
+        FrameImageEncoder encoder;
+        TemperatureMatrixEncoder matrixEncoder;
+        synchronized (this) {
+            current = stream;
+            encoder = streamEncoder;
+            matrixEncoder = streamMatrixEncoder;
+            stream = null;
+            streamEncoder = null;
+            streamMatrixEncoder = null;
+        }
+        if (current != null) {
+            frameProcessor.removeStage(current);
+            temporalFilter.removeStage(current);
+            current.stop();
+            encoder.close();
+            if (matrixEncoder != null) {
+                matrixEncoder.close();
+            }
+            Log.d(TAG, "Stream stopped: sent=" + current.getSentFrames()
+                    + ", dropped=" + current.getDroppedFrames());
+        }
+    }
+
+    /**
+     * JS finished rendering a streamed frame
+     */
+    public void acknowledgeStreamFrame(long frameId) {
+        ThermalStream current;
+        synchronized (this) {
+            current = stream;
+        }
+        if (current != null) {
+            current.acknowledge(frameId);
+        }
+    }
+
+    public boolean isStreaming() {
+        synchronized (this) {
+            return stream != null;
+        }
+    }
+
+    /**
+     * Start evaluating every frame against the fire-watch thresholds.
+     * Only alarm transitions reach the listener. Replaces any watch already running.
+     */
+    public void startFireWatch(FireWatchMonitor.Config config, final AlarmListener listener) {
+        stopFireWatch(null);
+
+        FireWatchMonitor monitor = new FireWatchMonitor(config, roiEngine, new FireWatchMonitor.Listener() {
             @Override
-            public void run() {
-                callback.onError(error);
+            public void onAlarm(FireWatchMonitor.Alarm alarm) {
+                AdaptiveSampler currentSampler;
+                synchronized (TopdonCameraManager.this) {
+                    currentSampler = sampler;
+                }
+                if (currentSampler != null) {
+                    currentSampler.boost();
+                }
+                Log.w(TAG, "Fire watch " + (alarm.tripped ? "alarm" : "cleared") + ": "
+                        + alarm.zone + " " + alarm.kind + " " + alarm.temperature + "°C");
+                listener.onAlarm(toJson(alarm));
             }
         });
+        synchronized (this) {
+            fireWatch = monitor;
+            fireWatchListener = listener;
+        }
+        routeStages();
+        Log.d(TAG, "Fire watch started: max=" + config.maxTemperature + "°C, rise=" + config.riseRate
+                + "°C/s over " + config.windowSeconds + " s");
     }
 
     /**
-     * Notify temperature success on main thread
+     * Stop the fire watch, if any, and tell its listener why; a null
+     * {@code reason} stops it silently
      */
-    private void notifyTemperatureSuccess(final TemperatureCallback callback, final float temperature) {
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
+    public void stopFireWatch(String reason) {
+        FireWatchMonitor current;
+        AlarmListener listener;
+        synchronized (this) {
+            current = fireWatch;
+            listener = fireWatchListener;
+            fireWatch = null;
+            fireWatchListener = null;
+        }
+        if (current != null) {
+            frameProcessor.removeStage(current);
+            temporalFilter.removeStage(current);
+            Log.d(TAG, "Fire watch stopped (" + reason + ") after " + current.getEvaluatedFrames() + " frames");
+            if (reason != null) {
+                listener.onStopped(reason);
+            }
+        }
+    }
+
+    /**
+     * Slow processing to {@code idleFps} while the scene is stable and go back
+     * to {@code activeFps} on any change larger than {@code changeCelsius}.
+     * Throttles every stage, stream included. The camera itself keeps its
+     * preview rate: the SDK min/max fps only apply when the preview starts,
+     * and restarting it would drop frames mid-watch.
+     */
+    public void startAdaptiveSampling(int idleFps, int activeFps, float changeCelsius, long holdMillis) {
+        stopAdaptiveSampling();
+        AdaptiveSampler newSampler = new AdaptiveSampler(frameProcessor, idleFps, activeFps,
+                changeCelsius, holdMillis);
+        synchronized (this) {
+            sampler = newSampler;
+            prewarmThrottled = false;
+        }
+        newSampler.start();
+        frameProcessor.addStage(newSampler);
+        Log.d(TAG, "Adaptive sampling: " + idleFps + "-" + activeFps + " fps, change " + changeCelsius + "°C");
+    }
+
+    public void stopAdaptiveSampling() {
+        AdaptiveSampler current;
+        synchronized (this) {
+            current = sampler;
+            sampler = null;
+        }
+        if (current != null) {
+            frameProcessor.removeStage(current);
+            current.stop();
+            Log.d(TAG, "Adaptive sampling stopped after " + current.getTransitions() + " rate changes");
+        }
+    }
+
+    public boolean isFireWatching() {
+        synchronized (this) {
+            return fireWatch != null;
+        }
+    }
+
+    /**
+     * Current state of every watched zone:
+     * {active, evaluatedFrames, zones: [{zone, kind, tripped, temperature, rate, threshold}]}
+     */
+    public JSObject getFireWatchStatus() {
+        FireWatchMonitor current;
+        synchronized (this) {
+            current = fireWatch;
+        }
+        AdaptiveSampler currentSampler;
+        synchronized (this) {
+            currentSampler = sampler;
+        }
+        JSObject result = new JSObject();
+        result.put("active", current != null);
+        if (currentSampler != null) {
+            result.put("sampling", currentSampler.isActive() ? "active" : "idle");
+        }
+        JSArray zones = new JSArray();
+        if (current != null) {
+            result.put("evaluatedFrames", current.getEvaluatedFrames());
+            for (FireWatchMonitor.Alarm status : current.getStatus()) {
+                zones.put(toJson(status));
+            }
+        }
+        result.put("zones", zones);
+        return result;
+    }
+
+    private static JSObject toJson(FireWatchMonitor.Alarm alarm) {
+        JSObject json = new JSObject();
+        json.put("zone", alarm.zone);
+        json.put("kind", alarm.kind);
+        json.put("tripped", alarm.tripped);
+        json.put("temperature", alarm.temperature);
+        if (!Float.isNaN(alarm.rate)) {
+            json.put("rate", alarm.rate);
+        }
+        json.put("threshold", alarm.threshold);
+        json.put("x", alarm.x);
+        json.put("y", alarm.y);
+        if (alarm.frameId != 0) {
+            json.put("frameId", alarm.frameId);
+            json.put("timestamp", System.currentTimeMillis()
+                    - (System.nanoTime() - alarm.timestampNanos) / 1000000L);
+        }
+        return json;
+    }
+
+    /**
+     * Start recording raw frames to a new file under files/recordings.
+     * Replaces any recording in progress.
+     *
+     * @return path of the recording file
+     */
+    public String startRecording(int keyframeInterval) throws IOException {
+        stopRecording();
+
+        File dir = new File(context.getFilesDir(), "recordings");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, filePrefix + "rec_" + System.currentTimeMillis() + ".pfcr");
+        ThermalRecorder newRecorder = new ThermalRecorder(file, FRAME_WIDTH, FRAME_HEIGHT,
+                converter.getRawPerKelvin(), keyframeInterval);
+        synchronized (this) {
+            recorder = newRecorder;
+        }
+        frameProcessor.addStage(newRecorder);
+        Log.d(TAG, "Recording to " + file.getAbsolutePath());
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Finish the current recording, if any:
+     * {path, frames, durationMs, bytes} or null when nothing was recording
+     */
+    public JSObject stopRecording() throws IOException {
+        ThermalRecorder current;
+        synchronized (this) {
+            current = recorder;
+            recorder = null;
+        }
+        if (current == null) {
+            return null;
+        }
+        frameProcessor.removeStage(current);
+        current.close();
+
+        JSObject result = new JSObject();
+        result.put("path", current.getFile().getAbsolutePath());
+        result.put("frames", current.getFrameCount());
+        result.put("durationMs", current.getDurationNanos() / 1000000L);
+        result.put("bytes", current.getFile().length());
+        if (current.getFailure() != null) {
+            result.put("error", current.getFailure().getMessage());
+        }
+        Log.d(TAG, "Recording stopped: " + current.getFrameCount() + " frames, "
+                + current.getFile().length() + " bytes");
+        return result;
+    }
+
+    public boolean isRecording() {
+        synchronized (this) {
+            return recorder != null;
+        }
+    }
+
+    /**
+     * Open a recording for playback (closing the previous one):
+     * {path, width, height, frames, durationMs, startTime}
+     */
+    public void openRecording(final String path, final CaptureCallback callback) {
+        cameraExecutor.submit(null, new CameraExecutor.Job<JSObject>() {
             @Override
-            public void run() {
-                callback.onSuccess(temperature);
+            public JSObject call() throws Exception {
+                closePlayer();
+                ThermalRecordingPlayer opened = new ThermalRecordingPlayer(new File(path));
+                if (opened.getWidth() != FRAME_WIDTH || opened.getHeight() != FRAME_HEIGHT) {
+                    opened.close();
+                    throw new IllegalArgumentException("Unsupported recording size "
+                            + opened.getWidth() + "x" + opened.getHeight());
+                }
+                player = opened;
+                playerConverter = opened.getRawPerKelvin() == converter.getRawPerKelvin()
+                        ? converter : new RadiometricConverter(opened.getRawPerKelvin());
+
+                JSObject result = new JSObject();
+                result.put("path", path);
+                result.put("width", opened.getWidth());
+                result.put("height", opened.getHeight());
+                result.put("frames", opened.getFrameCount());
+                result.put("durationMs", opened.getDurationNanos() / 1000000L);
+                result.put("startTime", opened.getStartWallMillis());
+                return result;
             }
-        });
+        }, captureCallback(callback, "Failed to open recording"));
     }
 
     /**
-     * Notify temperature error on main thread
+     * Render the recorded frame at {@code timeMs} from the start of the open
+     * recording (no file scan, see {@link ThermalRecordingPlayer}). Returns the
+     * same fields as captureImage plus frameIndex and timeMs.
      */
-    private void notifyTemperatureError(final TemperatureCallback callback, final String error) {
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
+    public void readRecordingFrame(final long timeMs, final String transport, final String encoding,
+                                   final int quality, final CaptureCallback callback) {
+        cameraExecutor.submit(null, new CameraExecutor.Job<JSObject>() {
+            @Override
+            public JSObject call() throws Exception {
+                if (player == null) {
+                    throw new IllegalStateException("No recording open");
+                }
+                if (player.getFrameCount() == 0) {
+                    throw new IllegalStateException("Recording is empty");
+                }
+                int index = player.indexAt(timeMs * 1000000L);
+                player.readFrame(index, playbackFrame);
+                FrameStats stats = readStats;
+                playerConverter.convert(playbackFrame, null, stats);
+
+                JSObject result = new JSObject();
+                renderCapture(playbackFrame, stats, transport, encoding, quality, 1, result);
+
+                long frameTimeMs = playbackFrame.timestampNanos / 1000000L;
+                result.put("width", playbackFrame.width);
+                result.put("height", playbackFrame.height);
+                result.put("palette", colorizer.getPalette());
+                result.put("frameIndex", index);
+                result.put("frameId", playbackFrame.sequence);
+                result.put("timeMs", frameTimeMs);
+                result.put("timestamp", player.getStartWallMillis() + frameTimeMs);
+                result.put("centerTemperature", stats.center);
+                result.put("minTemperature", stats.min);
+                result.put("maxTemperature", stats.max);
+                result.put("meanTemperature", stats.mean);
+                return result;
+            }
+        }, captureCallback(callback, "Failed to read recording frame"));
+    }
+
+    public void closeRecording() {
+        cameraExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                callback.onError(error);
+                closePlayer();
             }
         });
     }
 
     /**
-     * Get list of connected USB devices
+     * Camera thread only
      */
-    public String getConnectedDevices() {
-        if (usbMonitor == null) {
-            return "USB monitor not initialized";
+    private void closePlayer() {
+        if (player != null) {
+            try {
+                player.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close recording", e);
+            }
+            player = null;
+            playerConverter = null;
         }
-        
-        StringBuilder devices = new StringBuilder();
-        devices.append("Connected USB devices:\n");
-        
-        try {
-java.util.List<UsbDevice> deviceList = usbMonitor.getDeviceList();
-if (deviceList == null || deviceList.isEmpty()) {
-    devices.append("No devices found");
-} else {
-    for (UsbDevice device : deviceList) {
-        devices.append("- ").append(device.getDeviceName())
-               .append(" (VID: ").append(device.getVendorId())
-               .append(", PID: ").append(device.getProductId())
-               .append(")\n");
     }
-}
 
-        } catch (Exception e) {
-            devices.append("Error getting devices: ").append(e.getMessage());
+    /**
+     * Adapt a CaptureCallback to the camera executor (results arrive on the main thread)
+     */
+    private CameraExecutor.Callback<JSObject> captureCallback(final CaptureCallback callback,
+                                                             final String logMessage) {
+        return new CameraExecutor.Callback<JSObject>() {
+            @Override
+            public void onResult(JSObject result) {
+                deliverCapture(callback, result);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                Log.e(TAG, logMessage, error);
+                callback.onError(error.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Pipeline counters and latency percentiles since start or the last reset:
+     * {periodMs, framesReceived, framesProcessed, framesDropped, framesThrottled,
+     * streamDropped, bridgeMessages, bridgeBytes, fps,
+     * latency: {frameInterval, conversion, stages, colorization, encoding,
+     * bridgeDelivery: {count, p50, p90, p99, max, mean}}} with times in ms.
+     * bridgeBytes counts image payloads (base64 text or file paths).
+     */
+    public JSObject getMetrics(boolean reset) {
+        JSObject result = new JSObject();
+        double periodMs = (System.nanoTime() - metrics.getSinceNanos()) / 1e6;
+        result.put("periodMs", Math.round(periodMs));
+        result.put("framesReceived", metrics.getFramesReceived());
+        result.put("framesProcessed", metrics.getFramesProcessed());
+        result.put("framesDropped", metrics.getFramesDropped());
+        result.put("framesThrottled", metrics.getFramesThrottled());
+        ThermalStream currentStream;
+        synchronized (this) {
+            currentStream = stream;
         }
-        
-        return devices.toString();
+        result.put("streamDropped", currentStream != null ? currentStream.getDroppedFrames() : 0);
+        result.put("streamUnchanged", currentStream != null ? currentStream.getUnchangedFrames() : 0);
+        result.put("bridgeMessages", metrics.getBridgeMessages());
+        result.put("bridgeBytes", metrics.getBridgeBytes());
+        result.put("fps", periodMs > 0 ? metrics.getFramesProcessed() * 1000.0 / periodMs : 0);
+        result.put("source", getFrameSourceName());
+
+        JSObject latency = new JSObject();
+        latency.put("frameInterval", describe(metrics.frameInterval));
+        latency.put("conversion", describe(metrics.conversion));
+        latency.put("stages", describe(metrics.stages));
+        latency.put("colorization", describe(metrics.colorization));
+        latency.put("encoding", describe(metrics.encoding));
+        latency.put("bridgeDelivery", describe(metrics.bridgeDelivery));
+        result.put("latency", latency);
+
+        if (reset) {
+            metrics.reset();
+        }
+        return result;
+    }
+
+    private static JSObject describe(LatencyHistogram histogram) {
+        JSObject out = new JSObject();
+        out.put("count", histogram.getCount());
+        out.put("p50", histogram.percentileNanos(50) / 1e6);
+        out.put("p90", histogram.percentileNanos(90) / 1e6);
+        out.put("p99", histogram.percentileNanos(99) / 1e6);
+        out.put("max", histogram.getMaxNanos() / 1e6);
+        out.put("mean", histogram.getMeanNanos() / 1e6);
+        return out;
+    }
+
+    /**
+     * Feed the pipeline from {@code source} instead of the USB camera, or go
+     * back to the camera with null. The camera stays open; its frames are
+     * just not published while another source is active.
+     */
+    public void setFrameSource(ThermalFrameSource source) {
+        if (source != null && (source.getWidth() != FRAME_WIDTH || source.getHeight() != FRAME_HEIGHT)) {
+            throw new IllegalArgumentException("Source is " + source.getWidth() + "x" + source.getHeight()
+                    + ", expected " + FRAME_WIDTH + "x" + FRAME_HEIGHT);
+        }
+        ThermalFrameSource next = source != null ? source : usbSource;
+        ThermalFrameSource previous;
+        synchronized (this) {
+            previous = frameSource;
+            frameSource = next;
+        }
+        if (previous == next) {
+            return;
+        }
+        previous.stop();
+        if (previous instanceof ReplayThermalSource) {
+            ((ReplayThermalSource) previous).close();
+        }
+        next.start(frameSink);
+        if (next != usbSource) {
+            // The USB path starts the processor once the camera is open
+            frameProcessor.start();
+        }
+        Log.d(TAG, "Frame source: " + previous.getName() + " -> " + next.getName());
+    }
+
+    public synchronized String getFrameSourceName() {
+        return frameSource.getName();
     }
 
     /**
@@ -446,28 +1745,48 @@ if (deviceList == null || deviceList.isEmpty()) {
         Log.d(TAG, "Releasing thermal camera resources...");
         
         try {
-            if (ircmd != null) {
-                ircmd.onDestroy(); // ✅ CORRECT METHOD from SDK docs: "资源回收"
-                ircmd = null;
-            }
-            
-            if (uvcCamera != null) {
- uvcCamera.closeUVCCamera();
-                uvcCamera = null;
+            stopStream();
+            stopFireWatch("released");
+            stopAdaptiveSampling();
+            try {
+                stopRecording();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to finish recording", e);
             }
-            
-            if (usbMonitor != null) {
-                usbMonitor.unregister();
-                usbMonitor = null;
+            setFrameSource(null);
+            frameProcessor.stop();
+
+            // Native teardown on the camera thread, after any pending request
+            boolean closed = cameraExecutor.executeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    closePlayer();
+                    destroyCamera();
+                }
+            }, RELEASE_TIMEOUT_MS);
+            if (!closed) {
+                Log.w(TAG, "Camera close did not finish within " + RELEASE_TIMEOUT_MS + " ms");
             }
-            
-            isCameraConnected = false;
+
+            stateMachine.transition(CameraStateMachine.State.DETACHED, "Released");
             isInitialized = false;
+            synchronized (this) {
+                if (prewarmThrottled) {
+                    prewarmThrottled = false;
+                    frameProcessor.setFrameIntervalNanos(0);
+                }
+            }
+            coldStartNanos = 0;
+            coldToReadyNanos = -1;
             
             Log.d(TAG, "Camera resources released");
         } catch (Exception e) {
             Log.e(TAG, "Error releasing camera resources", e);
         }
+        Runnable listener = releaseListener;
+        if (listener != null) {
+            listener.run();
+        }
     }
 
     // Callback interfaces
@@ -485,4 +1804,22 @@ if (deviceList == null || deviceList.isEmpty()) {
         void onSuccess(float temperature);
         void onError(String error);
     }
+
+    public interface StreamListener {
+        void onFrame(JSObject frame);
+    }
+
+    public interface StateListener {
+        void onStateChanged(JSObject event);
+    }
+
+    public interface AlarmListener {
+        void onAlarm(JSObject alarm);
+
+        /**
+         * The watch ended: "released" with the camera, otherwise the reason
+         * given to {@link #stopFireWatch(String)}
+         */
+        void onStopped(String reason);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,489 @@
+package com.pfc.mobile;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.infisense.iruvc.usb.USBMonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One {@link TopdonCameraManager} per attached TC001, keyed by USB device name.
+ *
+ * The registry owns the single USB monitor and routes each device's events
+ * to its own manager, so every camera has its own frame buffers, processing
+ * thread, camera thread and render stripes, and two cameras never share a
+ * lock on the frame path. Only TC001 devices (by vendor and product id) are
+ * considered. A camera that comes back after a detach (usually under a new
+ * device name) takes over its detached pipeline, keeping its ROIs, palette,
+ * fire watch and, within the reattach window, its native camera object.
+ * Pipelines remember the serial number of their camera, so once a device's
+ * serial can be read (after its USB permission is granted) it goes back to
+ * its own pipeline and never to one another camera left detached. The first
+ * camera is the default for calls without a camera id.
+ */
+public class TopdonCameraRegistry {
+    private static final String TAG = "TopdonCameraRegistry";
+
+    /** Pipelines are never torn down, so this also bounds the thread count */
+    static final int MAX_CAMERAS = 4;
+
+    // TC001 USB identity
+    static final int TC001_VENDOR_ID = 0x0BDA;
+    static final int TC001_PRODUCT_ID = 0x5830;
+
+    public interface Listener {
+        /**
+         * A new pipeline was created; attach per-camera listeners here
+         */
+        void onCameraAdded(TopdonCameraManager camera);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this
+    private final List<TopdonCameraManager> cameras = new ArrayList<>();
+    private String prewarmReason;
+    private boolean initialized;
+
+    // Created and registered on the main thread
+    private volatile USBMonitor usbMonitor;
+
+    public TopdonCameraRegistry(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+
+    /**
+     * Camera with this id, or the first camera for null (created if there is
+     * none yet); null for an unknown id
+     */
+    public synchronized TopdonCameraManager get(String cameraId) {
+        if (cameraId == null) {
+            return cameras.isEmpty() ? addCamera() : cameras.get(0);
+        }
+        for (TopdonCameraManager camera : cameras) {
+            if (cameraId.equals(camera.getCameraId())) {
+                return camera;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<TopdonCameraManager> getCameras() {
+        return new ArrayList<>(cameras);
+    }
+
+    /**
+     * State of every camera, see {@link TopdonCameraManager#getCameraState}
+     */
+    public JSArray describeCameras() {
+        JSArray result = new JSArray();
+        for (TopdonCameraManager camera : getCameras()) {
+            result.put(camera.getCameraState());
+        }
+        return result;
+    }
+
+    /**
+     * Pre-warm every pipeline and start the USB monitor ahead of any JS call
+     * (see {@link TopdonCameraManager#prewarm})
+     */
+    public void prewarm(String reason) {
+        synchronized (this) {
+            prewarmReason = reason;
+            if (cameras.isEmpty()) {
+                addCamera();
+            } else {
+                for (TopdonCameraManager camera : cameras) {
+                    camera.prewarm(reason);
+                }
+            }
+        }
+        startUsbMonitor(new TopdonCameraManager.InitializeCallback() {
+            @Override
+            public void onSuccess(String message) {
+                Log.d(TAG, "Pre-warm: " + message);
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Pre-warm failed: " + error);
+            }
+        });
+    }
+
+    /**
+     * Initialize the USB monitor and every thermal camera attached
+     */
+    public void initialize(TopdonCameraManager.InitializeCallback callback) {
+        synchronized (this) {
+            initialized = true;
+            if (cameras.isEmpty()) {
+                addCamera();
+            } else {
+                for (TopdonCameraManager camera : cameras) {
+                    camera.initialize();
+                }
+            }
+        }
+        startUsbMonitor(callback);
+    }
+
+    /**
+     * Release every camera; the USB monitor goes with the last one
+     */
+    public void release() {
+        for (TopdonCameraManager camera : getCameras()) {
+            camera.release();
+        }
+    }
+
+    /**
+     * Get list of connected USB devices
+     */
+    public String getConnectedDevices() {
+        USBMonitor monitor = usbMonitor;
+        if (monitor == null) {
+            return "USB monitor not initialized";
+        }
+
+        StringBuilder devices = new StringBuilder();
+        devices.append("Connected USB devices:\n");
+
+        try {
+            List<UsbDevice> deviceList = monitor.getDeviceList();
+            if (deviceList == null || deviceList.isEmpty()) {
+                devices.append("No devices found");
+            } else {
+                for (UsbDevice device : deviceList) {
+                    TopdonCameraManager camera = find(device);
+                    devices.append("- ").append(device.getDeviceName())
+                            .append(" (VID: ").append(device.getVendorId())
+                            .append(", PID: ").append(device.getProductId())
+                            .append(camera != null ? ", camera slot " + camera.getSlot() : "")
+                            .append(")\n");
+                }
+            }
+        } catch (Exception e) {
+            devices.append("Error getting devices: ").append(e.getMessage());
+        }
+
+        return devices.toString();
+    }
+
+    /**
+     * New pipeline, brought to the registry's current warm-up stage
+     */
+    private TopdonCameraManager addCamera() {
+        TopdonCameraManager camera = new TopdonCameraManager(context, cameras.size());
+        camera.setReleaseListener(new Runnable() {
+            @Override
+            public void run() {
+                onCameraReleased();
+            }
+        });
+        cameras.add(camera);
+        listener.onCameraAdded(camera);
+        activate(camera);
+        Log.d(TAG, "Camera slot " + camera.getSlot() + " created");
+        return camera;
+    }
+
+    /**
+     * Bring a new or released pipeline to the registry's warm-up stage
+     */
+    private void activate(TopdonCameraManager camera) {
+        if (initialized) {
+            camera.initialize();
+        } else if (prewarmReason != null) {
+            camera.prewarm(prewarmReason);
+        }
+        if (usbMonitor != null) {
+            camera.onMonitorRegistered();
+        }
+    }
+
+    static boolean isThermalCamera(UsbDevice device) {
+        return device.getVendorId() == TC001_VENDOR_ID && device.getProductId() == TC001_PRODUCT_ID;
+    }
+
+    /**
+     * Serial number, or null while it cannot be read (before the USB
+     * permission is granted on Android 10+)
+     */
+    private static String serialOf(UsbDevice device) {
+        try {
+            return device.getSerialNumber();
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A pipeline can take a device unless both serials are known and differ
+     */
+    private static boolean sameCamera(TopdonCameraManager camera, String serial) {
+        String known = camera.getDeviceSerial();
+        return known == null || serial == null || known.equals(serial);
+    }
+
+    /**
+     * Pipeline for {@code device}: the free one last used by the same serial,
+     * else the one already bound to its name, else a free one that never had
+     * a camera, else a free one of no other known camera, else a new one;
+     * null for other USB devices and once {@link #MAX_CAMERAS} are busy
+     */
+    private synchronized TopdonCameraManager cameraFor(UsbDevice device) {
+        if (!isThermalCamera(device)) {
+            return null;
+        }
+        String name = device.getDeviceName();
+        String serial = serialOf(device);
+        TopdonCameraManager bound = null;
+        TopdonCameraManager own = null;
+        TopdonCameraManager unused = null;
+        TopdonCameraManager free = null;
+        for (TopdonCameraManager camera : cameras) {
+            String known = camera.getDeviceSerial();
+            if (name.equals(camera.getCameraId())) {
+                bound = camera;
+            } else if (!camera.isFree() || !sameCamera(camera, serial)) {
+                continue;
+            } else if (serial != null && serial.equals(known)) {
+                own = camera;
+            } else if (known == null) {
+                unused = unused != null ? unused : camera;
+            } else {
+                free = free != null ? free : camera;
+            }
+        }
+
+        if (bound != null) {
+            boolean mine = serial != null && serial.equals(bound.getDeviceSerial());
+            if (mine || (own == null && sameCamera(bound, serial))) {
+                bound.bindDevice(name, serial);
+                return bound;
+            }
+            // Bound while its serial was unreadable, to another camera's pipeline
+            bound.unbindDevice(name + " is another camera");
+        }
+        TopdonCameraManager camera = own != null ? own : unused != null ? unused : free;
+        if (camera == null) {
+            if (cameras.size() >= MAX_CAMERAS) {
+                return null;
+            }
+            camera = addCamera();
+        } else if (!camera.isInitialized()) {
+            // Released on its own while the monitor stayed up
+            activate(camera);
+        }
+        camera.bindDevice(name, serial);
+        return camera;
+    }
+
+    private synchronized TopdonCameraManager find(UsbDevice device) {
+        String name = device.getDeviceName();
+        for (TopdonCameraManager camera : cameras) {
+            if (name.equals(camera.getCameraId())) {
+                return camera;
+            }
+        }
+        return null;
+    }
+
+    private void onCameraReleased() {
+        synchronized (this) {
+            for (TopdonCameraManager camera : cameras) {
+                if (camera.isInitialized()) {
+                    return;
+                }
+            }
+            initialized = false;
+            prewarmReason = null;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (TopdonCameraRegistry.this) {
+                    if (initialized || prewarmReason != null) {
+                        // Started again meanwhile
+                        return;
+                    }
+                }
+                USBMonitor monitor = usbMonitor;
+                if (monitor != null) {
+                    usbMonitor = null;
+                    monitor.unregister();
+                    Log.d(TAG, "USB monitor unregistered");
+                }
+            }
+        });
+    }
+
+private void startUsbMonitor(final TopdonCameraManager.InitializeCallback callback) {
+    // 🔥 Always do USBMonitor stuff on the main (UI) thread
+    mainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+            if (usbMonitor != null) {
+                // Cameras released on their own reconnect here
+                connectAttachedDevices();
+                callback.onSuccess(isAnyStreaming() ? "Thermal camera initialized" : "Already initialized");
+                return;
+            }
+            try {
+                Log.d(TAG, "Initializing Topdon thermal cameras on UI thread...");
+                Log.d(TAG, "Context class = " + context.getClass().getName());
+
+                // 👇 Make sure context is an Activity (we passed getActivity() in the plugin)
+                android.app.Activity activity = (android.app.Activity) context;
+
+                usbMonitor = new USBMonitor(activity, new USBMonitor.OnDeviceConnectListener() {
+                    @Override
+                    public void onAttach(UsbDevice device) {
+                        Log.d(TAG, "USB device attached: " + device.getDeviceName());
+                        requestPermissionAndConnect(device);
+                    }
+
+                    @Override
+                    public void onGranted(UsbDevice usbDevice, boolean createNew) {
+                        Log.d(TAG, "USB permission granted for: " + usbDevice.getDeviceName());
+                        USBMonitor monitor = usbMonitor;
+                        TopdonCameraManager camera = cameraFor(usbDevice);
+                        if (monitor != null && camera != null) {
+                            USBMonitor.UsbControlBlock ctrlBlock = monitor.openDevice(usbDevice);
+                            if (ctrlBlock != null) {
+                                Log.d(TAG, "Got UsbControlBlock in onGranted, opening camera slot " + camera.getSlot());
+                                camera.onDeviceOpened(ctrlBlock);
+                            } else {
+                                Log.e(TAG, "openDevice returned null UsbControlBlock");
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onDettach(UsbDevice device) {
+                        Log.d(TAG, "USB device detached: " + device.getDeviceName());
+                        TopdonCameraManager camera = find(device);
+                        if (camera != null) {
+                            camera.onDeviceDetached("USB device detached");
+                        }
+                    }
+
+                    @Override
+                    public void onConnect(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock, boolean createNew) {
+                        Log.d(TAG, "USB device connected: " + device.getDeviceName());
+                        TopdonCameraManager camera = cameraFor(device);
+                        if (camera != null) {
+                            camera.onDeviceOpened(ctrlBlock);
+                        }
+                    }
+
+                    @Override
+                    public void onDisconnect(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
+                        Log.d(TAG, "USB device disconnected: " + device.getDeviceName());
+                        TopdonCameraManager camera = find(device);
+                        if (camera != null) {
+                            camera.onDeviceDetached("USB device disconnected");
+                        }
+                    }
+
+                    @Override
+                    public void onCancel(UsbDevice device) {
+                        Log.d(TAG, "USB permission cancelled for device: " + device.getDeviceName());
+                        TopdonCameraManager camera = find(device);
+                        if (camera != null) {
+                            camera.onPermissionDenied();
+                        }
+                    }
+                });
+
+                // Register monitor on UI thread
+                usbMonitor.register();
+                for (TopdonCameraManager camera : getCameras()) {
+                    camera.onMonitorRegistered();
+                }
+                Log.d(TAG, "USB monitor registered successfully");
+
+                // 🔍 Connect every camera already plugged in, not just the first
+                connectAttachedDevices();
+
+                // ✅ Report status
+                if (isAnyStreaming()) {
+                    callback.onSuccess("Thermal camera initialized");
+                } else {
+                    callback.onSuccess("USB monitor initialized, waiting for camera");
+                }
+
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to initialize thermal camera", e);
+                callback.onError("Initialization failed: " + e.getMessage());
+            }
+        }
+    });
+}
+
+    /**
+     * Request permission for every attached device without a working camera
+     * (main thread)
+     */
+    private void connectAttachedDevices() {
+        try {
+            List<UsbDevice> devices = usbMonitor.getDeviceList();
+            if (devices == null || devices.isEmpty()) {
+                Log.d(TAG, "No USB devices found at initialize()");
+                return;
+            }
+            for (UsbDevice device : devices) {
+                if (!isThermalCamera(device)) {
+                    continue;
+                }
+                TopdonCameraManager camera = find(device);
+                if (camera == null || camera.isFree()) {
+                    Log.d(TAG, "Found already connected USB device: " + device.getDeviceName());
+                    requestPermissionAndConnect(device); // will trigger onGranted/onConnect
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error while checking existing USB devices", e);
+        }
+    }
+
+    /**
+     * Request USB permission and connect to device (main thread)
+     */
+    private void requestPermissionAndConnect(UsbDevice device) {
+        USBMonitor monitor = usbMonitor;
+        if (monitor == null) {
+            return;
+        }
+        if (!isThermalCamera(device)) {
+            Log.d(TAG, "Ignoring " + device.getDeviceName() + ": not a TC001");
+            return;
+        }
+        TopdonCameraManager camera = cameraFor(device);
+        if (camera == null) {
+            Log.w(TAG, "Ignoring " + device.getDeviceName() + ": " + MAX_CAMERAS + " cameras already in use");
+            return;
+        }
+        camera.onPermissionRequested(device.getDeviceName());
+        monitor.requestPermission(device);
+    }
+
+    private boolean isAnyStreaming() {
+        for (TopdonCameraManager camera : getCameras()) {
+            if (camera.isReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
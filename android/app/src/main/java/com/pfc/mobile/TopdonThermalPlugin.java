@@ -1,18 +1,45 @@
 package com.pfc.mobile;
 
+import android.content.Intent;
+import android.hardware.usb.UsbManager;
+
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Capacitor plugin for Topdon TC001 thermal camera integration
+ *
+ * Several cameras can be attached at once: every camera method takes an
+ * optional cameraId (see listCameras) and defaults to the first camera.
+ * Events carry the cameraId of the camera they come from.
+ *
+ * Captures can be handed to a native {@link UploadQueue} (enqueueUpload)
+ * instead of being uploaded from the WebView: files are streamed from disk,
+ * survive restarts and are retried, with uploadProgress, uploadCompleted and
+ * uploadFailed events.
  */
 @CapacitorPlugin(name = "TopdonThermal")
 public class TopdonThermalPlugin extends Plugin {
     
-    private TopdonCameraManager cameraManager;
+    private static final String AUTHORIZATION = "Authorization";
+
+    private TopdonCameraRegistry cameras;
+    private UploadQueue uploads;
     
 @Override
 public void load() {
@@ -20,20 +47,33 @@ public void load() {
     super.load();
     try {
         // 👇 IMPORTANT: use Activity, not Application context
-        cameraManager = new TopdonCameraManager(getActivity());
+        cameras = new TopdonCameraRegistry(getActivity(), new TopdonCameraRegistry.Listener() {
+            @Override
+            public void onCameraAdded(TopdonCameraManager camera) {
+                camera.setStateListener(new TopdonCameraManager.StateListener() {
+                    @Override
+                    public void onStateChanged(JSObject event) {
+                        notifyListeners("cameraStateChanged", event);
+                    }
+                });
+            }
+        });
+        // Open the cameras now rather than when the capture page asks for them
+        cameras.prewarm(isUsbAttach(getActivity().getIntent()) ? "USB attach intent" : "plugin load");
         android.util.Log.d("TopdonThermalPlugin", "🔥🔥🔥 TopdonThermalPlugin.load() SUCCESS (using Activity context)");
     } catch (Throwable t) {
         android.util.Log.e("TopdonThermalPlugin", "🔥🔥🔥 TopdonThermalPlugin.load() FAILED", t);
     }
+    startUploadQueue();
 }
 
 
     /**
-     * Initialize the thermal camera
+     * Initialize the thermal cameras
      */
     @PluginMethod
     public void initialize(PluginCall call) {
-        cameraManager.initialize(new TopdonCameraManager.InitializeCallback() {
+        cameras.initialize(new TopdonCameraManager.InitializeCallback() {
             @Override
             public void onSuccess(String message) {
                 JSObject ret = new JSObject();
@@ -49,23 +89,102 @@ public void load() {
         });
     }
 
+    /**
+     * Every camera pipeline: {cameras: [getCameraState() fields]}
+     */
+    @PluginMethod
+    public void listCameras(PluginCall call) {
+        JSObject ret = new JSObject();
+        ret.put("cameras", cameras.describeCameras());
+        call.resolve(ret);
+    }
+
+    /**
+     * Camera named by the call's cameraId, or the first camera; rejects the
+     * call and returns null for an unknown id
+     */
+    private TopdonCameraManager camera(PluginCall call) {
+        String cameraId = call.getString("cameraId");
+        TopdonCameraManager camera = cameras.get(cameraId);
+        if (camera == null) {
+            call.reject("Unknown camera: " + cameraId);
+        }
+        return camera;
+    }
+
+    /**
+     * Mark an event with the camera it comes from; slot 0 is the default camera
+     */
+    private static void tag(JSObject event, TopdonCameraManager camera) {
+        event.put("cameraId", camera.getCameraId());
+        event.put("slot", camera.getSlot());
+    }
+
     /**
      * Check if camera is ready
      */
     @PluginMethod
     public void isReady(PluginCall call) {
-        boolean ready = cameraManager.isReady();
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        boolean ready = camera.isReady();
         JSObject ret = new JSObject();
         ret.put("ready", ready);
         call.resolve(ret);
     }
 
+    /**
+     * Current connection state: {state, ready, reason?, error?, timeToFirstFrameMs?}.
+     * Changes are pushed as "cameraStateChanged" events with the same shape.
+     */
+    @PluginMethod
+    public void getCameraState(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        call.resolve(camera.getCameraState());
+    }
+
     /**
      * Capture a thermal image
+     * Options: transport ("base64" default, or "file" to get a cache file path),
+     * encoding ("png" default, "jpeg", "webp"), quality (1-100) and scale
+     * (1-4, bilinear upscaling of the 256x192 frame).
+     * radiometric: true writes a radiometric snapshot file instead and
+     * resolves with {snapshotPath, path (JPEG, quality default 75), summary
+     * stats}; metadata (object) is stored in the file. Snapshots are pruned natively
+     * (last 50, one week); deleteSnapshot frees one as soon as it is used.
+     * matrix: true or {delta, deflate} (both default true) adds "matrix",
+     * the per-pixel temperatures as 16-bit little-endian centi-Kelvin, as
+     * "data" (base64) or "path" following the transport (always a file for
+     * radiometric captures)
      */
     @PluginMethod
     public void captureImage(PluginCall call) {
-        cameraManager.captureImage(new TopdonCameraManager.CaptureCallback() {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        if (call.getBoolean("radiometric", false)) {
+            int quality = call.getInt("quality", TopdonCameraManager.SNAPSHOT_THUMBNAIL_QUALITY);
+            camera.captureSnapshot(call.getObject("metadata"), quality, matrixFlags(call), captureCallback(call));
+            return;
+        }
+
+        String transport = call.getString("transport", FrameImageEncoder.TRANSPORT_BASE64);
+        String encoding = call.getString("encoding", FrameImageEncoder.ENCODING_PNG);
+        int quality = call.getInt("quality", 100);
+        int scale = call.getInt("scale", 1);
+        if (scale < 1 || scale > FrameUpscaler.MAX_SCALE) {
+            call.reject("scale must be 1.." + FrameUpscaler.MAX_SCALE);
+            return;
+        }
+
+        camera.captureImage(transport, encoding, quality, scale, matrixFlags(call),
+                new TopdonCameraManager.CaptureCallback() {
             @Override
             public void onSuccess(JSObject result) {
                 call.resolve(result);
@@ -78,12 +197,737 @@ public void load() {
         });
     }
 
+    /**
+     * Delete a radiometric snapshot once it is no longer needed:
+     * {path (a snapshotPath)} -> {deleted}
+     */
+    @PluginMethod
+    public void deleteSnapshot(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null) {
+            call.reject("path is required");
+            return;
+        }
+        File dir = new File(getContext().getFilesDir(), TopdonCameraManager.SNAPSHOT_DIR);
+        File file = new File(path);
+        try {
+            if (!dir.getCanonicalFile().equals(file.getCanonicalFile().getParentFile())
+                    || !file.getName().endsWith(RadiometricSnapshot.EXTENSION)) {
+                call.reject("Not a snapshot: " + path);
+                return;
+            }
+        } catch (IOException e) {
+            call.reject("Invalid path: " + e.getMessage());
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("deleted", file.delete());
+        call.resolve(ret);
+    }
+
+    /**
+     * The "matrix" option as {@link TemperatureMatrixCodec} flags, or
+     * {@link TemperatureMatrixEncoder#NONE} when absent or false
+     */
+    private static int matrixFlags(PluginCall call) {
+        JSObject options = call.getObject("matrix");
+        if (options == null && !call.getBoolean("matrix", false)) {
+            return TemperatureMatrixEncoder.NONE;
+        }
+        boolean delta = options == null || options.optBoolean("delta", true);
+        boolean deflate = options == null || options.optBoolean("deflate", true);
+        return (delta ? TemperatureMatrixCodec.DELTA : 0) | (deflate ? TemperatureMatrixCodec.DEFLATE : 0);
+    }
+
+    /**
+     * Temperature at one pixel: {x, y} -> {temperature}
+     */
+    @PluginMethod
+    public void getPointTemperature(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        Integer x = call.getInt("x");
+        Integer y = call.getInt("y");
+        if (x == null || y == null) {
+            call.reject("x and y are required");
+            return;
+        }
+        camera.getPointTemperature(x, y, temperatureCallback(call));
+    }
+
+    /**
+     * Temperature at the frame center -> {temperature}
+     */
+    @PluginMethod
+    public void getCenterTemperature(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        camera.getCenterTemperature(temperatureCallback(call));
+    }
+
+    /**
+     * Batch readings against a single frame:
+     * {points: [{x, y}], rects: [{x, y, width, height}]} ->
+     * {frameId, points: [{x, y, temperature}], rects: [{x, y, width, height, min, max, mean}]}
+     */
+    @PluginMethod
+    public void getTemperatures(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        int[] points;
+        int[] rects;
+        try {
+            points = readIntTuples(call.getArray("points", new JSArray()), "x", "y");
+            rects = readIntTuples(call.getArray("rects", new JSArray()), "x", "y", "width", "height");
+        } catch (JSONException e) {
+            call.reject("Invalid points/rects: " + e.getMessage());
+            return;
+        }
+
+        camera.getTemperatures(points, rects, new TopdonCameraManager.CaptureCallback() {
+            @Override
+            public void onSuccess(JSObject result) {
+                call.resolve(result);
+            }
+
+            @Override
+            public void onError(String error) {
+                call.reject(error);
+            }
+        });
+    }
+
+    /**
+     * Flatten [{k1, k2, ...}] into an int[] of consecutive tuples
+     */
+    private static int[] readIntTuples(JSArray array, String... keys) throws JSONException {
+        int[] values = new int[array.length() * keys.length];
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            for (int k = 0; k < keys.length; k++) {
+                values[i * keys.length + k] = item.getInt(keys[k]);
+            }
+        }
+        return values;
+    }
+
+    private TopdonCameraManager.TemperatureCallback temperatureCallback(final PluginCall call) {
+        return new TopdonCameraManager.TemperatureCallback() {
+            @Override
+            public void onSuccess(float temperature) {
+                JSObject ret = new JSObject();
+                ret.put("temperature", temperature);
+                call.resolve(ret);
+            }
+
+            @Override
+            public void onError(String error) {
+                call.reject(error);
+            }
+        };
+    }
+
+    /**
+     * Define or replace a fire-watch zone measured on every frame:
+     * {id, type: "rect" | "ellipse", x, y, width, height} or
+     * {id, type: "polygon", points: [{x, y}]}
+     */
+    @PluginMethod
+    public void defineRoi(PluginCall call) {
+        applyRoi(call, false);
+    }
+
+    /**
+     * Reshape an existing zone; same options as defineRoi
+     */
+    @PluginMethod
+    public void updateRoi(PluginCall call) {
+        applyRoi(call, true);
+    }
+
+    @PluginMethod
+    public void removeRoi(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String id = call.getString("id");
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("removed", camera.removeRoi(id));
+        call.resolve(ret);
+    }
+
+    /**
+     * Latest zone statistics: {ids?} ->
+     * {rois: [{id, type, min, max, mean, stdDev, maxX, maxY, pixelCount, frameId}]}
+     */
+    @PluginMethod
+    public void getRoiStats(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String[] ids = null;
+        JSArray idArray = call.getArray("ids");
+        if (idArray != null) {
+            try {
+                ids = new String[idArray.length()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = idArray.getString(i);
+                }
+            } catch (JSONException e) {
+                call.reject("Invalid ids: " + e.getMessage());
+                return;
+            }
+        }
+        call.resolve(camera.getRoiStats(ids));
+    }
+
+    /**
+     * Frame and zone temperature history of the watch session: {from?, to?
+     * (wall-clock ms, default the whole session), maxPoints? (default 300)}
+     * -> {from, to, sessionStart, resolutionMs, sourcePoints,
+     * series: {min, max, mean, center}, zones: {id: {max, mean}}}, each
+     * series {t: [ms], v: [Celsius]} downsampled with peaks kept
+     */
+    @PluginMethod
+    public void getTrend(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        long from = call.getLong("from", 0L);
+        long to = call.getLong("to", Long.MAX_VALUE);
+        if (to < from) {
+            call.reject("to must not be before from");
+            return;
+        }
+        int maxPoints = Math.max(3, Math.min(5000, call.getInt("maxPoints", 300)));
+        call.resolve(camera.getTrend(from, to, maxPoints));
+    }
+
+    /**
+     * Clear the trend history, e.g. when a new watch starts
+     */
+    @PluginMethod
+    public void resetTrend(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        camera.resetTrend();
+        call.resolve();
+    }
+
+    private void applyRoi(PluginCall call, boolean update) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String id = call.getString("id");
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+        String type = call.getString("type", RoiEngine.TYPE_RECT);
+        int x = call.getInt("x", 0);
+        int y = call.getInt("y", 0);
+        int width = call.getInt("width", 0);
+        int height = call.getInt("height", 0);
+
+        int[] polygon;
+        try {
+            polygon = readIntTuples(call.getArray("points", new JSArray()), "x", "y");
+        } catch (JSONException e) {
+            call.reject("Invalid points: " + e.getMessage());
+            return;
+        }
+
+        try {
+            if (update) {
+                if (!camera.updateRoi(id, type, x, y, width, height, polygon)) {
+                    call.reject("Unknown ROI: " + id);
+                    return;
+                }
+            } else {
+                camera.defineRoi(id, type, x, y, width, height, polygon);
+            }
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("id", id);
+        ret.put("type", type);
+        call.resolve(ret);
+    }
+
+    /**
+     * Start pushing live frames as "thermalFrame" events.
+     * Each frame must be acknowledged with ackFrame() before the next one is
+     * sent; frames produced meanwhile are dropped, keeping only the newest.
+     * Images default to JPEG files in the app cache ("path" in each event,
+     * load with Capacitor.convertFileSrc); transport "base64" inlines them.
+     * scale (1-4) upscales the images, temperatures stay at sensor resolution.
+     * changeThreshold (°C, default 0 = off) sends frames that moved less than
+     * that as {unchanged: true, stats} without an image, with a full image at
+     * least every refreshSeconds (default 10); ack them like frames.
+     * matrix (as in captureImage) adds the temperature matrix to each frame,
+     * in the "stats" format too, for per-pixel readouts without bridge calls.
+     */
+    @PluginMethod
+    public void startStream(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        int fps = Math.max(1, Math.min(25, call.getInt("fps", 10)));
+        String format = call.getString("format", ThermalStream.FORMAT_IMAGE);
+        String transport = call.getString("transport", FrameImageEncoder.TRANSPORT_FILE);
+        String encoding = call.getString("encoding", FrameImageEncoder.ENCODING_JPEG);
+        int quality = call.getInt("quality", 80);
+        int scale = call.getInt("scale", 1);
+        if (scale < 1 || scale > FrameUpscaler.MAX_SCALE) {
+            call.reject("scale must be 1.." + FrameUpscaler.MAX_SCALE);
+            return;
+        }
+
+        float changeThreshold = call.getFloat("changeThreshold", 0f);
+        long refreshMillis = (long) (call.getFloat("refreshSeconds", 10f) * 1000);
+
+        camera.startStream(fps, format, transport, encoding, quality, scale, changeThreshold, refreshMillis,
+                matrixFlags(call), new TopdonCameraManager.StreamListener() {
+            @Override
+            public void onFrame(JSObject frame) {
+                tag(frame, camera);
+                notifyListeners("thermalFrame", frame);
+            }
+        });
+
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        ret.put("fps", fps);
+        ret.put("format", format);
+        ret.put("scale", scale);
+        ret.put("changeThreshold", changeThreshold);
+        ret.put("matrix", matrixFlags(call) != TemperatureMatrixEncoder.NONE);
+        call.resolve(ret);
+    }
+
+    /**
+     * Stop the live frame stream
+     */
+    @PluginMethod
+    public void stopStream(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        camera.stopStream();
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+
+    /**
+     * Acknowledge a streamed frame once it has been rendered
+     */
+    @PluginMethod
+    public void ackFrame(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        Long frameId = call.getLong("frameId");
+        if (frameId == null) {
+            call.reject("frameId is required");
+            return;
+        }
+        camera.acknowledgeStreamFrame(frameId);
+        call.resolve();
+    }
+
+    /**
+     * Start the native fire watch. Every frame is checked on the device;
+     * "thermalAlarm" events are sent only when a condition trips or clears.
+     * Options: maxTemp (°C), hysteresis (°C, default 2), riseRate (°C/s),
+     * riseHysteresis (°C/s, default riseRate / 2), windowSeconds (default 10),
+     * zones (ROI ids watched in addition to the whole frame).
+     * background: true runs the watch in a foreground service that survives
+     * the screen turning off, sampling at idleFps (default 1) while the scene
+     * is stable and activeFps (default 25) after any change above
+     * changeThreshold (°C, default 0.5) for holdSeconds (default 10).
+     * "fireWatchStopped" {reason} is sent however the watch ends.
+     */
+    @PluginMethod
+    public void startFireWatch(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        FireWatchMonitor.Config config = new FireWatchMonitor.Config();
+        Float maxTemp = call.getFloat("maxTemp");
+        Float riseRate = call.getFloat("riseRate");
+        if (maxTemp == null && riseRate == null) {
+            call.reject("maxTemp or riseRate is required");
+            return;
+        }
+        if (maxTemp != null) {
+            config.maxTemperature = maxTemp;
+        }
+        if (riseRate != null) {
+            config.riseRate = riseRate;
+        }
+        config.absoluteHysteresis = call.getFloat("hysteresis", config.absoluteHysteresis);
+        config.riseHysteresis = call.getFloat("riseHysteresis", config.riseHysteresis);
+        config.windowSeconds = call.getFloat("windowSeconds", config.windowSeconds);
+
+        JSArray zones = call.getArray("zones", new JSArray());
+        try {
+            config.zones = new String[zones.length()];
+            for (int i = 0; i < zones.length(); i++) {
+                config.zones[i] = zones.getString(i);
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid zones: " + e.getMessage());
+            return;
+        }
+
+        camera.startFireWatch(config, new TopdonCameraManager.AlarmListener() {
+            @Override
+            public void onAlarm(JSObject alarm) {
+                tag(alarm, camera);
+                notifyListeners("thermalAlarm", alarm);
+                FireWatchService.notifyAlarm(getContext(), alarm);
+            }
+
+            @Override
+            public void onStopped(String reason) {
+                JSObject event = new JSObject();
+                event.put("reason", reason);
+                tag(event, camera);
+                notifyListeners("fireWatchStopped", event);
+            }
+        });
+
+        if (call.getBoolean("background", false)) {
+            FireWatchService.start(getContext(), camera,
+                    call.getInt("idleFps", 1),
+                    call.getInt("activeFps", 25),
+                    call.getFloat("changeThreshold", 0.5f),
+                    (long) (call.getFloat("holdSeconds", 10f) * 1000));
+        }
+        call.resolve(camera.getFireWatchStatus());
+    }
+
+    @PluginMethod
+    public void stopFireWatch(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        if (FireWatchService.isWatching(camera)) {
+            FireWatchService.stop(getContext(), FireWatchService.REASON_STOPPED);
+        }
+        camera.stopFireWatch(FireWatchService.REASON_STOPPED);
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+
+    /**
+     * Current fire-watch state per zone (see TopdonCameraManager.getFireWatchStatus)
+     */
+    @PluginMethod
+    public void getFireWatchStatus(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        call.resolve(camera.getFireWatchStatus());
+    }
+
+    /**
+     * Temporal denoising: {mode: "ema" | "average" | "off", alpha (EMA, default 0.25),
+     * frames (average, default 4), sceneChange (°C, default 2), stream (default true),
+     * readings (default true)} -> current filter settings
+     */
+    @PluginMethod
+    public void setTemporalFilter(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String mode = call.getString("mode", TemporalFilter.MODE_EMA);
+        camera.setTemporalFilter(mode,
+                call.getFloat("alpha", 0.25f),
+                call.getInt("frames", 4),
+                call.getFloat("sceneChange", 2f),
+                call.getBoolean("stream", true),
+                call.getBoolean("readings", true));
+        call.resolve(camera.getTemporalFilter());
+    }
+
+    /**
+     * Feed the pipeline from something other than the USB camera, for demos
+     * and bench runs without a TC001:
+     * {type: "usb"} | {type: "synthetic", fps?, seed?, hotspot?} |
+     * {type: "replay", path, speed?, loop?} -> {source}
+     */
+    @PluginMethod
+    public void setFrameSource(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String type = call.getString("type", "usb");
+        ThermalFrameSource source;
+        try {
+            if ("synthetic".equals(type)) {
+                SyntheticThermalSource synthetic = new SyntheticThermalSource(
+                        TopdonCameraManager.FRAME_WIDTH, TopdonCameraManager.FRAME_HEIGHT,
+                        call.getFloat("fps", 25f), call.getInt("seed", 1));
+                synthetic.setGradient(4f);
+                synthetic.setNoise(0.3f);
+                synthetic.addHotspot(call.getFloat("hotspot", 180f), 12f,
+                        TopdonCameraManager.FRAME_WIDTH / 2f, TopdonCameraManager.FRAME_HEIGHT / 2f, 40f, 20f);
+                source = synthetic;
+            } else if ("replay".equals(type)) {
+                String path = call.getString("path");
+                if (path == null) {
+                    call.reject("path is required for a replay source");
+                    return;
+                }
+                source = new ReplayThermalSource(new File(path),
+                        call.getFloat("speed", 1f), call.getBoolean("loop", true));
+            } else if ("usb".equals(type)) {
+                source = null;
+            } else {
+                call.reject("Unknown frame source: " + type);
+                return;
+            }
+            camera.setFrameSource(source);
+        } catch (IOException | IllegalArgumentException e) {
+            call.reject("Failed to set frame source: " + e.getMessage());
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("source", camera.getFrameSourceName());
+        call.resolve(ret);
+    }
+
+    /**
+     * Record raw radiometric frames to an app file: {keyframeInterval?} -> {path}
+     */
+    @PluginMethod
+    public void startRecording(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        try {
+            String path = camera.startRecording(
+                    call.getInt("keyframeInterval", ThermalRecorder.DEFAULT_KEYFRAME_INTERVAL));
+            JSObject ret = new JSObject();
+            ret.put("path", path);
+            call.resolve(ret);
+        } catch (IOException e) {
+            call.reject("Failed to start recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * -> {path, frames, durationMs, bytes}
+     */
+    @PluginMethod
+    public void stopRecording(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        try {
+            JSObject result = camera.stopRecording();
+            if (result == null) {
+                call.reject("Not recording");
+                return;
+            }
+            call.resolve(result);
+        } catch (IOException e) {
+            call.reject("Failed to finish recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open a recording for playback: {path} -> {width, height, frames, durationMs, startTime}
+     */
+    @PluginMethod
+    public void openRecording(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String path = call.getString("path");
+        if (path == null) {
+            call.reject("path is required");
+            return;
+        }
+        camera.openRecording(path, captureCallback(call));
+    }
+
+    /**
+     * Frame of the open recording at a time offset:
+     * {timeMs, transport (default file), encoding (default jpeg), quality (default 85)}
+     * -> captureImage fields plus frameIndex and timeMs
+     */
+    @PluginMethod
+    public void getRecordingFrame(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        camera.readRecordingFrame(
+                call.getLong("timeMs", 0L),
+                call.getString("transport", FrameImageEncoder.TRANSPORT_FILE),
+                call.getString("encoding", FrameImageEncoder.ENCODING_JPEG),
+                call.getInt("quality", 85),
+                captureCallback(call));
+    }
+
+    @PluginMethod
+    public void closeRecording(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        camera.closeRecording();
+        call.resolve();
+    }
+
+    private TopdonCameraManager.CaptureCallback captureCallback(final PluginCall call) {
+        return new TopdonCameraManager.CaptureCallback() {
+            @Override
+            public void onSuccess(JSObject result) {
+                call.resolve(result);
+            }
+
+            @Override
+            public void onError(String error) {
+                call.reject(error);
+            }
+        };
+    }
+
+    /**
+     * Switch the palette and display span used for captures and the stream.
+     * Options: palette ("ironbow", "rainbow", "white-hot", "black-hot"),
+     * minTemp/maxTemp in Celsius for a fixed span (omit both for auto span),
+     * or agc: {lowPercent (1), highPercent (99), equalize (false),
+     * smoothingMs (1000)} for a percentile span from the frame histogram
+     */
+    @PluginMethod
+    public void setPalette(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        String palette = call.getString("palette");
+        if (palette != null && !camera.setPalette(palette)) {
+            call.reject("Unknown palette: " + palette);
+            return;
+        }
+
+        Float minTemp = call.getFloat("minTemp");
+        Float maxTemp = call.getFloat("maxTemp");
+        JSObject agc = call.getObject("agc");
+        if (agc != null) {
+            camera.setAgcPaletteSpan(
+                    (float) agc.optDouble("lowPercent", 1),
+                    (float) agc.optDouble("highPercent", 99),
+                    agc.optBoolean("equalize", false),
+                    agc.optLong("smoothingMs", 1000));
+        } else if (minTemp != null && maxTemp != null) {
+            camera.setPaletteSpan(minTemp, maxTemp);
+        } else {
+            camera.setAutoPaletteSpan();
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("palette", camera.getPalette());
+        ret.put("autoSpan", agc != null || minTemp == null || maxTemp == null);
+        ret.put("agc", agc != null);
+        call.resolve(ret);
+    }
+
+    /**
+     * Highlight everything at or above a temperature:
+     * {celsius, color ("#RRGGBB", default "#00FF00"), enabled (default true)}
+     */
+    @PluginMethod
+    public void setIsotherm(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        if (!call.getBoolean("enabled", true)) {
+            camera.clearIsotherm();
+            JSObject ret = new JSObject();
+            ret.put("enabled", false);
+            call.resolve(ret);
+            return;
+        }
+
+        Float celsius = call.getFloat("celsius");
+        if (celsius == null || Float.isNaN(celsius)) {
+            call.reject("celsius is required");
+            return;
+        }
+        String color = call.getString("color", "#00FF00");
+        int rgb;
+        try {
+            rgb = Integer.parseInt(color.startsWith("#") ? color.substring(1) : color, 16);
+        } catch (NumberFormatException e) {
+            call.reject("Invalid color: " + color);
+            return;
+        }
+        camera.setIsotherm(celsius, 0xFF000000 | (rgb & 0xFFFFFF));
+
+        JSObject ret = new JSObject();
+        ret.put("enabled", true);
+        ret.put("celsius", camera.getIsothermCelsius());
+        ret.put("color", color);
+        call.resolve(ret);
+    }
+
+    /**
+     * Pipeline counters and p50/p90/p99 stage latencies (ms) for field
+     * diagnostics: {reset?} -> see TopdonCameraManager.getMetrics
+     */
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        TopdonCameraManager camera = camera(call);
+        if (camera == null) {
+            return;
+        }
+        call.resolve(camera.getMetrics(call.getBoolean("reset", false)));
+    }
+
     /**
      * Get list of connected USB devices (for debugging)
      */
     @PluginMethod
     public void getConnectedDevices(PluginCall call) {
-        String devices = cameraManager.getConnectedDevices();
+        String devices = cameras.getConnectedDevices();
         JSObject ret = new JSObject();
         ret.put("devices", devices);
         call.resolve(ret);
@@ -94,21 +938,220 @@ public void load() {
      */
     @PluginMethod
     public void release(PluginCall call) {
-        cameraManager.release();
+        String cameraId = call.getString("cameraId");
+        List<TopdonCameraManager> targets;
+        if (cameraId == null) {
+            // No id: every camera, as before multi-camera support
+            targets = cameras.getCameras();
+        } else {
+            TopdonCameraManager camera = camera(call);
+            if (camera == null) {
+                return;
+            }
+            targets = Collections.singletonList(camera);
+        }
+
+        boolean kept = false;
+        for (TopdonCameraManager camera : targets) {
+            if (FireWatchService.isWatching(camera)) {
+                // The background watch owns the camera until stopFireWatch()
+                camera.stopStream();
+                kept = true;
+            } else {
+                camera.release();
+            }
+        }
         JSObject ret = new JSObject();
         ret.put("success", true);
-        ret.put("message", "Camera released");
+        ret.put("message", kept ? "Fire watch session still running, camera kept" : "Camera released");
         call.resolve(ret);
     }
 
+    /**
+     * The activity is singleTask: plugging the camera in while the app runs
+     * delivers USB_DEVICE_ATTACHED here instead of relaunching it
+     */
+    @Override
+    protected void handleOnNewIntent(Intent intent) {
+        super.handleOnNewIntent(intent);
+        if (cameras != null && isUsbAttach(intent)) {
+            cameras.prewarm("USB attach intent");
+        }
+    }
+
+    private static boolean isUsbAttach(Intent intent) {
+        return intent != null && UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction());
+    }
+
     @Override
     protected void handleOnDestroy() {
-        if (cameraManager != null) {
-            cameraManager.release();
+        if (uploads != null) {
+            uploads.stop();
+        }
+        if (cameras != null) {
+            for (TopdonCameraManager camera : cameras.getCameras()) {
+                // The camera cannot outlive the activity that holds its USB permission
+                if (FireWatchService.isWatching(camera)) {
+                    FireWatchService.stop(getContext(), FireWatchService.REASON_APP_CLOSED);
+                }
+                camera.release();
+            }
         }
         super.handleOnDestroy();
     }
 
+    /**
+     * Pending uploads left over from the last run resume right away
+     */
+    private void startUploadQueue() {
+        try {
+            uploads = new UploadQueue(new File(getContext().getFilesDir(), "upload-queue"),
+                    new UploadQueue.Listener() {
+                        @Override
+                        public void onProgress(UploadQueue.Upload upload, long sentBytes) {
+                            JSObject event = describeUpload(upload);
+                            event.put("sentBytes", sentBytes);
+                            notifyListeners("uploadProgress", event);
+                        }
+
+                        @Override
+                        public void onCompleted(UploadQueue.Upload upload, int status) {
+                            JSObject event = describeUpload(upload);
+                            event.put("status", status);
+                            // Kept until JS listens: the page may have been closed meanwhile
+                            notifyListeners("uploadCompleted", event, true);
+                        }
+
+                        @Override
+                        public void onFailed(UploadQueue.Upload upload, String error, boolean willRetry) {
+                            JSObject event = describeUpload(upload);
+                            event.put("error", error);
+                            event.put("willRetry", willRetry);
+                            notifyListeners("uploadFailed", event, !willRetry);
+                        }
+                    });
+            // Uploads carry the user's token, which only JS has (setAuthToken)
+            uploads.requireSessionHeader(AUTHORIZATION);
+            uploads.start();
+            android.util.Log.d("TopdonThermalPlugin", "Upload queue started, " + uploads.size() + " pending");
+        } catch (IOException e) {
+            android.util.Log.e("TopdonThermalPlugin", "Upload queue unavailable", e);
+        }
+    }
+
+    private static JSObject describeUpload(UploadQueue.Upload upload) {
+        JSObject out = new JSObject();
+        out.put("uploadId", upload.id);
+        out.put("url", upload.url);
+        out.put("tag", upload.tag);
+        out.put("bytes", upload.bytes);
+        out.put("createdAt", upload.createdMillis);
+        out.put("attempts", upload.getAttempts());
+        out.put("awaitingCredentials", upload.isAwaitingCredentials());
+        if (upload.getNextAttemptMillis() > 0 && !upload.isAwaitingCredentials()) {
+            out.put("nextAttemptAt", upload.getNextAttemptMillis());
+        }
+        if (upload.getLastError() != null) {
+            out.put("lastError", upload.getLastError());
+        }
+        return out;
+    }
+
+    /**
+     * Queue a file (e.g. a capture "path") for upload from native code:
+     * {path, url, method ("POST" or "PUT", default POST), contentType,
+     * headers: {name: value}, tag (string kept with the job, e.g. the row to
+     * insert once uploaded)} -> {uploadId, bytes}. The file is copied, so
+     * ring paths may be reused right after. Headers are stored with the job:
+     * the user's token goes through setAuthToken instead.
+     */
+    @PluginMethod
+    public void enqueueUpload(PluginCall call) {
+        if (uploads == null) {
+            call.reject("Upload queue unavailable");
+            return;
+        }
+        String path = call.getString("path");
+        String url = call.getString("url");
+        if (path == null || url == null) {
+            call.reject("path and url are required");
+            return;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        JSObject headerObject = call.getObject("headers");
+        if (headerObject != null) {
+            Iterator<String> names = headerObject.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                headers.put(name, headerObject.optString(name, ""));
+            }
+        }
+        try {
+            UploadQueue.Upload upload = uploads.enqueue(new File(path), url,
+                    call.getString("method", "POST"), call.getString("contentType"),
+                    headers, call.getString("tag", ""));
+            JSObject ret = new JSObject();
+            ret.put("uploadId", upload.id);
+            ret.put("bytes", upload.bytes);
+            call.resolve(ret);
+        } catch (IOException | IllegalArgumentException e) {
+            call.reject("Failed to queue upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bearer token sent with every upload, kept in memory only: {token}, null
+     * when signed out. Nothing is sent until a token is set; an upload refused
+     * for its token waits for the next one (awaitingCredentials).
+     */
+    @PluginMethod
+    public void setAuthToken(PluginCall call) {
+        if (uploads != null) {
+            String token = call.getString("token");
+            uploads.setSessionHeader(AUTHORIZATION, token != null ? "Bearer " + token : null);
+        }
+        call.resolve();
+    }
+
+    /**
+     * -> {uploads: [{uploadId, url, tag, bytes, createdAt, attempts,
+     * awaitingCredentials, nextAttemptAt?, lastError?}]}
+     */
+    @PluginMethod
+    public void getUploads(PluginCall call) {
+        JSArray list = new JSArray();
+        if (uploads != null) {
+            for (UploadQueue.Upload upload : uploads.getUploads()) {
+                list.put(describeUpload(upload));
+            }
+        }
+        JSObject ret = new JSObject();
+        ret.put("uploads", list);
+        call.resolve(ret);
+    }
+
+    /**
+     * {uploadId} -> {cancelled}
+     */
+    @PluginMethod
+    public void cancelUpload(PluginCall call) {
+        String id = call.getString("uploadId");
+        JSObject ret = new JSObject();
+        ret.put("cancelled", uploads != null && id != null && uploads.cancel(id));
+        call.resolve(ret);
+    }
+
+    /**
+     * Connectivity is back: retry waiting uploads without their backoff
+     */
+    @PluginMethod
+    public void retryUploads(PluginCall call) {
+        if (uploads != null) {
+            uploads.retryNow();
+        }
+        call.resolve();
+    }
+
     @PluginMethod
 public void ping(PluginCall call) {
     android.util.Log.d("TopdonThermalPlugin", "🔥 ping() called from JS");
@@ -0,0 +1,69 @@
+package com.pfc.mobile;
+
+import com.infisense.iruvc.utils.IFrameCallback;
+
+/**
+ * The TC001 over USB: the {@link IFrameCallback} registered on the
+ * UVCCamera. Opening and closing the device stays with
+ * {@link TopdonCameraManager}; this only forwards frames while started.
+ *
+ * In frame mode the SDK delivers the YUYV image followed by the Y16
+ * temperature plane, otherwise the whole buffer is the Y16 plane.
+ */
+public class UsbThermalSource implements ThermalFrameSource, IFrameCallback {
+
+    private final int width;
+    private final int height;
+    private final int frameBytes;
+
+    private volatile Sink sink;
+
+    public UsbThermalSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.frameBytes = width * height * 2;
+    }
+
+    @Override
+    public String getName() {
+        return "usb";
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void start(Sink newSink) {
+        sink = newSink;
+    }
+
+    @Override
+    public void stop() {
+        sink = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return sink != null;
+    }
+
+    /**
+     * Runs on the USB callback thread for every frame: copy and publish only
+     */
+    @Override
+    public void onFrame(byte[] frame) {
+        Sink current = sink;
+        if (frame == null || current == null) {
+            return;
+        }
+        int offset = frame.length >= frameBytes * 2 ? frameBytes : 0;
+        current.onFrame(frame, offset, System.nanoTime());
+    }
+}
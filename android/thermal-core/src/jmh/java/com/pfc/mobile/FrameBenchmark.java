@@ -0,0 +1,256 @@
+package com.pfc.mobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of each hot-path step on a 256x192 frame: one benchmark
+ * op is one frame, so the score reads as ns/frame (40 ms budget at 25 fps).
+ * Inputs cycle through a few synthetic frames with noise and a moving hot spot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FrameBenchmark {
+
+    static final int WIDTH = 256;
+    static final int HEIGHT = 192;
+    static final int INPUT_FRAMES = 8;
+    static final long FRAME_NANOS = 40000000L;
+
+    ThermalFrame[] inputs;
+    ThermalFrame frame;
+    float[] celsius;
+    FrameStats stats;
+    int[] argb;
+    int[] argbScaled;
+    int next;
+
+    RadiometricConverter converter;
+    ParallelStripes stripes;
+    PaletteColorizer colorizer;
+    PaletteColorizer isothermColorizer;
+    PaletteColorizer agcColorizer;
+    TemperatureMatrixCodec matrixCodec;
+    RoiEngine roiEngine;
+    RoiEngine.RoiStats roiStats;
+    TemporalFilter temporalFilter;
+    FireWatchMonitor fireWatch;
+    FrameChangeDetector changeDetector;
+    TrendStore trendStore;
+    long trendMillis;
+
+    File recordingFile;
+    ThermalRecorder recorder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        inputs = syntheticFrames(INPUT_FRAMES, 1);
+        frame = new ThermalFrame(WIDTH, HEIGHT);
+        celsius = new float[WIDTH * HEIGHT];
+        stats = new FrameStats();
+        argb = new int[WIDTH * HEIGHT];
+        argbScaled = new int[WIDTH * HEIGHT * FrameUpscaler.MAX_SCALE * FrameUpscaler.MAX_SCALE];
+
+        converter = new RadiometricConverter();
+        stripes = new ParallelStripes(1, "bench");
+        colorizer = new PaletteColorizer(converter, stripes);
+        isothermColorizer = new PaletteColorizer(converter, stripes);
+        isothermColorizer.setIsotherm(150f, 0xFF00FF00);
+        agcColorizer = new PaletteColorizer(converter, stripes);
+        agcColorizer.setAgcSpan(1f, 99f, true, 1000);
+        matrixCodec = new TemperatureMatrixCodec(WIDTH, HEIGHT);
+
+        roiEngine = new RoiEngine(WIDTH, HEIGHT, converter);
+        roiEngine.put(roiEngine.rect("rect", 20, 20, 80, 60));
+        roiEngine.put(roiEngine.ellipse("ellipse", 100, 40, 120, 100));
+        roiEngine.put(roiEngine.polygon("polygon", new int[]{10, 150, 90, 100, 140, 180, 30, 190}));
+        roiStats = new RoiEngine.RoiStats();
+
+        changeDetector = new FrameChangeDetector(WIDTH, HEIGHT, FrameChangeDetector.DEFAULT_BLOCK_SIZE);
+        changeDetector.setThreshold(0.3f, converter.getRawPerKelvin());
+
+        temporalFilter = new TemporalFilter(WIDTH, HEIGHT, converter);
+        temporalFilter.configureEma(0.25f);
+
+        // Two hours at 25 fps already recorded, so queries hit full rings
+        trendStore = new TrendStore(roiEngine);
+        converter.convert(inputs[0], celsius, stats);
+        roiEngine.onFrame(inputs[0], celsius, stats);
+        for (int i = 0; i < 2 * 3600 * 25; i++) {
+            trendStore.record(trendMillis, stats);
+            trendMillis += 40;
+        }
+
+        FireWatchMonitor.Config config = new FireWatchMonitor.Config();
+        config.maxTemperature = 300f;
+        config.riseRate = 5f;
+        config.zones = new String[]{"rect", "ellipse"};
+        fireWatch = new FireWatchMonitor(config, roiEngine, new FireWatchMonitor.Listener() {
+            @Override
+            public void onAlarm(FireWatchMonitor.Alarm alarm) {
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stripes.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void openRecorder() throws IOException {
+        recordingFile = File.createTempFile("bench", ".pfcr");
+        recorder = new ThermalRecorder(recordingFile, WIDTH, HEIGHT, converter.getRawPerKelvin(),
+                ThermalRecorder.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeRecorder() throws IOException {
+        recorder.close();
+        recordingFile.delete();
+    }
+
+    /**
+     * Next input frame, with a timestamp advancing at 25 fps
+     */
+    ThermalFrame nextInput() {
+        ThermalFrame input = inputs[next++ & (INPUT_FRAMES - 1)];
+        input.timestampNanos += FRAME_NANOS * INPUT_FRAMES;
+        input.sequence += INPUT_FRAMES;
+        return input;
+    }
+
+    @Benchmark
+    public FrameStats convert() {
+        converter.convert(nextInput(), celsius, stats);
+        return stats;
+    }
+
+    @Benchmark
+    public FrameStats rectStats() {
+        converter.rectStats(nextInput(), 64, 48, 128, 96, stats);
+        return stats;
+    }
+
+    @Benchmark
+    public int[] colorizeRaw() {
+        ThermalFrame input = nextInput();
+        converter.convert(input, celsius, stats);
+        colorizer.colorize(input, stats, argb);
+        return argb;
+    }
+
+    /**
+     * Bilinear 4x in raw space with the palette and an isotherm in the same pass
+     */
+    @Benchmark
+    public int[] colorizeUpscaled4x() {
+        ThermalFrame input = nextInput();
+        converter.convert(input, celsius, stats);
+        isothermColorizer.colorize(input, stats, FrameUpscaler.MAX_SCALE, argbScaled);
+        return argbScaled;
+    }
+
+    /**
+     * Histogram, percentile span and plateau equalization, then colorize
+     */
+    @Benchmark
+    public int[] colorizeEqualized() {
+        agcColorizer.colorize(nextInput(), stats, argb);
+        return argb;
+    }
+
+    /**
+     * Centi-Kelvin matrix for JS, delta-encoded and deflated
+     */
+    @Benchmark
+    public int encodeMatrix() {
+        return matrixCodec.encode(nextInput(), converter.getRawPerKelvin(),
+                TemperatureMatrixCodec.DELTA | TemperatureMatrixCodec.DEFLATE);
+    }
+
+    /**
+     * Stream change gate: what a static frame costs instead of colorize + encode
+     */
+    @Benchmark
+    public boolean changeGate() {
+        return changeDetector.update(nextInput(), stats);
+    }
+
+    @Benchmark
+    public RoiEngine.RoiStats roiStats() {
+        ThermalFrame input = nextInput();
+        roiEngine.onFrame(input, celsius, stats);
+        roiEngine.readStats("polygon", roiStats);
+        return roiStats;
+    }
+
+    /**
+     * Per-frame cost of the trend store with three zones
+     */
+    @Benchmark
+    public long trendRecord() {
+        trendMillis += 40;
+        trendStore.record(trendMillis, stats);
+        return trendMillis;
+    }
+
+    /**
+     * Whole-session chart: the 10 s ring reduced to 300 points per series
+     */
+    @Benchmark
+    public TrendStore.Trend trendQuery() {
+        return trendStore.query(0, Long.MAX_VALUE, 300);
+    }
+
+    @Benchmark
+    public boolean temporalFilterEma() {
+        ThermalFrame input = nextInput();
+        temporalFilter.onFrame(input, celsius, stats);
+        return temporalFilter.copyLatest(frame);
+    }
+
+    @Benchmark
+    public long fireWatch() {
+        ThermalFrame input = nextInput();
+        converter.convert(input, celsius, stats);
+        roiEngine.onFrame(input, celsius, stats);
+        fireWatch.onFrame(input, celsius, stats);
+        return fireWatch.getEvaluatedFrames();
+    }
+
+    /**
+     * Delta encoding plus the mapped write, key frame every 25 frames
+     */
+    @Benchmark
+    public long recordFrame() throws IOException {
+        recorder.append(nextInput());
+        return recorder.getBytesWritten();
+    }
+
+    static ThermalFrame[] syntheticFrames(int count, long seed) {
+        SyntheticThermalSource source = new SyntheticThermalSource(WIDTH, HEIGHT, 25f, seed);
+        source.setGradient(4f);
+        source.setNoise(0.3f);
+        source.addHotspot(180f, 12f, WIDTH / 2f, HEIGHT / 2f, 40f, 2f);
+        ThermalFrame[] frames = new ThermalFrame[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = new ThermalFrame(WIDTH, HEIGHT);
+            source.renderFrame(frames[i]);
+            frames[i].timestampNanos = i * FRAME_NANOS;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,111 @@
+package com.pfc.mobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded scaling, in frames per second:
+ * - {@code pipeline*}: independent convert + ROI pipelines on 1, 2 and 4
+ *   threads (shared converter LUT, per-thread buffers), i.e. how far the
+ *   hot path scales before memory bandwidth or the shared table limits it
+ * - {@code colorize}: one frame split over {@code stripes} threads by
+ *   {@link ParallelStripes}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ScalingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final RadiometricConverter converter = new RadiometricConverter();
+    }
+
+    @State(Scope.Thread)
+    public static class Pipeline {
+        ThermalFrame[] inputs;
+        float[] celsius;
+        FrameStats stats;
+        RoiEngine roiEngine;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            inputs = FrameBenchmark.syntheticFrames(FrameBenchmark.INPUT_FRAMES, System.identityHashCode(this));
+            celsius = new float[FrameBenchmark.WIDTH * FrameBenchmark.HEIGHT];
+            stats = new FrameStats();
+            roiEngine = new RoiEngine(FrameBenchmark.WIDTH, FrameBenchmark.HEIGHT, shared.converter);
+            roiEngine.put(roiEngine.rect("rect", 20, 20, 80, 60));
+            roiEngine.put(roiEngine.ellipse("ellipse", 100, 40, 120, 100));
+        }
+
+        FrameStats run(RadiometricConverter converter) {
+            ThermalFrame input = inputs[next++ & (FrameBenchmark.INPUT_FRAMES - 1)];
+            converter.convert(input, celsius, stats);
+            roiEngine.onFrame(input, celsius, stats);
+            return stats;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Striped {
+        @Param({"1", "2", "4"})
+        int stripes;
+
+        ParallelStripes parallel;
+        PaletteColorizer colorizer;
+        ThermalFrame input;
+        FrameStats stats;
+        int[] argb;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            parallel = new ParallelStripes(stripes, "bench");
+            colorizer = new PaletteColorizer(shared.converter, parallel);
+            input = FrameBenchmark.syntheticFrames(1, 1)[0];
+            stats = new FrameStats();
+            shared.converter.convert(input, new float[input.pixelCount()], stats);
+            argb = new int[input.pixelCount()];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            parallel.shutdown();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public FrameStats pipeline1(Shared shared, Pipeline pipeline) {
+        return pipeline.run(shared.converter);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public FrameStats pipeline2(Shared shared, Pipeline pipeline) {
+        return pipeline.run(shared.converter);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FrameStats pipeline4(Shared shared, Pipeline pipeline) {
+        return pipeline.run(shared.converter);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] colorize(Striped striped) {
+        striped.colorizer.colorize(striped.input, striped.stats, striped.argb);
+        return striped.argb;
+    }
+}
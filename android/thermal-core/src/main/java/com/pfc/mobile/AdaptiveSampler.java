@@ -0,0 +1,94 @@
+package com.pfc.mobile;
+
+/**
+ * Duty-cycles frame processing for long watches.
+ *
+ * While the scene is thermally stable the {@link FrameProcessor} is slowed to
+ * {@code idleFps}; as soon as the frame max or mean moves more than the change
+ * threshold away from the last reference (or {@link #boost()} is called, e.g.
+ * on an alarm), it goes back to {@code activeFps} and stays there until the
+ * scene has been quiet for the hold time. Runs as a stage on the raw path.
+ */
+public class AdaptiveSampler implements FrameProcessor.Stage {
+
+    private final FrameProcessor processor;
+    private final long idleIntervalNanos;
+    private final long activeIntervalNanos;
+    private final float changeCelsius;
+    private final long holdNanos;
+
+    // Processor thread only
+    private boolean hasReference;
+    private float referenceMax;
+    private float referenceMean;
+    private long lastChangeNanos;
+
+    private volatile boolean active = true;
+    private volatile boolean boostRequested;
+    private volatile long transitions;
+
+    public AdaptiveSampler(FrameProcessor processor, int idleFps, int activeFps,
+                           float changeCelsius, long holdMillis) {
+        this.processor = processor;
+        this.idleIntervalNanos = 1000000000L / Math.max(1, idleFps);
+        this.activeIntervalNanos = 1000000000L / Math.max(1, activeFps);
+        this.changeCelsius = changeCelsius;
+        this.holdNanos = holdMillis * 1000000L;
+    }
+
+    /**
+     * Start in active mode; the rate drops once the scene settles
+     */
+    public void start() {
+        active = true;
+        processor.setFrameIntervalNanos(activeIntervalNanos);
+    }
+
+    /**
+     * Back to processing every frame
+     */
+    public void stop() {
+        processor.setFrameIntervalNanos(0);
+    }
+
+    /**
+     * Force the active rate for at least the hold time; safe from any thread
+     */
+    public void boost() {
+        boostRequested = true;
+        processor.setFrameIntervalNanos(activeIntervalNanos);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getTransitions() {
+        return transitions;
+    }
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+        long now = frame.timestampNanos;
+        boolean changed = !hasReference
+                || Math.abs(stats.max - referenceMax) > changeCelsius
+                || Math.abs(stats.mean - referenceMean) > changeCelsius;
+        if (boostRequested) {
+            boostRequested = false;
+            changed = true;
+        }
+        if (changed) {
+            hasReference = true;
+            referenceMax = stats.max;
+            referenceMean = stats.mean;
+            lastChangeNanos = now;
+        }
+
+        boolean shouldBeActive = now - lastChangeNanos < holdNanos;
+        if (shouldBeActive != active) {
+            active = shouldBeActive;
+            transitions++;
+            processor.setFrameIntervalNanos(shouldBeActive ? activeIntervalNanos : idleIntervalNanos);
+        }
+    }
+}
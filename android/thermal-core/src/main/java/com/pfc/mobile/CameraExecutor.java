@@ -0,0 +1,155 @@
+package com.pfc.mobile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread that owns every IRCMD/UVCCamera interaction.
+ *
+ * Jobs run one at a time, so the native objects are never touched
+ * concurrently. Jobs submitted under a key that is already queued or running
+ * are coalesced: the job runs once and every caller receives its result.
+ * Results are handed to {@code resultExecutor} (the main thread in the app).
+ */
+public class CameraExecutor {
+
+    public interface Job<T> {
+        T call() throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onResult(T value);
+        void onError(Exception error);
+    }
+
+    private final ExecutorService executor;
+    private final Executor resultExecutor;
+    private final Map<String, List<Callback<Object>>> inFlight = new HashMap<>();
+    private volatile Thread cameraThread;
+    private long coalescedCount;
+
+    public CameraExecutor(String name, Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                cameraThread = t;
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Run {@code job} on the camera thread, sharing the run with any pending
+     * job submitted under the same key. A null key never coalesces.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void submit(final String key, final Job<T> job, Callback<T> callback) {
+        final List<Callback<Object>> callbacks = new ArrayList<>(2);
+        callbacks.add((Callback<Object>) callback);
+
+        if (key != null) {
+            synchronized (inFlight) {
+                List<Callback<Object>> waiting = inFlight.get(key);
+                if (waiting != null) {
+                    waiting.add((Callback<Object>) callback);
+                    coalescedCount++;
+                    return;
+                }
+                inFlight.put(key, callbacks);
+            }
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Object result = null;
+                Exception error = null;
+                try {
+                    result = job.call();
+                } catch (Exception e) {
+                    error = e;
+                }
+
+                if (key != null) {
+                    // Later callers start a fresh run from here on
+                    synchronized (inFlight) {
+                        inFlight.remove(key);
+                    }
+                }
+                deliver(callbacks, result, error);
+            }
+        });
+    }
+
+    /**
+     * Run {@code task} on the camera thread without coalescing or result
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Run {@code task} on the camera thread and wait up to {@code timeoutMs} for it.
+     * Runs inline when already on the camera thread.
+     *
+     * @return false if the task did not finish in time
+     */
+    public boolean executeAndWait(Runnable task, long timeoutMs) {
+        if (isCameraThread()) {
+            task.run();
+            return true;
+        }
+        Future<?> future = executor.submit(task);
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public boolean isCameraThread() {
+        return Thread.currentThread() == cameraThread;
+    }
+
+    /**
+     * Number of calls answered by an already pending job instead of their own
+     */
+    public long getCoalescedCount() {
+        synchronized (inFlight) {
+            return coalescedCount;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void deliver(final List<Callback<Object>> callbacks, final Object result, final Exception error) {
+        if (callbacks == null) {
+            return;
+        }
+        resultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback<Object> callback : callbacks) {
+                    if (error != null) {
+                        callback.onError(error);
+                    } else {
+                        callback.onResult(result);
+                    }
+                }
+            }
+        });
+    }
+}
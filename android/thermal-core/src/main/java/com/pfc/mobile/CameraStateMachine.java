@@ -0,0 +1,132 @@
+package com.pfc.mobile;
+
+/**
+ * Connection state of the thermal camera, the single source of truth for readiness.
+ *
+ * <pre>
+ *   DETACHED -> PERMISSION_PENDING -> OPENING -> STREAMING
+ *       ^              |                 |          |
+ *       +--------------+-----------------+----------+   (detach)
+ *   any state -> ERROR -> PERMISSION_PENDING / OPENING / DETACHED
+ * </pre>
+ * STREAMING is entered on the first frame after opening, so "ready" means
+ * frames are actually flowing. Illegal transitions are ignored (and
+ * reported as false), which keeps late USB callbacks from flipping the
+ * state back. Listeners are called on the thread that made the transition.
+ */
+public class CameraStateMachine {
+
+    public enum State {
+        DETACHED,
+        PERMISSION_PENDING,
+        OPENING,
+        STREAMING,
+        ERROR
+    }
+
+    public interface Listener {
+        void onStateChanged(State previous, State state, String reason);
+    }
+
+    private final Listener listener;
+
+    // Guarded by this
+    private State state = State.DETACHED;
+    private String lastError;
+    private long openingSinceNanos;
+    private long lastTimeToFirstFrameNanos = -1;
+
+    // Read on every frame by the USB callback
+    private volatile boolean awaitingFirstFrame;
+
+    public CameraStateMachine(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public boolean isStreaming() {
+        return getState() == State.STREAMING;
+    }
+
+    public synchronized String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Time from entering OPENING to the first frame on the last connect, or -1
+     */
+    public synchronized long getLastTimeToFirstFrameNanos() {
+        return lastTimeToFirstFrameNanos;
+    }
+
+    /**
+     * Move to {@code next}
+     *
+     * @return false if the transition is not allowed from the current state
+     */
+    public boolean transition(State next, String reason) {
+        State previous;
+        synchronized (this) {
+            previous = state;
+            if (previous == next || !isAllowed(previous, next)) {
+                return false;
+            }
+            state = next;
+            if (next == State.OPENING) {
+                openingSinceNanos = System.nanoTime();
+                awaitingFirstFrame = true;
+            } else if (next != State.STREAMING) {
+                awaitingFirstFrame = false;
+            }
+            if (next == State.ERROR) {
+                lastError = reason;
+            }
+        }
+        listener.onStateChanged(previous, next, reason);
+        return true;
+    }
+
+    /**
+     * Called for every frame; moves OPENING to STREAMING on the first one.
+     * A single volatile read once streaming.
+     *
+     * @return true if this frame completed the connection
+     */
+    public boolean onFrame(long frameNanos) {
+        if (!awaitingFirstFrame) {
+            return false;
+        }
+        long elapsed;
+        synchronized (this) {
+            if (!awaitingFirstFrame || state != State.OPENING) {
+                return false;
+            }
+            awaitingFirstFrame = false;
+            elapsed = frameNanos - openingSinceNanos;
+            lastTimeToFirstFrameNanos = elapsed;
+        }
+        return transition(State.STREAMING, "first frame after " + (elapsed / 1000000L) + " ms");
+    }
+
+    private static boolean isAllowed(State from, State to) {
+        if (to == State.ERROR || to == State.DETACHED) {
+            return true;
+        }
+        switch (from) {
+            case DETACHED:
+            case ERROR:
+                return to == State.PERMISSION_PENDING || to == State.OPENING;
+            case PERMISSION_PENDING:
+                return to == State.OPENING;
+            case OPENING:
+                return to == State.STREAMING;
+            case STREAMING:
+                return to == State.OPENING;
+            default:
+                return false;
+        }
+    }
+}
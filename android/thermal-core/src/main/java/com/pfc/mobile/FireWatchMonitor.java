@@ -0,0 +1,253 @@
+package com.pfc.mobile;
+
+/**
+ * Native fire-watch alarm engine, evaluated on every processed frame.
+ *
+ * Watches the hottest pixel of the whole frame and, optionally, of named
+ * {@link RoiEngine} zones. Each zone trips on an absolute threshold and on
+ * a rate of rise, the least-squares slope (°C/s) over a sliding window kept
+ * in preallocated primitive ring buffers. Both conditions have hysteresis:
+ * an alarm only clears once the value has dropped a margin below its
+ * threshold. The {@link Listener} is called only on transitions, so there
+ * is no per-frame traffic to JS.
+ */
+public class FireWatchMonitor implements FrameProcessor.Stage {
+
+    public static final String ZONE_FRAME = "frame";
+    public static final String KIND_ABSOLUTE = "absolute";
+    public static final String KIND_RATE_OF_RISE = "rateOfRise";
+
+    /** Upper bound on the sampling rate, used to size the ring buffers */
+    private static final int MAX_FPS = 30;
+    private static final int MIN_RATE_SAMPLES = 3;
+
+    /**
+     * Thresholds; a NaN threshold disables that condition
+     */
+    public static class Config {
+        public float maxTemperature = Float.NaN;
+        public float absoluteHysteresis = 2f;
+        public float riseRate = Float.NaN;
+        public float riseHysteresis = Float.NaN;
+        public float windowSeconds = 10f;
+        public String[] zones = new String[0];
+    }
+
+    /**
+     * One alarm transition
+     */
+    public static class Alarm {
+        public String zone;
+        public String kind;
+        public boolean tripped;
+        public float temperature;
+        public float rate;
+        public float threshold;
+        public int x;
+        public int y;
+        public long frameId;
+        public long timestampNanos;
+    }
+
+    public interface Listener {
+        void onAlarm(Alarm alarm);
+    }
+
+    /**
+     * Per-zone state: ring buffer of (time, max) samples with running sums
+     * for the slope, plus the alarm flags
+     */
+    private static final class Channel {
+        final String zone;
+        final double[] times;
+        final float[] values;
+        int head;
+        int size;
+        double sumT;
+        double sumV;
+        double sumTT;
+        double sumTV;
+
+        float temperature = Float.NaN;
+        float rate = Float.NaN;
+        int x;
+        int y;
+        boolean absoluteActive;
+        boolean riseActive;
+
+        Channel(String zone, int capacity) {
+            this.zone = zone;
+            this.times = new double[capacity];
+            this.values = new float[capacity];
+        }
+
+        void add(double t, float v) {
+            if (size == times.length) {
+                removeOldest();
+            }
+            int i = (head + size) % times.length;
+            times[i] = t;
+            values[i] = v;
+            size++;
+            sumT += t;
+            sumV += v;
+            sumTT += t * t;
+            sumTV += t * v;
+        }
+
+        void evictBefore(double t) {
+            while (size > 0 && times[head] < t) {
+                removeOldest();
+            }
+        }
+
+        void removeOldest() {
+            double t = times[head];
+            float v = values[head];
+            sumT -= t;
+            sumV -= v;
+            sumTT -= t * t;
+            sumTV -= t * v;
+            head = (head + 1) % times.length;
+            size--;
+        }
+
+        double span() {
+            return size == 0 ? 0 : times[(head + size - 1) % times.length] - times[head];
+        }
+
+        /** Least-squares slope of value over time */
+        float slope() {
+            double denominator = size * sumTT - sumT * sumT;
+            if (size < MIN_RATE_SAMPLES || denominator <= 0) {
+                return Float.NaN;
+            }
+            return (float) ((size * sumTV - sumT * sumV) / denominator);
+        }
+    }
+
+    private final Config config;
+    private final RoiEngine roiEngine;
+    private final Listener listener;
+    private final Channel[] channels;
+    private final double windowSeconds;
+    private final RoiEngine.RoiStats roiStats = new RoiEngine.RoiStats();
+
+    // Processor thread only
+    private long startNanos = -1;
+    private volatile long evaluatedFrames;
+
+    /**
+     * @param roiEngine source of zone readings, may be null when no zones are watched
+     */
+    public FireWatchMonitor(Config config, RoiEngine roiEngine, Listener listener) {
+        this.config = config;
+        this.roiEngine = roiEngine;
+        this.listener = listener;
+        this.windowSeconds = Math.max(1f, config.windowSeconds);
+        int capacity = (int) Math.ceil(windowSeconds * MAX_FPS) + 1;
+
+        String[] zones = config.zones != null ? config.zones : new String[0];
+        this.channels = new Channel[zones.length + 1];
+        channels[0] = new Channel(ZONE_FRAME, capacity);
+        for (int i = 0; i < zones.length; i++) {
+            channels[i + 1] = new Channel(zones[i], capacity);
+        }
+    }
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+        if (startNanos < 0) {
+            startNanos = frame.timestampNanos;
+        }
+        double t = (frame.timestampNanos - startNanos) / 1e9;
+
+        synchronized (this) {
+            evaluate(channels[0], t, stats.max, stats.maxX, stats.maxY, frame);
+            for (int i = 1; i < channels.length; i++) {
+                Channel channel = channels[i];
+                if (roiEngine != null && roiEngine.readStats(channel.zone, roiStats)
+                        && roiStats.sequence == frame.sequence) {
+                    evaluate(channel, t, roiStats.max, roiStats.maxX, roiStats.maxY, frame);
+                }
+            }
+        }
+        evaluatedFrames++;
+    }
+
+    public long getEvaluatedFrames() {
+        return evaluatedFrames;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Snapshot of every watched zone, one Alarm-shaped entry per zone and
+     * condition ({@code tripped} is the current state)
+     */
+    public synchronized Alarm[] getStatus() {
+        Alarm[] status = new Alarm[channels.length * 2];
+        for (int i = 0; i < channels.length; i++) {
+            Channel channel = channels[i];
+            status[2 * i] = describe(channel, KIND_ABSOLUTE, channel.absoluteActive, config.maxTemperature);
+            status[2 * i + 1] = describe(channel, KIND_RATE_OF_RISE, channel.riseActive, config.riseRate);
+        }
+        return status;
+    }
+
+    private void evaluate(Channel channel, double t, float temperature, int x, int y, ThermalFrame frame) {
+        channel.add(t, temperature);
+        channel.evictBefore(t - windowSeconds);
+        channel.temperature = temperature;
+        channel.x = x;
+        channel.y = y;
+        channel.rate = channel.span() >= windowSeconds / 2 ? channel.slope() : Float.NaN;
+
+        float maxTemperature = config.maxTemperature;
+        if (!Float.isNaN(maxTemperature)) {
+            if (!channel.absoluteActive && temperature >= maxTemperature) {
+                channel.absoluteActive = true;
+                fire(channel, KIND_ABSOLUTE, true, maxTemperature, frame);
+            } else if (channel.absoluteActive
+                    && temperature <= maxTemperature - config.absoluteHysteresis) {
+                channel.absoluteActive = false;
+                fire(channel, KIND_ABSOLUTE, false, maxTemperature, frame);
+            }
+        }
+
+        float riseRate = config.riseRate;
+        float rate = channel.rate;
+        if (!Float.isNaN(riseRate) && !Float.isNaN(rate)) {
+            float riseHysteresis = Float.isNaN(config.riseHysteresis) ? riseRate / 2 : config.riseHysteresis;
+            if (!channel.riseActive && rate >= riseRate) {
+                channel.riseActive = true;
+                fire(channel, KIND_RATE_OF_RISE, true, riseRate, frame);
+            } else if (channel.riseActive && rate <= riseRate - riseHysteresis) {
+                channel.riseActive = false;
+                fire(channel, KIND_RATE_OF_RISE, false, riseRate, frame);
+            }
+        }
+    }
+
+    private void fire(Channel channel, String kind, boolean tripped, float threshold, ThermalFrame frame) {
+        Alarm alarm = describe(channel, kind, tripped, threshold);
+        alarm.frameId = frame.sequence;
+        alarm.timestampNanos = frame.timestampNanos;
+        listener.onAlarm(alarm);
+    }
+
+    private static Alarm describe(Channel channel, String kind, boolean tripped, float threshold) {
+        Alarm alarm = new Alarm();
+        alarm.zone = channel.zone;
+        alarm.kind = kind;
+        alarm.tripped = tripped;
+        alarm.temperature = channel.temperature;
+        alarm.rate = channel.rate;
+        alarm.threshold = threshold;
+        alarm.x = channel.x;
+        alarm.y = channel.y;
+        return alarm;
+    }
+}
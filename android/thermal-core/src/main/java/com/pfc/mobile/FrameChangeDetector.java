@@ -0,0 +1,113 @@
+package com.pfc.mobile;
+
+import java.util.Arrays;
+
+/**
+ * Cheap "did the scene change" test, to skip rendering static frames.
+ *
+ * The raw frame is reduced to sums over {@code blockSize} squares (768 blocks
+ * of 8x8 on a 256x192 frame), which averages sensor noise away while a few
+ * hot pixels still move their block. A frame counts as changed when any
+ * block mean, or the frame max, is more than the threshold away from the
+ * reference: the last frame reported as changed, so slow drifts add up until
+ * they trip. One pass over the raw data, no allocation. Not thread-safe.
+ */
+public class FrameChangeDetector {
+
+    public static final int DEFAULT_BLOCK_SIZE = 8;
+
+    private final int width;
+    private final int height;
+    private final int blockSize;
+    private final int blocksX;
+    private final int[] blockPixels;
+    private final int[] limits;
+    private final int[] current;
+    private final int[] reference;
+
+    private float thresholdCelsius;
+    private boolean hasReference;
+    private float referenceMax;
+
+    public FrameChangeDetector(int width, int height, int blockSize) {
+        if (blockSize < 1 || blockSize > 16) {
+            // 16x16 blocks of 16-bit values still sum into an int
+            throw new IllegalArgumentException("Block size must be 1..16: " + blockSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.blockSize = blockSize;
+        this.blocksX = (width + blockSize - 1) / blockSize;
+        int blocksY = (height + blockSize - 1) / blockSize;
+        int blocks = blocksX * blocksY;
+        this.blockPixels = new int[blocks];
+        this.limits = new int[blocks];
+        this.current = new int[blocks];
+        this.reference = new int[blocks];
+        for (int by = 0; by < blocksY; by++) {
+            int rows = Math.min(blockSize, height - by * blockSize);
+            for (int bx = 0; bx < blocksX; bx++) {
+                blockPixels[by * blocksX + bx] = rows * Math.min(blockSize, width - bx * blockSize);
+            }
+        }
+    }
+
+    /**
+     * Smallest change in Celsius (block mean or frame max) that counts
+     *
+     * @param rawPerKelvin raw units per kelvin of the frames' converter
+     */
+    public void setThreshold(float celsius, float rawPerKelvin) {
+        thresholdCelsius = Math.max(0f, celsius);
+        float perPixel = thresholdCelsius * rawPerKelvin;
+        for (int b = 0; b < limits.length; b++) {
+            limits[b] = (int) (perPixel * blockPixels[b]);
+        }
+        hasReference = false;
+    }
+
+    public float getThresholdCelsius() {
+        return thresholdCelsius;
+    }
+
+    /**
+     * Forget the reference: the next frame counts as changed
+     */
+    public void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * True if {@code frame} moved past the threshold (always for the first
+     * frame after a reset); a changed frame becomes the new reference
+     */
+    public boolean update(ThermalFrame frame, FrameStats stats) {
+        final short[] raw = frame.raw;
+        final int[] sums = current;
+        Arrays.fill(sums, 0);
+        for (int y = 0; y < height; y++) {
+            int b = (y / blockSize) * blocksX;
+            int i = y * width;
+            final int rowEnd = i + width;
+            while (i < rowEnd) {
+                final int end = Math.min(i + blockSize, rowEnd);
+                int sum = 0;
+                for (; i < end; i++) {
+                    sum += raw[i] & 0xFFFF;
+                }
+                sums[b++] += sum;
+            }
+        }
+
+        boolean changed = !hasReference || Math.abs(stats.max - referenceMax) > thresholdCelsius;
+        for (int b = 0; !changed && b < sums.length; b++) {
+            changed = Math.abs(sums[b] - reference[b]) > limits[b];
+        }
+        if (changed) {
+            System.arraycopy(sums, 0, reference, 0, sums.length);
+            referenceMax = stats.max;
+            hasReference = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,190 @@
+package com.pfc.mobile;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-frame processing loop fed by a {@link FrameTripleBuffer}.
+ *
+ * One dedicated thread takes the newest published frame, converts it once
+ * through the {@link RadiometricConverter} and hands the same buffers to
+ * every registered {@link Stage}. Frames published while a pass is running
+ * are skipped, never queued. The producer wakes the loop with
+ * {@link #signal()}, which does not allocate.
+ */
+public class FrameProcessor implements Runnable {
+
+    /**
+     * A step run for every processed frame, on the processor thread.
+     * Buffers are reused for the next frame: copy anything kept beyond the call.
+     */
+    public interface Stage {
+        void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats);
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Stage[] NO_STAGES = new Stage[0];
+
+    private final FrameTripleBuffer source;
+    private final RadiometricConverter converter;
+    private final ThermalFrame frame;
+    private final float[] celsius;
+    private final FrameStats stats = new FrameStats();
+
+    private volatile Stage[] stages = NO_STAGES;
+    private volatile boolean running;
+    private volatile Thread thread;
+    private volatile long frameIntervalNanos;
+    private volatile long processedCount;
+    private volatile long stageErrorCount;
+    private volatile PipelineMetrics metrics;
+
+    public FrameProcessor(FrameTripleBuffer source, RadiometricConverter converter) {
+        this.source = source;
+        this.converter = converter;
+        this.frame = new ThermalFrame(source.getWidth(), source.getHeight());
+        this.celsius = new float[frame.pixelCount()];
+    }
+
+    public synchronized void addStage(Stage stage) {
+        Stage[] current = stages;
+        for (Stage s : current) {
+            if (s == stage) {
+                return;
+            }
+        }
+        Stage[] next = new Stage[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = stage;
+        stages = next;
+    }
+
+    public synchronized void removeStage(Stage stage) {
+        Stage[] current = stages;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == stage) {
+                Stage[] next = new Stage[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                stages = next;
+                return;
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread t = new Thread(this, "ThermalFrameProcessor");
+        t.setPriority(Thread.NORM_PRIORITY + 1);
+        thread = t;
+        t.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Wake the loop after a frame was published; safe from any thread
+     */
+    public void signal() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Process at most one frame per {@code intervalNanos} (0 = every frame).
+     * Frames in between are skipped, so the rate can change at any time
+     * without touching the camera.
+     */
+    public void setFrameIntervalNanos(long intervalNanos) {
+        frameIntervalNanos = Math.max(0, intervalNanos);
+        signal();
+    }
+
+    public long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    /**
+     * Record conversion and stage timings and skipped frames into {@code metrics} (null = off)
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public long getStageErrorCount() {
+        return stageErrorCount;
+    }
+
+    @Override
+    public void run() {
+        long lastProcessedNanos = 0;
+        while (running) {
+            if (!source.hasNewerThan(frame.sequence)) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            long interval = frameIntervalNanos;
+            if (interval > 0) {
+                long wait = lastProcessedNanos + interval - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, Math.min(wait, IDLE_PARK_NANOS));
+                    continue;
+                }
+            }
+            long previousSequence = frame.sequence;
+            if (!source.copyLatest(frame)) {
+                continue;
+            }
+            lastProcessedNanos = System.nanoTime();
+            converter.convert(frame, celsius, stats);
+            long convertedNanos = System.nanoTime();
+
+            Stage[] current = stages;
+            for (int i = 0; i < current.length; i++) {
+                try {
+                    current[i].onFrame(frame, celsius, stats);
+                } catch (RuntimeException e) {
+                    // A failing stage must not stop the others or the loop
+                    stageErrorCount++;
+                }
+            }
+            processedCount++;
+
+            PipelineMetrics currentMetrics = metrics;
+            if (currentMetrics != null) {
+                currentMetrics.conversion.record(convertedNanos - lastProcessedNanos);
+                currentMetrics.stages.record(System.nanoTime() - convertedNanos);
+                long skipped = previousSequence == 0 ? 0 : frame.sequence - previousSequence - 1;
+                currentMetrics.onFrameProcessed(skipped, interval > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.pfc.mobile;
+
+/**
+ * Per-frame temperature summary in Celsius, filled in place by
+ * {@link RadiometricConverter}
+ */
+public class FrameStats {
+    public float min;
+    public float max;
+    public float mean;
+    public float center;
+
+    public int minX;
+    public int minY;
+    public int maxX;
+    public int maxY;
+
+    /** Sequence of the frame these stats were computed from */
+    public long sequence;
+
+    public void copyFrom(FrameStats other) {
+        min = other.min;
+        max = other.max;
+        mean = other.mean;
+        center = other.center;
+        minX = other.minX;
+        minY = other.minY;
+        maxX = other.maxX;
+        maxY = other.maxY;
+        sequence = other.sequence;
+    }
+}
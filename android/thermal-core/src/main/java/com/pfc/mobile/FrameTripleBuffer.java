@@ -0,0 +1,122 @@
+package com.pfc.mobile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer between the USB frame callback and frame readers.
+ *
+ * The producer always owns one "back" slot and fills it in place; publishing
+ * swaps it with the shared "middle" slot in a single atomic operation, so the
+ * USB callback thread never waits on a reader. Readers swap the middle slot
+ * into their "front" slot and copy it out. All three slots are direct
+ * ByteBuffers allocated up front: steady state allocates nothing.
+ *
+ * Only one thread may produce. Readers are serialized among themselves
+ * (they never contend with the producer).
+ */
+public class FrameTripleBuffer {
+    private static final int INDEX_MASK = 0x3;
+    private static final int DIRTY = 0x4;
+
+    private final int width;
+    private final int height;
+    private final int frameBytes;
+
+    private final ByteBuffer[] slots = new ByteBuffer[3];
+    private final ShortBuffer[] shortViews = new ShortBuffer[3];
+    private final long[] sequences = new long[3];
+    private final long[] timestamps = new long[3];
+
+    /** Middle slot index, plus DIRTY when it holds a frame no reader has taken yet */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // Producer-owned
+    private int backIndex = 0;
+    private long nextSequence = 1;
+
+    private volatile long publishedSequence = 0;
+
+    // Reader-owned (guarded by this)
+    private int frontIndex = 2;
+
+    public FrameTripleBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.frameBytes = width * height * 2;
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = ByteBuffer.allocateDirect(frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+            shortViews[i] = slots[i].asShortBuffer();
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * Producer: copy one Y16 frame out of a callback byte[] and publish it.
+     *
+     * @param offset where the Y16 payload starts inside {@code data}
+     * @return false when {@code data} is too short to hold a full frame
+     */
+    public boolean publish(byte[] data, int offset, long timestampNanos) {
+        if (data == null || offset < 0 || data.length - offset < frameBytes) {
+            return false;
+        }
+        ByteBuffer back = slots[backIndex];
+        back.clear();
+        back.put(data, offset, frameBytes);
+        sequences[backIndex] = nextSequence++;
+        timestamps[backIndex] = timestampNanos;
+        // The atomic swap also publishes the slot contents written above
+        backIndex = middle.getAndSet(backIndex | DIRTY) & INDEX_MASK;
+        publishedSequence = nextSequence - 1;
+        return true;
+    }
+
+    /**
+     * Sequence number of the most recently published frame (0 if none)
+     */
+    public long getPublishedCount() {
+        return publishedSequence;
+    }
+
+    /**
+     * Reader: copy the newest published frame into {@code dest}.
+     *
+     * @return false if nothing has been published yet
+     */
+    public synchronized boolean copyLatest(ThermalFrame dest) {
+        if ((middle.get() & DIRTY) != 0) {
+            frontIndex = middle.getAndSet(frontIndex) & INDEX_MASK;
+        }
+        long sequence = sequences[frontIndex];
+        if (sequence == 0) {
+            return false;
+        }
+        ShortBuffer view = shortViews[frontIndex];
+        view.clear();
+        view.get(dest.raw, 0, Math.min(dest.raw.length, view.capacity()));
+        dest.sequence = sequence;
+        dest.timestampNanos = timestamps[frontIndex];
+        return true;
+    }
+
+    /**
+     * Reader: true when a frame newer than {@code lastSequence} is waiting
+     */
+    public boolean hasNewerThan(long lastSequence) {
+        return getPublishedCount() > lastSequence;
+    }
+}
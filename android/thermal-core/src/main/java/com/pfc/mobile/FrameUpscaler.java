@@ -0,0 +1,262 @@
+package com.pfc.mobile;
+
+/**
+ * Integer bilinear upscaling by 1x-4x into caller-owned buffers.
+ *
+ * Sample positions are pixel-center aligned and precomputed per size and
+ * scale as source indices plus 7-bit weights, so the inner loop is four
+ * loads, integer multiply-adds and shifts. Raw frames are interpolated in
+ * 16-bit raw space and mapped through a 256-entry palette in the same pass,
+ * with an optional isotherm: interpolated values at or above a threshold get
+ * a solid highlight color. Instead of a linear span, raw values can also go
+ * through a per-bin color table (histogram equalization). ARGB frames are
+ * interpolated two channels per multiply. Output rows are split into bands
+ * on {@link ParallelStripes}.
+ */
+public class FrameUpscaler {
+
+    public static final int MAX_SCALE = 4;
+
+    private static final int WEIGHT_BITS = 7;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+    private static final int ROUND = 1 << (2 * WEIGHT_BITS - 1);
+    private static final int FIXED_SHIFT = 16;
+    private static final int LANE_MASK = 0x00FF00FF;
+
+    private final ParallelStripes stripes;
+
+    // Sample tables for the current size and scale, guarded by this
+    private int tableWidth;
+    private int tableHeight;
+    private int tableScale;
+    private int[] x0 = new int[0];
+    private int[] x1 = new int[0];
+    private int[] wx = new int[0];
+    private int[] y0 = new int[0];
+    private int[] y1 = new int[0];
+    private int[] wy = new int[0];
+
+    // Per-frame job state, guarded by this
+    private short[] jobRaw;
+    private int[] jobArgb;
+    private int[] jobOut;
+    private int[] jobLut;
+    private int[] jobBinArgb;
+    private int jobLowRaw;
+    private int jobHighRaw;
+    private int jobScaleRaw;
+    private int jobIsothermRaw;
+    private int jobIsothermArgb;
+
+    private final ParallelStripes.Task rawTask = new ParallelStripes.Task() {
+        @Override
+        public void run(int start, int end) {
+            upscaleRawRows(start, end);
+        }
+    };
+
+    private final ParallelStripes.Task argbTask = new ParallelStripes.Task() {
+        @Override
+        public void run(int start, int end) {
+            upscaleArgbRows(start, end);
+        }
+    };
+
+    public FrameUpscaler(ParallelStripes stripes) {
+        this.stripes = stripes;
+    }
+
+    /**
+     * Upscale and colorize a raw frame into {@code out}
+     * ({@code width*scale} x {@code height*scale}).
+     *
+     * @param lut          256 ARGB entries, low to high
+     * @param isothermRaw  raw threshold for the isotherm, or -1 for none
+     */
+    public synchronized void upscaleRaw(ThermalFrame frame, int scale, int[] lut, int lowRaw, int highRaw,
+                                        int isothermRaw, int isothermArgb, int[] out) {
+        prepare(frame.width, frame.height, scale, out);
+        jobRaw = frame.raw;
+        jobOut = out;
+        jobLut = lut;
+        jobLowRaw = lowRaw;
+        jobHighRaw = Math.max(lowRaw + 1, highRaw);
+        jobScaleRaw = (255 << FIXED_SHIFT) / (jobHighRaw - jobLowRaw);
+        jobIsothermRaw = isothermRaw < 0 ? Integer.MAX_VALUE : isothermRaw;
+        jobIsothermArgb = isothermArgb;
+        jobBinArgb = null;
+        try {
+            stripes.run(frame.height * scale, rawTask);
+        } finally {
+            jobRaw = null;
+            jobOut = null;
+        }
+    }
+
+    /**
+     * Upscale a raw frame and color it through {@code binArgb}, one color
+     * per {@link HistogramAgc} bin (raw >>> 2), e.g. an equalized mapping
+     */
+    public synchronized void upscaleMapped(ThermalFrame frame, int scale, int[] binArgb,
+                                           int isothermRaw, int isothermArgb, int[] out) {
+        prepare(frame.width, frame.height, scale, out);
+        jobRaw = frame.raw;
+        jobOut = out;
+        jobBinArgb = binArgb;
+        jobIsothermRaw = isothermRaw < 0 ? Integer.MAX_VALUE : isothermRaw;
+        jobIsothermArgb = isothermArgb;
+        try {
+            stripes.run(frame.height * scale, rawTask);
+        } finally {
+            jobRaw = null;
+            jobOut = null;
+            jobBinArgb = null;
+        }
+    }
+
+    /**
+     * Upscale an already colorized frame into {@code out}
+     */
+    public synchronized void upscaleArgb(int[] argb, int width, int height, int scale, int[] out) {
+        prepare(width, height, scale, out);
+        jobArgb = argb;
+        jobOut = out;
+        try {
+            stripes.run(height * scale, argbTask);
+        } finally {
+            jobArgb = null;
+            jobOut = null;
+        }
+    }
+
+    private void prepare(int width, int height, int scale, int[] out) {
+        if (scale < 1 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be 1.." + MAX_SCALE + ": " + scale);
+        }
+        if (out.length < width * scale * height * scale) {
+            throw new IllegalArgumentException("Output buffer too small for " + scale + "x");
+        }
+        if (width != tableWidth || height != tableHeight || scale != tableScale) {
+            int outWidth = width * scale;
+            int outHeight = height * scale;
+            x0 = new int[outWidth];
+            x1 = new int[outWidth];
+            wx = new int[outWidth];
+            y0 = new int[outHeight];
+            y1 = new int[outHeight];
+            wy = new int[outHeight];
+            buildAxis(width, scale, x0, x1, wx);
+            buildAxis(height, scale, y0, y1, wy);
+            tableWidth = width;
+            tableHeight = height;
+            tableScale = scale;
+        }
+    }
+
+    /**
+     * Source sample {@code (o + 0.5) / scale - 0.5} for every output
+     * position, as two clamped indices and the weight of the second one
+     */
+    private static void buildAxis(int size, int scale, int[] first, int[] second, int[] weight) {
+        for (int o = 0; o < first.length; o++) {
+            // Rounded to the nearest 1/128: exact for 1x, 2x and 4x
+            int position = ((2 * o + 1) * WEIGHT_ONE + scale) / (2 * scale) - WEIGHT_ONE / 2;
+            if (position < 0) {
+                position = 0;
+            }
+            int index = position >> WEIGHT_BITS;
+            if (index >= size - 1) {
+                first[o] = size - 1;
+                second[o] = size - 1;
+                weight[o] = 0;
+            } else {
+                first[o] = index;
+                second[o] = index + 1;
+                weight[o] = position & (WEIGHT_ONE - 1);
+            }
+        }
+    }
+
+    private void upscaleRawRows(int startRow, int endRow) {
+        final short[] raw = jobRaw;
+        final int[] out = jobOut;
+        final int[] lut = jobLut;
+        final int[] binArgb = jobBinArgb;
+        final int low = jobLowRaw;
+        final int high = jobHighRaw;
+        final int scale = jobScaleRaw;
+        final int isothermRaw = jobIsothermRaw;
+        final int isothermArgb = jobIsothermArgb;
+        final int width = tableWidth;
+        final int outWidth = x0.length;
+        final int[] xa = x0;
+        final int[] xb = x1;
+        final int[] xw = wx;
+
+        for (int oy = startRow; oy < endRow; oy++) {
+            final int rowA = y0[oy] * width;
+            final int rowB = y1[oy] * width;
+            final int w = wy[oy];
+            int o = oy * outWidth;
+            for (int ox = 0; ox < outWidth; ox++, o++) {
+                final int a = xa[ox];
+                final int b = xb[ox];
+                final int f = xw[ox];
+                int top = raw[rowA + a] & 0xFFFF;
+                top = (top << WEIGHT_BITS) + ((raw[rowA + b] & 0xFFFF) - top) * f;
+                int bottom = raw[rowB + a] & 0xFFFF;
+                bottom = (bottom << WEIGHT_BITS) + ((raw[rowB + b] & 0xFFFF) - bottom) * f;
+                // Convex combination: never above (65535 << 14) + ROUND, fits an int
+                int v = ((top << WEIGHT_BITS) + (bottom - top) * w + ROUND) >> (2 * WEIGHT_BITS);
+
+                if (v >= isothermRaw) {
+                    out[o] = isothermArgb;
+                } else if (binArgb != null) {
+                    out[o] = binArgb[v >>> HistogramAgc.BIN_SHIFT];
+                } else {
+                    v = v < low ? low : (v > high ? high : v);
+                    out[o] = lut[((v - low) * scale) >>> FIXED_SHIFT];
+                }
+            }
+        }
+    }
+
+    private void upscaleArgbRows(int startRow, int endRow) {
+        final int[] argb = jobArgb;
+        final int[] out = jobOut;
+        final int width = tableWidth;
+        final int outWidth = x0.length;
+        final int[] xa = x0;
+        final int[] xb = x1;
+        final int[] xw = wx;
+
+        for (int oy = startRow; oy < endRow; oy++) {
+            final int rowA = y0[oy] * width;
+            final int rowB = y1[oy] * width;
+            final int w = wy[oy];
+            int o = oy * outWidth;
+            for (int ox = 0; ox < outWidth; ox++, o++) {
+                final int a = xa[ox];
+                final int b = xb[ox];
+                final int f = xw[ox];
+                int top = lerp(argb[rowA + a], argb[rowA + b], f);
+                int bottom = lerp(argb[rowB + a], argb[rowB + b], f);
+                out[o] = lerp(top, bottom, w);
+            }
+        }
+    }
+
+    /**
+     * Blend two ARGB colors, {@code weight}/128 of the second: alpha/green
+     * and red/blue each go through one multiply in 16-bit lanes
+     */
+    private static int lerp(int c0, int c1, int weight) {
+        if (weight == 0) {
+            return c0;
+        }
+        final int inverse = WEIGHT_ONE - weight;
+        int rb = ((c0 & LANE_MASK) * inverse + (c1 & LANE_MASK) * weight) >>> WEIGHT_BITS;
+        int ag = (((c0 >>> 8) & LANE_MASK) * inverse + ((c1 >>> 8) & LANE_MASK) * weight) >>> WEIGHT_BITS;
+        return (rb & LANE_MASK) | ((ag & LANE_MASK) << 8);
+    }
+}
@@ -0,0 +1,223 @@
+package com.pfc.mobile;
+
+import java.util.Arrays;
+
+/**
+ * Automatic gain control from a counting histogram of raw values.
+ *
+ * Each frame is counted into {@link #BINS} bins (raw >> 2, i.e. 1/4 K with
+ * the default 1/16 K raw), then one scan of the cumulative counts gives the
+ * percentile-clipped span; a hot spot or a few dead pixels no longer squash
+ * the rest of the scene into a couple of colors. Optionally the span is
+ * plateau-equalized: each bin is capped at {@link #PLATEAU} times the mean
+ * count before building the mapping, so large uniform backgrounds do not eat
+ * the palette. Span and mapping are smoothed over time so the image does not
+ * pump. Everything is O(pixels + bins) with preallocated tables.
+ *
+ * Not thread-safe: the owner serializes calls (the colorizer's lock).
+ */
+public class HistogramAgc {
+
+    public static final int BINS = 16384;
+    static final int BIN_SHIFT = 2;
+
+    /** Cap per bin for equalization, as a multiple of the mean count */
+    private static final int PLATEAU = 4;
+    /** Equalization mapping in 1/256 palette steps, for smoothing */
+    private static final int MAP_SHIFT = 8;
+
+    /**
+     * Settings, replaced as a whole from any thread
+     */
+    private static final class Config {
+        final float lowPercent;
+        final float highPercent;
+        final boolean equalize;
+        final long smoothingNanos;
+
+        Config(float lowPercent, float highPercent, boolean equalize, long smoothingMillis) {
+            this.lowPercent = lowPercent;
+            this.highPercent = highPercent;
+            this.equalize = equalize;
+            this.smoothingNanos = smoothingMillis * 1000000L;
+        }
+    }
+
+    private volatile Config config = new Config(1f, 99f, false, 1000);
+
+    private final int[] counts = new int[BINS];
+    // Palette index << MAP_SHIFT per bin
+    private final int[] mapping = new int[BINS];
+
+    private boolean hasSpan;
+    private boolean hasMapping;
+    private long lastSequence = -1;
+    private long lastTimestampNanos;
+    private float lowRaw;
+    private float highRaw;
+
+    /**
+     * @param lowPercent      share of pixels clipped to the bottom color (0-50)
+     * @param highPercent     percentile mapped to the top color (50-100)
+     * @param equalize        histogram-equalize the span instead of a linear ramp
+     * @param smoothingMillis time constant of the span smoothing, 0 for none
+     */
+    public void configure(float lowPercent, float highPercent, boolean equalize, long smoothingMillis) {
+        float low = Math.max(0f, Math.min(50f, lowPercent));
+        float high = Math.max(50f, Math.min(100f, highPercent));
+        config = new Config(low, high, equalize, Math.max(0, smoothingMillis));
+    }
+
+    public float getLowPercent() {
+        return config.lowPercent;
+    }
+
+    public float getHighPercent() {
+        return config.highPercent;
+    }
+
+    public boolean isEqualizing() {
+        return config.equalize;
+    }
+
+    public long getSmoothingMillis() {
+        return config.smoothingNanos / 1000000L;
+    }
+
+    /**
+     * Start over: the next frame sets the span without smoothing
+     */
+    public void reset() {
+        hasSpan = false;
+        hasMapping = false;
+        lastSequence = -1;
+    }
+
+    /**
+     * Count {@code frame} and move the span (and mapping) toward it. A frame
+     * already analyzed (same sequence) is not counted twice, so a capture and
+     * the stream rendering the same frame advance the smoothing once.
+     */
+    public void update(ThermalFrame frame) {
+        if (hasSpan && frame.sequence == lastSequence && frame.sequence != 0) {
+            return;
+        }
+        Config current = config;
+
+        final int[] bins = counts;
+        Arrays.fill(bins, 0);
+        final short[] raw = frame.raw;
+        final int pixels = frame.pixelCount();
+        for (int i = 0; i < pixels; i++) {
+            bins[(raw[i] & 0xFFFF) >>> BIN_SHIFT]++;
+        }
+
+        // Percentile bins from one cumulative scan
+        long lowRank = (long) Math.floor(pixels * current.lowPercent / 100.0);
+        long highRank = Math.max(lowRank + 1, (long) Math.ceil(pixels * current.highPercent / 100.0));
+        int lowBin = -1;
+        int highBin = BINS - 1;
+        long seen = 0;
+        for (int b = 0; b < BINS; b++) {
+            seen += bins[b];
+            if (lowBin < 0 && seen > lowRank) {
+                lowBin = b;
+            }
+            if (seen >= highRank) {
+                highBin = b;
+                break;
+            }
+        }
+        if (lowBin < 0) {
+            lowBin = highBin;
+        }
+        float targetLow = lowBin << BIN_SHIFT;
+        float targetHigh = Math.max(targetLow + 1, (highBin + 1) << BIN_SHIFT);
+
+        float alpha = 1f;
+        if (hasSpan && current.smoothingNanos > 0) {
+            long dt = Math.max(0, frame.timestampNanos - lastTimestampNanos);
+            alpha = (float) dt / (current.smoothingNanos + dt);
+            if (dt == 0) {
+                // Timestamps not set: one frame at a nominal 25 fps
+                alpha = 40000000f / (current.smoothingNanos + 40000000f);
+            }
+        }
+        if (!hasSpan) {
+            lowRaw = targetLow;
+            highRaw = targetHigh;
+        } else {
+            lowRaw += (targetLow - lowRaw) * alpha;
+            highRaw += (targetHigh - highRaw) * alpha;
+        }
+
+        if (current.equalize) {
+            updateMapping(getLowRaw() >>> BIN_SHIFT, (getHighRaw() - 1) >>> BIN_SHIFT,
+                    hasMapping ? alpha : 1f);
+            hasMapping = true;
+        } else {
+            hasMapping = false;
+        }
+        hasSpan = true;
+        lastSequence = frame.sequence;
+        lastTimestampNanos = frame.timestampNanos;
+    }
+
+    public int getLowRaw() {
+        return Math.round(lowRaw);
+    }
+
+    public int getHighRaw() {
+        return Math.max(getLowRaw() + 1, Math.round(highRaw));
+    }
+
+    /**
+     * Fill {@code binArgb} ({@link #BINS} entries) with the color of every
+     * bin under the equalized mapping; index a pixel with raw >>> 2
+     */
+    public void mapBins(int[] palette, int[] binArgb) {
+        final int[] map = mapping;
+        for (int b = 0; b < BINS; b++) {
+            binArgb[b] = palette[map[b] >>> MAP_SHIFT];
+        }
+    }
+
+    /**
+     * Plateau-equalized mapping over [lowBin, highBin], blended into the
+     * previous one by {@code alpha}
+     */
+    private void updateMapping(int lowBin, int highBin, float alpha) {
+        final int[] bins = counts;
+        final int[] map = mapping;
+        highBin = Math.max(lowBin, Math.min(BINS - 1, highBin));
+
+        long inSpan = 0;
+        for (int b = lowBin; b <= highBin; b++) {
+            inSpan += bins[b];
+        }
+        int span = highBin - lowBin + 1;
+        long plateau = Math.max(1, PLATEAU * inSpan / span);
+        long total = 0;
+        for (int b = lowBin; b <= highBin; b++) {
+            total += Math.min(bins[b], plateau);
+        }
+
+        final int top = 255 << MAP_SHIFT;
+        final int weight = Math.round(alpha * 256);
+        long cumulative = 0;
+        for (int b = 0; b < BINS; b++) {
+            int target;
+            if (b < lowBin) {
+                target = 0;
+            } else if (b > highBin || total == 0) {
+                target = b > highBin ? top : (int) ((long) top * (b - lowBin) / span);
+            } else {
+                // Center of the bin's share of the cumulative distribution
+                long count = Math.min(bins[b], plateau);
+                target = (int) ((cumulative * 2 + count) * top / (total * 2));
+                cumulative += count;
+            }
+            map[b] += ((target - map[b]) * weight) >> 8;
+        }
+    }
+}
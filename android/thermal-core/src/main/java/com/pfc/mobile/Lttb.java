@@ -0,0 +1,78 @@
+package com.pfc.mobile;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a time series.
+ *
+ * Keeps the first and last points and, for each of the {@code threshold - 2}
+ * buckets in between, the point forming the largest triangle with the point
+ * kept before it and the mean of the next bucket. Peaks survive, which is
+ * what a temperature chart must not lose; one pass, O(n).
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Write the indices of the kept points of {@code x[0..n)}, {@code y[0..n)}
+     * (x ascending) into {@code out}, in order
+     *
+     * @return number of indices written: n when n <= threshold
+     */
+    static int select(long[] x, float[] y, int n, int threshold, int[] out) {
+        if (n <= Math.max(threshold, 2)) {
+            for (int i = 0; i < n; i++) {
+                out[i] = i;
+            }
+            return n;
+        }
+        if (threshold < 3) {
+            // No room for buckets: the ends
+            out[0] = 0;
+            out[1] = n - 1;
+            return 2;
+        }
+
+        final double every = (double) (n - 2) / (threshold - 2);
+        int kept = 0;
+        int a = 0;
+        out[kept++] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Mean of the next bucket (the last point for the last bucket)
+            int nextStart = (int) ((bucket + 1) * every) + 1;
+            int nextEnd = Math.min(n, (int) ((bucket + 2) * every) + 1);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                meanX += x[i];
+                meanY += y[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            if (nextCount > 0) {
+                meanX /= nextCount;
+                meanY /= nextCount;
+            } else {
+                meanX = x[n - 1];
+                meanY = y[n - 1];
+            }
+
+            int start = (int) (bucket * every) + 1;
+            int end = (int) ((bucket + 1) * every) + 1;
+            double ax = x[a];
+            double ay = y[a];
+            double bestArea = -1;
+            int best = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - meanX) * (y[i] - ay) - (ax - x[i]) * (meanY - ay));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            out[kept++] = best;
+            a = best;
+        }
+        out[kept++] = n - 1;
+        return kept;
+    }
+}
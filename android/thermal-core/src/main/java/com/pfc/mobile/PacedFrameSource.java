@@ -0,0 +1,122 @@
+package com.pfc.mobile;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base for sources that render frames on their own thread at a given pace.
+ *
+ * Subclasses fill one reused little-endian Y16 buffer in
+ * {@link #render(byte[])} and say how long to wait before the next frame.
+ */
+public abstract class PacedFrameSource implements ThermalFrameSource {
+
+    private final int width;
+    private final int height;
+    private final byte[] buffer;
+    private final String threadName;
+
+    private volatile Sink sink;
+    private volatile Thread thread;
+    private volatile long emittedCount;
+
+    protected PacedFrameSource(int width, int height, String threadName) {
+        this.width = width;
+        this.height = height;
+        this.buffer = new byte[width * height * 2];
+        this.threadName = threadName;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public synchronized void start(Sink newSink) {
+        sink = newSink;
+        if (thread != null) {
+            return;
+        }
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, threadName);
+        thread = t;
+        t.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            sink = null;
+        }
+        if (t != null && t != Thread.currentThread()) {
+            LockSupport.unpark(t);
+            try {
+                t.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    public long getEmittedCount() {
+        return emittedCount;
+    }
+
+    /**
+     * Fill {@code out} with the next frame
+     *
+     * @return false when the source has nothing more to emit
+     */
+    protected abstract boolean render(byte[] out);
+
+    /**
+     * Delay between the frame just rendered and the next one (0 = as fast as possible)
+     */
+    protected abstract long nextFrameDelayNanos();
+
+    private void loop() {
+        Thread self = Thread.currentThread();
+        long nextDue = System.nanoTime();
+        while (thread == self) {
+            long wait = nextDue - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            if (!render(buffer)) {
+                break;
+            }
+            Sink current = sink;
+            if (current == null || thread != self) {
+                break;
+            }
+            current.onFrame(buffer, 0, System.nanoTime());
+            emittedCount++;
+            long delay = nextFrameDelayNanos();
+            // Keep the average rate when a frame ran late, without bursting to catch up
+            nextDue = Math.max(nextDue + delay, System.nanoTime() - delay);
+        }
+        synchronized (this) {
+            if (thread == self) {
+                thread = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.pfc.mobile;
+
+/**
+ * Maps raw Y16 or Celsius frames to ARGB pixels through 256-entry palette tables.
+ *
+ * Palettes are built once; a frame is a clamp, one fixed-point multiply and
+ * one table read per pixel, split into row stripes on {@link ParallelStripes}.
+ * Palette and span can be changed at any time from another thread: they are
+ * read once at the start of each frame and no buffer is reallocated.
+ *
+ * Besides auto (frame min/max) and manual spans, the span can come from a
+ * {@link HistogramAgc}: percentile-clipped and smoothed over time, and
+ * optionally histogram-equalized through a per-bin color table.
+ */
+public class PaletteColorizer {
+    public static final String IRONBOW = "ironbow";
+    public static final String RAINBOW = "rainbow";
+    public static final String WHITE_HOT = "white-hot";
+    public static final String BLACK_HOT = "black-hot";
+
+    private static final String[] NAMES = {IRONBOW, RAINBOW, WHITE_HOT, BLACK_HOT};
+    private static final int[][] PALETTES = {
+            buildPalette(new float[]{0f, 0.15f, 0.35f, 0.55f, 0.75f, 0.9f, 1f}, new int[]{
+                    0x000000, 0x1E006E, 0x8C0096, 0xDC3C28, 0xFA9600, 0xFFDC3C, 0xFFFFFF}),
+            buildPalette(new float[]{0f, 0.2f, 0.4f, 0.6f, 0.8f, 1f}, new int[]{
+                    0x00008C, 0x0050FF, 0x00FFFF, 0x00FF00, 0xFFFF00, 0xFF0000}),
+            buildPalette(new float[]{0f, 1f}, new int[]{0x000000, 0xFFFFFF}),
+            buildPalette(new float[]{0f, 1f}, new int[]{0xFFFFFF, 0x000000}),
+    };
+
+    private static final int FIXED_SHIFT = 16;
+
+    /**
+     * Display span; replaced as a whole so a frame never sees half an update
+     */
+    private static final class Span {
+        final boolean auto;
+        final float lowCelsius;
+        final float highCelsius;
+        // For an AGC span, low/high are percentiles rather than Celsius
+        final boolean agc;
+        final boolean equalize;
+        final long smoothingMillis;
+
+        Span(boolean auto, float lowCelsius, float highCelsius) {
+            this(auto, false, lowCelsius, highCelsius, false, 0);
+        }
+
+        Span(boolean auto, boolean agc, float low, float high, boolean equalize, long smoothingMillis) {
+            this.auto = auto;
+            this.agc = agc;
+            this.lowCelsius = low;
+            this.highCelsius = high;
+            this.equalize = equalize;
+            this.smoothingMillis = smoothingMillis;
+        }
+    }
+
+    private final RadiometricConverter converter;
+    private final ParallelStripes stripes;
+
+    /**
+     * Isotherm highlight: pixels at or above the threshold take a solid color
+     */
+    private static final class Isotherm {
+        final float celsius;
+        final int argb;
+
+        Isotherm(float celsius, int argb) {
+            this.celsius = celsius;
+            this.argb = argb;
+        }
+    }
+
+    private volatile int paletteIndex = 0;
+    private volatile Span span = new Span(true, 0f, 0f);
+    private volatile Isotherm isotherm;
+    private FrameUpscaler upscaler;
+    // Created on first use of an AGC span, guarded by this
+    private HistogramAgc agc;
+    private int[] binArgb;
+    private Span agcSpan;
+
+    // Per-frame job state, guarded by this
+    private short[] jobRaw;
+    private float[] jobCelsius;
+    private int[] jobOut;
+    private int[] jobLut;
+    private int[] jobBinArgb;
+    private int jobWidth;
+    private int jobLowRaw;
+    private int jobHighRaw;
+    private int jobScaleRaw;
+    private float jobLowCelsius;
+    private float jobHighCelsius;
+    private float jobScaleCelsius;
+    private int jobIsothermRaw;
+    private float jobIsothermCelsius;
+    private int jobIsothermArgb;
+
+    private final ParallelStripes.Task rawTask = new ParallelStripes.Task() {
+        @Override
+        public void run(int start, int end) {
+            colorizeRawRows(start, end);
+        }
+    };
+
+    private final ParallelStripes.Task celsiusTask = new ParallelStripes.Task() {
+        @Override
+        public void run(int start, int end) {
+            colorizeCelsiusRows(start, end);
+        }
+    };
+
+    public PaletteColorizer(RadiometricConverter converter, ParallelStripes stripes) {
+        this.converter = converter;
+        this.stripes = stripes;
+    }
+
+    public static String[] paletteNames() {
+        return NAMES.clone();
+    }
+
+    /**
+     * @return false if the palette name is unknown (current palette is kept)
+     */
+    public boolean setPalette(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                paletteIndex = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getPalette() {
+        return NAMES[paletteIndex];
+    }
+
+    /**
+     * Stretch each frame between its own min and max
+     */
+    public void setAutoSpan() {
+        span = new Span(true, 0f, 0f);
+    }
+
+    /**
+     * Fixed display span in Celsius
+     */
+    public void setManualSpan(float lowCelsius, float highCelsius) {
+        float low = Math.min(lowCelsius, highCelsius);
+        float high = Math.max(lowCelsius, highCelsius);
+        span = new Span(false, low, high);
+    }
+
+    /**
+     * Span from the raw histogram: {@code lowPercent} of the pixels clip to
+     * the bottom color and everything above {@code highPercent} to the top,
+     * smoothed with a {@code smoothingMillis} time constant. With
+     * {@code equalize} the colors follow the histogram instead of a ramp.
+     */
+    public void setAgcSpan(float lowPercent, float highPercent, boolean equalize, long smoothingMillis) {
+        float low = Math.max(0f, Math.min(50f, Math.min(lowPercent, highPercent)));
+        float high = Math.max(50f, Math.min(100f, Math.max(lowPercent, highPercent)));
+        span = new Span(true, true, low, high, equalize, Math.max(0, smoothingMillis));
+    }
+
+    /**
+     * True for the per-frame spans (auto and AGC)
+     */
+    public boolean isAutoSpan() {
+        return span.auto;
+    }
+
+    public boolean isAgcSpan() {
+        return span.agc;
+    }
+
+    /**
+     * Paint pixels at or above {@code celsius} with {@code argb}
+     */
+    public void setIsotherm(float celsius, int argb) {
+        isotherm = new Isotherm(celsius, argb);
+    }
+
+    public void clearIsotherm() {
+        isotherm = null;
+    }
+
+    /**
+     * Isotherm threshold in Celsius, or NaN when off
+     */
+    public float getIsothermCelsius() {
+        Isotherm current = isotherm;
+        return current != null ? current.celsius : Float.NaN;
+    }
+
+    /**
+     * Colorize a raw frame upscaled {@code scale} times (1-{@value FrameUpscaler#MAX_SCALE})
+     * with bilinear interpolation, isotherm included, in a single pass.
+     * {@code out} holds {@code width*scale} x {@code height*scale} pixels.
+     */
+    public synchronized void colorize(ThermalFrame frame, FrameStats stats, int scale, int[] out) {
+        if (scale == 1) {
+            colorize(frame, stats, out);
+            return;
+        }
+        if (upscaler == null) {
+            upscaler = new FrameUpscaler(stripes);
+        }
+        Span current = span;
+        Isotherm currentIsotherm = isotherm;
+        int[] lut = PALETTES[paletteIndex];
+        int isothermRaw = currentIsotherm != null ? converter.toRaw(currentIsotherm.celsius) : -1;
+        int isothermArgb = currentIsotherm != null ? currentIsotherm.argb : 0;
+        if (updateAgc(current, frame) && current.equalize) {
+            agc.mapBins(lut, binArgb);
+            upscaler.upscaleMapped(frame, scale, binArgb, isothermRaw, isothermArgb, out);
+            return;
+        }
+        int lowRaw;
+        int highRaw;
+        if (current.agc) {
+            lowRaw = agc.getLowRaw();
+            highRaw = agc.getHighRaw();
+        } else {
+            lowRaw = converter.toRaw(current.auto ? stats.min : current.lowCelsius);
+            highRaw = converter.toRaw(current.auto ? stats.max : current.highCelsius);
+        }
+        upscaler.upscaleRaw(frame, scale, lut, lowRaw, highRaw, isothermRaw, isothermArgb, out);
+    }
+
+    /**
+     * Colorize a raw frame. In auto mode the span comes from {@code stats},
+     * in AGC mode from the frame's histogram.
+     */
+    public synchronized void colorize(ThermalFrame frame, FrameStats stats, int[] out) {
+        Span current = span;
+        jobRaw = frame.raw;
+        jobOut = out;
+        jobLut = PALETTES[paletteIndex];
+        jobWidth = frame.width;
+        jobBinArgb = null;
+        if (updateAgc(current, frame)) {
+            jobLowRaw = agc.getLowRaw();
+            jobHighRaw = agc.getHighRaw();
+            if (current.equalize) {
+                agc.mapBins(jobLut, binArgb);
+                jobBinArgb = binArgb;
+            }
+        } else {
+            jobLowRaw = converter.toRaw(current.auto ? stats.min : current.lowCelsius);
+            jobHighRaw = Math.max(jobLowRaw + 1, converter.toRaw(current.auto ? stats.max : current.highCelsius));
+        }
+        jobScaleRaw = (255 << FIXED_SHIFT) / (jobHighRaw - jobLowRaw);
+        Isotherm currentIsotherm = isotherm;
+        jobIsothermRaw = currentIsotherm != null ? converter.toRaw(currentIsotherm.celsius) : Integer.MAX_VALUE;
+        jobIsothermArgb = currentIsotherm != null ? currentIsotherm.argb : 0;
+        try {
+            stripes.run(frame.height, rawTask);
+        } finally {
+            jobRaw = null;
+            jobOut = null;
+            jobBinArgb = null;
+        }
+    }
+
+    /**
+     * Colorize a Celsius matrix (e.g. a filtered one) with an explicit span
+     */
+    public synchronized void colorize(float[] celsius, int width, int height,
+                                      float lowCelsius, float highCelsius, int[] out) {
+        jobCelsius = celsius;
+        jobOut = out;
+        jobLut = PALETTES[paletteIndex];
+        jobWidth = width;
+        jobLowCelsius = lowCelsius;
+        jobHighCelsius = Math.max(lowCelsius + 0.01f, highCelsius);
+        jobScaleCelsius = 255f / (jobHighCelsius - jobLowCelsius);
+        Isotherm currentIsotherm = isotherm;
+        jobIsothermCelsius = currentIsotherm != null ? currentIsotherm.celsius : Float.POSITIVE_INFINITY;
+        jobIsothermArgb = currentIsotherm != null ? currentIsotherm.argb : 0;
+        try {
+            stripes.run(height, celsiusTask);
+        } finally {
+            jobCelsius = null;
+            jobOut = null;
+        }
+    }
+
+    /**
+     * Colorize a Celsius matrix using the configured span (auto and AGC use
+     * stats: there is no raw histogram here)
+     */
+    public void colorize(float[] celsius, int width, int height, FrameStats stats, int[] out) {
+        Span current = span;
+        colorize(celsius, width, height,
+                current.auto ? stats.min : current.lowCelsius,
+                current.auto ? stats.max : current.highCelsius,
+                out);
+    }
+
+    /**
+     * Run the AGC on {@code frame} if {@code current} is an AGC span; the
+     * first frame after switching to AGC sets the span without smoothing
+     */
+    private boolean updateAgc(Span current, ThermalFrame frame) {
+        if (!current.agc) {
+            agcSpan = null;
+            return false;
+        }
+        if (agc == null) {
+            agc = new HistogramAgc();
+            binArgb = new int[HistogramAgc.BINS];
+        }
+        if (current != agcSpan) {
+            agc.configure(current.lowCelsius, current.highCelsius, current.equalize, current.smoothingMillis);
+            if (agcSpan == null) {
+                agc.reset();
+            }
+            agcSpan = current;
+        }
+        agc.update(frame);
+        return true;
+    }
+
+    private void colorizeRawRows(int startRow, int endRow) {
+        if (jobBinArgb != null) {
+            colorizeMappedRows(startRow, endRow);
+            return;
+        }
+        final short[] raw = jobRaw;
+        final int[] out = jobOut;
+        final int[] lut = jobLut;
+        final int low = jobLowRaw;
+        final int high = jobHighRaw;
+        final int scale = jobScaleRaw;
+        final int isothermRaw = jobIsothermRaw;
+        final int isothermArgb = jobIsothermArgb;
+        final int end = endRow * jobWidth;
+
+        for (int i = startRow * jobWidth; i < end; i++) {
+            int v = raw[i] & 0xFFFF;
+            if (v >= isothermRaw) {
+                out[i] = isothermArgb;
+                continue;
+            }
+            v = v < low ? low : (v > high ? high : v);
+            out[i] = lut[((v - low) * scale) >>> FIXED_SHIFT];
+        }
+    }
+
+    private void colorizeMappedRows(int startRow, int endRow) {
+        final short[] raw = jobRaw;
+        final int[] out = jobOut;
+        final int[] binArgb = jobBinArgb;
+        final int isothermRaw = jobIsothermRaw;
+        final int isothermArgb = jobIsothermArgb;
+        final int end = endRow * jobWidth;
+
+        for (int i = startRow * jobWidth; i < end; i++) {
+            int v = raw[i] & 0xFFFF;
+            out[i] = v >= isothermRaw ? isothermArgb : binArgb[v >>> HistogramAgc.BIN_SHIFT];
+        }
+    }
+
+    private void colorizeCelsiusRows(int startRow, int endRow) {
+        final float[] celsius = jobCelsius;
+        final int[] out = jobOut;
+        final int[] lut = jobLut;
+        final float low = jobLowCelsius;
+        final float high = jobHighCelsius;
+        final float scale = jobScaleCelsius;
+        final float isothermCelsius = jobIsothermCelsius;
+        final int isothermArgb = jobIsothermArgb;
+        final int end = endRow * jobWidth;
+
+        for (int i = startRow * jobWidth; i < end; i++) {
+            float v = celsius[i];
+            if (v >= isothermCelsius) {
+                out[i] = isothermArgb;
+                continue;
+            }
+            v = v < low ? low : (v > high ? high : v);
+            out[i] = lut[(int) ((v - low) * scale)];
+        }
+    }
+
+    private static int[] buildPalette(float[] stops, int[] colors) {
+        int[] lut = new int[256];
+        int segment = 0;
+        for (int i = 0; i < 256; i++) {
+            float t = i / 255f;
+            while (segment < stops.length - 2 && t > stops[segment + 1]) {
+                segment++;
+            }
+            float f = (t - stops[segment]) / (stops[segment + 1] - stops[segment]);
+            f = f < 0f ? 0f : (f > 1f ? 1f : f);
+            int c0 = colors[segment];
+            int c1 = colors[segment + 1];
+            int r = Math.round(((c0 >> 16) & 0xFF) + f * (((c1 >> 16) & 0xFF) - ((c0 >> 16) & 0xFF)));
+            int g = Math.round(((c0 >> 8) & 0xFF) + f * (((c1 >> 8) & 0xFF) - ((c0 >> 8) & 0xFF)));
+            int b = Math.round((c0 & 0xFF) + f * ((c1 & 0xFF) - (c0 & 0xFF)));
+            lut[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return lut;
+    }
+}
@@ -0,0 +1,161 @@
+package com.pfc.mobile;
+
+/**
+ * Splits a row range into stripes and runs them on a fixed set of worker threads.
+ *
+ * Workers are started once and parked between jobs; dispatching a job only
+ * flips a generation counter, so per-frame use allocates nothing. The calling
+ * thread runs the first stripe itself and returns when all stripes are done.
+ * Jobs are serialized: concurrent callers simply take turns.
+ */
+public class ParallelStripes {
+
+    public interface Task {
+        /** Process rows [start, end) */
+        void run(int start, int end);
+    }
+
+    private final Object lock = new Object();
+    private final Thread[] workers;
+    private final int stripeCount;
+
+    // Current job, guarded by lock
+    private Task task;
+    private int total;
+    private long generation;
+    private int remaining;
+    private RuntimeException failure;
+    private boolean running = true;
+
+    /**
+     * @param threads total parallelism including the calling thread (at least 1)
+     */
+    public ParallelStripes(int threads, String name) {
+        this.stripeCount = Math.max(1, threads);
+        this.workers = new Thread[stripeCount - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final int stripe = i + 1;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    workerLoop(stripe);
+                }
+            }, name + "-" + stripe);
+            t.setDaemon(true);
+            workers[i] = t;
+            t.start();
+        }
+    }
+
+    /**
+     * One stripe per core, capped so UI and USB threads keep a core
+     */
+    public static int defaultParallelism() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(4, cores - 1));
+    }
+
+    public int getStripeCount() {
+        return stripeCount;
+    }
+
+    /**
+     * Run {@code task} over rows [0, rows) split into stripes, and wait for all of them
+     */
+    public synchronized void run(int rows, Task task) {
+        if (workers.length == 0 || rows < stripeCount * 2) {
+            task.run(0, rows);
+            return;
+        }
+
+        synchronized (lock) {
+            if (!running) {
+                throw new IllegalStateException("ParallelStripes is shut down");
+            }
+            this.task = task;
+            this.total = rows;
+            this.remaining = workers.length;
+            this.failure = null;
+            generation++;
+            lock.notifyAll();
+        }
+
+        RuntimeException ownFailure = null;
+        try {
+            task.run(stripeStart(0, rows), stripeStart(1, rows));
+        } catch (RuntimeException e) {
+            ownFailure = e;
+        }
+
+        RuntimeException workerFailure;
+        synchronized (lock) {
+            while (remaining > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            this.task = null;
+            workerFailure = failure;
+        }
+
+        if (ownFailure != null) {
+            throw ownFailure;
+        }
+        if (workerFailure != null) {
+            throw workerFailure;
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+    }
+
+    private int stripeStart(int stripe, int rows) {
+        return (int) ((long) rows * stripe / stripeCount);
+    }
+
+    private void workerLoop(int stripe) {
+        long seen = 0;
+        while (true) {
+            Task job;
+            int rows;
+            synchronized (lock) {
+                while (running && generation == seen) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                seen = generation;
+                job = task;
+                rows = total;
+            }
+
+            RuntimeException error = null;
+            try {
+                job.run(stripeStart(stripe, rows), stripeStart(stripe + 1, rows));
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            synchronized (lock) {
+                if (error != null && failure == null) {
+                    failure = error;
+                }
+                if (--remaining == 0) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
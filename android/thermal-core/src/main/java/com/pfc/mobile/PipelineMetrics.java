@@ -0,0 +1,116 @@
+package com.pfc.mobile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for the frame pipeline, cheap enough to
+ * stay on in production: every update is an atomic add.
+ *
+ * Dropped frames were published but overwritten before the processor got to
+ * them while it was meant to take every frame; throttled frames were skipped
+ * on purpose (adaptive sampling, pre-warm).
+ */
+public class PipelineMetrics {
+
+    /** Time between consecutive frames from the source */
+    public final LatencyHistogram frameInterval = new LatencyHistogram();
+    /** Raw to Celsius plus frame statistics */
+    public final LatencyHistogram conversion = new LatencyHistogram();
+    /** All processing stages of one frame (ROIs, fire watch, filter, recording...) */
+    public final LatencyHistogram stages = new LatencyHistogram();
+    public final LatencyHistogram colorization = new LatencyHistogram();
+    /** Image compression plus the file or base64 write */
+    public final LatencyHistogram encoding = new LatencyHistogram();
+    /** Handing one payload to the WebView bridge */
+    public final LatencyHistogram bridgeDelivery = new LatencyHistogram();
+
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesProcessed = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesThrottled = new AtomicLong();
+    private final AtomicLong bridgeMessages = new AtomicLong();
+    private final AtomicLong bridgeBytes = new AtomicLong();
+
+    // Source thread only
+    private long lastArrivalNanos;
+
+    private volatile long sinceNanos = System.nanoTime();
+
+    /**
+     * A frame came out of the source (source thread)
+     */
+    public void onFrameArrived(long timestampNanos) {
+        long last = lastArrivalNanos;
+        lastArrivalNanos = timestampNanos;
+        if (last != 0) {
+            frameInterval.record(timestampNanos - last);
+        }
+        framesReceived.incrementAndGet();
+    }
+
+    /**
+     * The processor took a frame; {@code skipped} newer-than-last frames were never seen
+     */
+    public void onFrameProcessed(long skipped, boolean throttled) {
+        framesProcessed.incrementAndGet();
+        if (skipped > 0) {
+            (throttled ? framesThrottled : framesDropped).addAndGet(skipped);
+        }
+    }
+
+    /**
+     * One payload of about {@code bytes} went to JS in {@code nanos}
+     */
+    public void onBridgeMessage(long bytes, long nanos) {
+        bridgeMessages.incrementAndGet();
+        bridgeBytes.addAndGet(bytes);
+        bridgeDelivery.record(nanos);
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesThrottled() {
+        return framesThrottled.get();
+    }
+
+    public long getBridgeMessages() {
+        return bridgeMessages.get();
+    }
+
+    public long getBridgeBytes() {
+        return bridgeBytes.get();
+    }
+
+    /**
+     * Start of the current measurement period
+     */
+    public long getSinceNanos() {
+        return sinceNanos;
+    }
+
+    public void reset() {
+        frameInterval.reset();
+        conversion.reset();
+        stages.reset();
+        colorization.reset();
+        encoding.reset();
+        bridgeDelivery.reset();
+        framesReceived.set(0);
+        framesProcessed.set(0);
+        framesDropped.set(0);
+        framesThrottled.set(0);
+        bridgeMessages.set(0);
+        bridgeBytes.set(0);
+        sinceNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,149 @@
+package com.pfc.mobile;
+
+/**
+ * Converts raw Y16 frames to Celsius through a precomputed lookup table.
+ *
+ * The TC001 reports temperatures as unsigned 16-bit values in 1/16 Kelvin,
+ * so every possible raw value fits in a 65,536-entry float table (256 KB)
+ * built once. A full 256x192 frame is then one table read per pixel, with
+ * min, max, mean and center collected in the same pass.
+ *
+ * The table is immutable after construction, so one instance can be shared
+ * by any number of threads.
+ */
+public class RadiometricConverter {
+    public static final float DEFAULT_RAW_PER_KELVIN = 16.0f;
+    private static final float KELVIN_OFFSET = 273.15f;
+
+    private final float rawPerKelvin;
+    private final float[] lut = new float[65536];
+
+    public RadiometricConverter() {
+        this(DEFAULT_RAW_PER_KELVIN);
+    }
+
+    public RadiometricConverter(float rawPerKelvin) {
+        this.rawPerKelvin = rawPerKelvin;
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = (i / rawPerKelvin) - KELVIN_OFFSET;
+        }
+    }
+
+    /**
+     * Celsius value of a single raw sample
+     */
+    public float toCelsius(int raw) {
+        return lut[raw & 0xFFFF];
+    }
+
+    /**
+     * Nearest raw value for a Celsius temperature, clamped to 0..65535
+     */
+    public int toRaw(float celsius) {
+        int raw = Math.round((celsius + KELVIN_OFFSET) * rawPerKelvin);
+        return raw < 0 ? 0 : (raw > 0xFFFF ? 0xFFFF : raw);
+    }
+
+    public float getRawPerKelvin() {
+        return rawPerKelvin;
+    }
+
+    /**
+     * Min, max, mean and center of a rectangle, clamped to the frame.
+     * Positions in {@code stats} are frame coordinates.
+     *
+     * @return false if the rectangle does not overlap the frame
+     */
+    public boolean rectStats(ThermalFrame frame, int x, int y, int width, int height, FrameStats stats) {
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(frame.width, x + width);
+        int y1 = Math.min(frame.height, y + height);
+        if (x1 <= x0 || y1 <= y0) {
+            return false;
+        }
+
+        final short[] raw = frame.raw;
+        int minRaw = 0xFFFF;
+        int maxRaw = 0;
+        int minIndex = 0;
+        int maxIndex = 0;
+        long sum = 0;
+        for (int row = y0; row < y1; row++) {
+            int end = row * frame.width + x1;
+            for (int i = row * frame.width + x0; i < end; i++) {
+                int v = raw[i] & 0xFFFF;
+                sum += v;
+                if (v < minRaw) {
+                    minRaw = v;
+                    minIndex = i;
+                }
+                if (v > maxRaw) {
+                    maxRaw = v;
+                    maxIndex = i;
+                }
+            }
+        }
+
+        int n = (x1 - x0) * (y1 - y0);
+        stats.min = lut[minRaw];
+        stats.max = lut[maxRaw];
+        stats.mean = (float) ((double) sum / n / rawPerKelvin - KELVIN_OFFSET);
+        stats.center = lut[frame.rawAt((x0 + x1 - 1) / 2, (y0 + y1 - 1) / 2)];
+        stats.minX = minIndex % frame.width;
+        stats.minY = minIndex / frame.width;
+        stats.maxX = maxIndex % frame.width;
+        stats.maxY = maxIndex / frame.width;
+        stats.sequence = frame.sequence;
+        return true;
+    }
+
+    /**
+     * Convert a whole frame and fill {@code stats} in the same pass.
+     *
+     * @param out destination matrix, at least {@code frame.pixelCount()} long;
+     *            may be null when only the stats are needed
+     */
+    public void convert(ThermalFrame frame, float[] out, FrameStats stats) {
+        final short[] raw = frame.raw;
+        final float[] table = lut;
+        final int n = raw.length;
+
+        int minRaw = 0xFFFF;
+        int maxRaw = 0;
+        int minIndex = 0;
+        int maxIndex = 0;
+        long sum = 0;
+
+        for (int i = 0; i < n; i++) {
+            int v = raw[i] & 0xFFFF;
+            if (out != null) {
+                out[i] = table[v];
+            }
+            sum += v;
+            if (v < minRaw) {
+                minRaw = v;
+                minIndex = i;
+            }
+            if (v > maxRaw) {
+                maxRaw = v;
+                maxIndex = i;
+            }
+        }
+
+        if (stats == null) {
+            return;
+        }
+        int width = frame.width;
+        stats.min = table[minRaw];
+        stats.max = table[maxRaw];
+        // Mean of raw values maps linearly to Celsius, no need to sum floats
+        stats.mean = n == 0 ? 0f : (float) ((double) sum / n / rawPerKelvin - KELVIN_OFFSET);
+        stats.center = table[frame.rawAt(width / 2, frame.height / 2)];
+        stats.minX = minIndex % width;
+        stats.minY = minIndex / width;
+        stats.maxX = maxIndex % width;
+        stats.maxY = maxIndex / width;
+        stats.sequence = frame.sequence;
+    }
+}
@@ -0,0 +1,210 @@
+package com.pfc.mobile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Radiometric capture file: the raw 16-bit matrix, capture metadata and an
+ * embedded JPEG thumbnail, so reports and re-analysis keep real temperatures.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header    96 bytes  magic "PFCSNAP1", version, width, height, raw/K,
+ *                       capture wall time, frame sequence, min/max/mean/center °C,
+ *                       min x/y, max x/y, metadata bytes, thumbnail bytes
+ *   raw       width * height * 2 bytes (1/rawPerKelvin K per unit)
+ *   metadata  UTF-8 JSON
+ *   thumbnail JPEG
+ * </pre>
+ * Written with a single gathering {@link FileChannel} write.
+ *
+ * Files are about 100 KB and are not kept forever: writers call
+ * {@link #prune} after each write (the app keeps the last 50, for at most a
+ * week), and JS deletes a snapshot it has uploaded with deleteSnapshot.
+ */
+public class RadiometricSnapshot {
+
+    private static final byte[] MAGIC = {'P', 'F', 'C', 'S', 'N', 'A', 'P', '1'};
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 96;
+
+    public static final String EXTENSION = ".pfcs";
+
+    public final ThermalFrame frame;
+    public final FrameStats stats;
+    public final float rawPerKelvin;
+    public final long captureWallMillis;
+    public final String metadataJson;
+    public final byte[] thumbnail;
+
+    private RadiometricSnapshot(ThermalFrame frame, FrameStats stats, float rawPerKelvin,
+                                long captureWallMillis, String metadataJson, byte[] thumbnail) {
+        this.frame = frame;
+        this.stats = stats;
+        this.rawPerKelvin = rawPerKelvin;
+        this.captureWallMillis = captureWallMillis;
+        this.metadataJson = metadataJson;
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * Write a snapshot of {@code frame}
+     *
+     * @param metadataJson free-form capture metadata, may be null
+     * @param thumbnail    encoded JPEG, from its position to its limit; may be null
+     * @return bytes written
+     */
+    public static long write(File file, ThermalFrame frame, FrameStats stats, float rawPerKelvin,
+                             long captureWallMillis, String metadataJson, ByteBuffer thumbnail)
+            throws IOException {
+        byte[] metadata = metadataJson != null
+                ? metadataJson.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer thumb = thumbnail != null ? thumbnail.duplicate() : ByteBuffer.allocate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(frame.width);
+        header.putInt(frame.height);
+        header.putFloat(rawPerKelvin);
+        header.putLong(captureWallMillis);
+        header.putLong(frame.sequence);
+        header.putFloat(stats.min);
+        header.putFloat(stats.max);
+        header.putFloat(stats.mean);
+        header.putFloat(stats.center);
+        header.putInt(stats.minX);
+        header.putInt(stats.minY);
+        header.putInt(stats.maxX);
+        header.putInt(stats.maxY);
+        header.putInt(metadata.length);
+        header.putInt(thumb.remaining());
+        header.clear();
+
+        ByteBuffer raw = ByteBuffer.allocate(frame.pixelCount() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        raw.asShortBuffer().put(frame.raw);
+
+        ByteBuffer[] parts = {header, raw, ByteBuffer.wrap(metadata), thumb};
+        long total = 0;
+        for (ByteBuffer part : parts) {
+            total += part.remaining();
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FileChannel channel = out.getChannel();
+            long written = 0;
+            while (written < total) {
+                written += channel.write(parts);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Read a snapshot back for re-analysis or reporting
+     */
+    public static RadiometricSnapshot read(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a radiometric snapshot: " + file.getName());
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            float rawPerKelvin = header.getFloat();
+            long captureWallMillis = header.getLong();
+
+            ThermalFrame frame = new ThermalFrame(width, height);
+            frame.sequence = header.getLong();
+            FrameStats stats = new FrameStats();
+            stats.min = header.getFloat();
+            stats.max = header.getFloat();
+            stats.mean = header.getFloat();
+            stats.center = header.getFloat();
+            stats.minX = header.getInt();
+            stats.minY = header.getInt();
+            stats.maxX = header.getInt();
+            stats.maxY = header.getInt();
+            stats.sequence = frame.sequence;
+            int metadataBytes = header.getInt();
+            int thumbnailBytes = header.getInt();
+
+            ByteBuffer raw = ByteBuffer.allocate(width * height * 2).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, raw);
+            raw.asShortBuffer().get(frame.raw);
+
+            ByteBuffer metadata = ByteBuffer.allocate(metadataBytes);
+            readFully(channel, metadata);
+            ByteBuffer thumbnail = ByteBuffer.allocate(thumbnailBytes);
+            readFully(channel, thumbnail);
+
+            return new RadiometricSnapshot(frame, stats, rawPerKelvin, captureWallMillis,
+                    metadataBytes > 0 ? new String(metadata.array(), StandardCharsets.UTF_8) : null,
+                    thumbnail.array());
+        }
+    }
+
+    /**
+     * Delete the snapshots in {@code dir} older than {@code maxAgeMillis},
+     * then the oldest ones beyond {@code maxCount}
+     *
+     * @return number of files deleted
+     */
+    public static int prune(File dir, int maxCount, long maxAgeMillis, long nowMillis) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        // Newest first; names carry the capture time, so they break ties
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                int byTime = Long.compare(b.lastModified(), a.lastModified());
+                return byTime != 0 ? byTime : b.getName().compareTo(a.getName());
+            }
+        });
+        int kept = 0;
+        int deleted = 0;
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(EXTENSION)) {
+                continue;
+            }
+            if (kept < maxCount && nowMillis - file.lastModified() <= maxAgeMillis) {
+                kept++;
+            } else if (file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Truncated snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
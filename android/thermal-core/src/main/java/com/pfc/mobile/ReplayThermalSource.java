@@ -0,0 +1,107 @@
+package com.pfc.mobile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Plays a {@link ThermalRecorder} file back as a live source, with the
+ * recorded frame timing scaled by {@code speed}. Frames are decoded in order,
+ * so each one costs a single delta decode.
+ */
+public class ReplayThermalSource extends PacedFrameSource {
+
+    private final ThermalRecordingPlayer player;
+    private final ThermalFrame frame;
+    private final float speed;
+    private final boolean loop;
+
+    // Source thread only
+    private int index;
+    private long delayNanos;
+
+    private volatile IOException failure;
+
+    /**
+     * @param speed playback rate (1 = as recorded), or 0 to emit as fast as the sink takes them
+     * @param loop  restart from the first frame at the end instead of stopping
+     */
+    public ReplayThermalSource(File file, float speed, boolean loop) throws IOException {
+        this(new ThermalRecordingPlayer(file), speed, loop);
+    }
+
+    private ReplayThermalSource(ThermalRecordingPlayer player, float speed, boolean loop) {
+        super(player.getWidth(), player.getHeight(), "ReplayThermalSource");
+        this.player = player;
+        this.frame = new ThermalFrame(player.getWidth(), player.getHeight());
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    public File getFile() {
+        return player.getFile();
+    }
+
+    public int getFrameCount() {
+        return player.getFrameCount();
+    }
+
+    public float getRawPerKelvin() {
+        return player.getRawPerKelvin();
+    }
+
+    /**
+     * The read error that ended playback, if any
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stop and close the recording
+     */
+    public void close() {
+        stop();
+        try {
+            player.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    @Override
+    protected boolean render(byte[] out) {
+        int count = player.getFrameCount();
+        if (count == 0 || (index >= count && !loop)) {
+            return false;
+        }
+        if (index >= count) {
+            index = 0;
+        }
+        try {
+            player.readFrame(index, frame);
+        } catch (IOException e) {
+            failure = e;
+            return false;
+        }
+        final short[] raw = frame.raw;
+        for (int i = 0, b = 0; i < raw.length; i++, b += 2) {
+            out[b] = (byte) raw[i];
+            out[b + 1] = (byte) (raw[i] >>> 8);
+        }
+
+        long gap = index + 1 < count ? player.timestampAt(index + 1) - player.timestampAt(index) : 0;
+        delayNanos = speed > 0 ? (long) (gap / speed) : 0;
+        index++;
+        return true;
+    }
+
+    @Override
+    protected long nextFrameDelayNanos() {
+        return delayNanos;
+    }
+}
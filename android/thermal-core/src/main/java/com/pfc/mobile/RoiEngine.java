@@ -0,0 +1,377 @@
+package com.pfc.mobile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-frame statistics for named regions of interest (fire-watch zones).
+ *
+ * Runs as a {@link FrameProcessor.Stage}. Every shape is rasterized once,
+ * when defined, into row spans; each frame one pass over the spans
+ * accumulates min, max, sum and sum of squares together, so a ROI costs its
+ * pixel count and nothing is computed for the rest of the frame.
+ *
+ * ROIs can be defined, replaced and removed from any thread; the processor
+ * thread sees a copy-on-write array. Results are read back with
+ * {@link #readStats(String, RoiStats)}.
+ */
+public class RoiEngine implements FrameProcessor.Stage {
+
+    public static final String TYPE_RECT = "rect";
+    public static final String TYPE_ELLIPSE = "ellipse";
+    public static final String TYPE_POLYGON = "polygon";
+
+    /**
+     * Latest results of one ROI, in Celsius
+     */
+    public static class RoiStats {
+        public String id;
+        public String type;
+        public float min;
+        public float max;
+        public float mean;
+        public float stdDev;
+        public int maxX;
+        public int maxY;
+        public int pixelCount;
+        public long sequence;
+    }
+
+    /**
+     * Immutable ROI shape as row spans [x0, x1) on row y, plus its latest results
+     */
+    public static final class Roi {
+        final String id;
+        final String type;
+        final int[] spanY;
+        final int[] spanX0;
+        final int[] spanX1;
+        final int pixelCount;
+
+        // Latest results, guarded by this
+        private float min;
+        private float max;
+        private float mean;
+        private float stdDev;
+        private int maxX;
+        private int maxY;
+        private long sequence;
+
+        private Roi(String id, String type, int[] spanY, int[] spanX0, int[] spanX1) {
+            this.id = id;
+            this.type = type;
+            this.spanY = spanY;
+            this.spanX0 = spanX0;
+            this.spanX1 = spanX1;
+            int count = 0;
+            for (int i = 0; i < spanY.length; i++) {
+                count += spanX1[i] - spanX0[i];
+            }
+            this.pixelCount = count;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getPixelCount() {
+            return pixelCount;
+        }
+
+        /**
+         * Latest max and mean into out[offset], out[offset + 1]
+         *
+         * @return false until the ROI has been measured
+         */
+        synchronized boolean readLatest(float[] out, int offset) {
+            if (sequence == 0) {
+                return false;
+            }
+            out[offset] = max;
+            out[offset + 1] = mean;
+            return true;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final RadiometricConverter converter;
+
+    private volatile Roi[] rois = new Roi[0];
+
+    public RoiEngine(int width, int height, RadiometricConverter converter) {
+        this.width = width;
+        this.height = height;
+        this.converter = converter;
+    }
+
+    // ---- Shape factories -------------------------------------------------
+
+    public Roi rect(String id, int x, int y, int w, int h) {
+        int x0 = clamp(x, 0, width);
+        int x1 = clamp(x + w, 0, width);
+        int y0 = clamp(y, 0, height);
+        int y1 = clamp(y + h, 0, height);
+        if (x1 <= x0 || y1 <= y0) {
+            throw new IllegalArgumentException("Rectangle is outside the frame");
+        }
+        int rows = y1 - y0;
+        int[] spanY = new int[rows];
+        int[] spanX0 = new int[rows];
+        int[] spanX1 = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            spanY[r] = y0 + r;
+            spanX0[r] = x0;
+            spanX1[r] = x1;
+        }
+        return new Roi(id, TYPE_RECT, spanY, spanX0, spanX1);
+    }
+
+    /**
+     * Ellipse inscribed in the given bounding box
+     */
+    public Roi ellipse(String id, int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            throw new IllegalArgumentException("Ellipse needs a positive width and height");
+        }
+        double cx = x + w / 2.0;
+        double cy = y + h / 2.0;
+        double rx = w / 2.0;
+        double ry = h / 2.0;
+
+        SpanBuilder spans = new SpanBuilder();
+        for (int row = Math.max(0, y); row < Math.min(height, y + h); row++) {
+            double dy = (row + 0.5 - cy) / ry;
+            double t = 1.0 - dy * dy;
+            if (t < 0) {
+                continue;
+            }
+            double half = rx * Math.sqrt(t);
+            int x0 = clamp((int) Math.ceil(cx - half - 0.5), 0, width);
+            int x1 = clamp((int) Math.floor(cx + half - 0.5) + 1, 0, width);
+            spans.add(row, x0, x1);
+        }
+        return spans.build(id, TYPE_ELLIPSE);
+    }
+
+    /**
+     * Polygon from x,y vertex pairs, filled with the even-odd rule at pixel centers
+     */
+    public Roi polygon(String id, int[] xy) {
+        int n = xy.length / 2;
+        if (n < 3) {
+            throw new IllegalArgumentException("Polygon needs at least 3 points");
+        }
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minY = Math.min(minY, xy[2 * i + 1]);
+            maxY = Math.max(maxY, xy[2 * i + 1]);
+        }
+
+        SpanBuilder spans = new SpanBuilder();
+        double[] crossings = new double[n];
+        for (int row = Math.max(0, minY); row <= Math.min(height - 1, maxY); row++) {
+            double sy = row + 0.5;
+            int count = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double yi = xy[2 * i + 1];
+                double yj = xy[2 * j + 1];
+                if ((yi > sy) != (yj > sy)) {
+                    double xi = xy[2 * i];
+                    double xj = xy[2 * j];
+                    crossings[count++] = xi + (sy - yi) * (xj - xi) / (yj - yi);
+                }
+            }
+            java.util.Arrays.sort(crossings, 0, count);
+            for (int k = 0; k + 1 < count; k += 2) {
+                int x0 = clamp((int) Math.ceil(crossings[k] - 0.5), 0, width);
+                int x1 = clamp((int) Math.ceil(crossings[k + 1] - 0.5), 0, width);
+                spans.add(row, x0, x1);
+            }
+        }
+        return spans.build(id, TYPE_POLYGON);
+    }
+
+    // ---- Registry --------------------------------------------------------
+
+    /**
+     * Add a ROI, replacing any ROI with the same id
+     */
+    public synchronized void put(Roi roi) {
+        Roi[] current = rois;
+        List<Roi> next = new ArrayList<>(current.length + 1);
+        for (Roi r : current) {
+            if (!r.id.equals(roi.id)) {
+                next.add(r);
+            }
+        }
+        next.add(roi);
+        rois = next.toArray(new Roi[0]);
+    }
+
+    public synchronized boolean remove(String id) {
+        Roi[] current = rois;
+        List<Roi> next = new ArrayList<>(current.length);
+        for (Roi r : current) {
+            if (!r.id.equals(id)) {
+                next.add(r);
+            }
+        }
+        rois = next.toArray(new Roi[0]);
+        return next.size() != current.length;
+    }
+
+    public synchronized void clear() {
+        rois = new Roi[0];
+    }
+
+    public boolean contains(String id) {
+        return find(id) != null;
+    }
+
+    public String[] ids() {
+        Roi[] current = rois;
+        String[] ids = new String[current.length];
+        for (int i = 0; i < current.length; i++) {
+            ids[i] = current[i].id;
+        }
+        return ids;
+    }
+
+    /**
+     * Current ROIs without copying, for per-frame consumers; the array is
+     * replaced, never modified
+     */
+    Roi[] current() {
+        return rois;
+    }
+
+    /**
+     * Copy the latest results of ROI {@code id} into {@code out}
+     *
+     * @return false if the ROI does not exist
+     */
+    public boolean readStats(String id, RoiStats out) {
+        Roi roi = find(id);
+        if (roi == null) {
+            return false;
+        }
+        synchronized (roi) {
+            out.id = roi.id;
+            out.type = roi.type;
+            out.min = roi.min;
+            out.max = roi.max;
+            out.mean = roi.mean;
+            out.stdDev = roi.stdDev;
+            out.maxX = roi.maxX;
+            out.maxY = roi.maxY;
+            out.pixelCount = roi.pixelCount;
+            out.sequence = roi.sequence;
+        }
+        return true;
+    }
+
+    // ---- Per-frame work --------------------------------------------------
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+        Roi[] current = rois;
+        for (Roi roi : current) {
+            measure(frame, roi);
+        }
+    }
+
+    private void measure(ThermalFrame frame, Roi roi) {
+        final int[] spanY = roi.spanY;
+        final int[] spanX0 = roi.spanX0;
+        final int[] spanX1 = roi.spanX1;
+        final short[] raw = frame.raw;
+        if (spanY.length == 0) {
+            return;
+        }
+
+        long sum = 0;
+        long sumSq = 0;
+        int minRaw = 0xFFFF;
+        int maxRaw = 0;
+        int maxIndex = 0;
+        for (int s = 0; s < spanY.length; s++) {
+            int rowStart = spanY[s] * width;
+            int end = rowStart + spanX1[s];
+            for (int i = rowStart + spanX0[s]; i < end; i++) {
+                int v = raw[i] & 0xFFFF;
+                sum += v;
+                sumSq += (long) v * v;
+                if (v < minRaw) {
+                    minRaw = v;
+                }
+                if (v > maxRaw) {
+                    maxRaw = v;
+                    maxIndex = i;
+                }
+            }
+        }
+
+        int n = Math.max(1, roi.pixelCount);
+        double meanRaw = (double) sum / n;
+        double varianceRaw = Math.max(0.0, (double) sumSq / n - meanRaw * meanRaw);
+        float scale = converter.getRawPerKelvin();
+
+        synchronized (roi) {
+            roi.min = converter.toCelsius(minRaw);
+            roi.max = converter.toCelsius(maxRaw);
+            roi.mean = converter.toCelsius(0) + (float) (meanRaw / scale);
+            roi.stdDev = (float) (Math.sqrt(varianceRaw) / scale);
+            roi.maxX = maxIndex % width;
+            roi.maxY = maxIndex / width;
+            roi.sequence = frame.sequence;
+        }
+    }
+
+    private Roi find(String id) {
+        for (Roi r : rois) {
+            if (r.id.equals(id)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return v < lo ? lo : (v > hi ? hi : v);
+    }
+
+    /**
+     * Collects row spans while rasterizing a shape
+     */
+    private static final class SpanBuilder {
+        private final List<int[]> spans = new ArrayList<>();
+
+        void add(int row, int x0, int x1) {
+            if (x1 > x0) {
+                spans.add(new int[]{row, x0, x1});
+            }
+        }
+
+        Roi build(String id, String type) {
+            if (spans.isEmpty()) {
+                throw new IllegalArgumentException("Shape does not cover any pixel of the frame");
+            }
+            int[] spanY = new int[spans.size()];
+            int[] spanX0 = new int[spans.size()];
+            int[] spanX1 = new int[spans.size()];
+            for (int i = 0; i < spans.size(); i++) {
+                int[] s = spans.get(i);
+                spanY[i] = s[0];
+                spanX0[i] = s[1];
+                spanX1[i] = s[2];
+            }
+            return new Roi(id, type, spanY, spanX0, spanX1);
+        }
+    }
+}
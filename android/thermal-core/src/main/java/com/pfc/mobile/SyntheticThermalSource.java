@@ -0,0 +1,194 @@
+package com.pfc.mobile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated thermal scene: a background with a horizontal gradient, hot
+ * spots orbiting around their anchor and per-pixel noise, in the camera's
+ * raw Y16 format.
+ *
+ * Scene time advances by one frame period per frame (not wall time), so the
+ * same seed and settings always produce the same frames, paced or not.
+ * Configure before {@link #start}.
+ */
+public class SyntheticThermalSource extends PacedFrameSource {
+
+    // Scene clock used when frames are emitted as fast as possible
+    private static final float UNPACED_SCENE_FPS = 25f;
+
+    private static class Hotspot {
+        final float peakCelsius;
+        final float radius;
+        final float anchorX;
+        final float anchorY;
+        final float orbit;
+        final float periodSeconds;
+
+        Hotspot(float peakCelsius, float radius, float anchorX, float anchorY, float orbit, float periodSeconds) {
+            this.peakCelsius = peakCelsius;
+            this.radius = radius;
+            this.anchorX = anchorX;
+            this.anchorY = anchorY;
+            this.orbit = orbit;
+            this.periodSeconds = periodSeconds;
+        }
+    }
+
+    private final RadiometricConverter converter;
+    private final long frameIntervalNanos;
+    private final float sceneSecondsPerFrame;
+    private final List<Hotspot> hotspots = new ArrayList<>();
+    private final float[] scene;
+
+    private float backgroundCelsius = 22f;
+    private float gradientCelsius;
+    private float noiseCelsius;
+    private long randomState;
+    private long frameIndex;
+
+    /**
+     * @param fps frames per second, or 0 to emit as fast as the sink takes them
+     */
+    public SyntheticThermalSource(int width, int height, float fps, long seed) {
+        super(width, height, "SyntheticThermalSource");
+        this.converter = new RadiometricConverter();
+        this.frameIntervalNanos = fps > 0 ? (long) (1000000000L / fps) : 0;
+        this.sceneSecondsPerFrame = 1f / (fps > 0 ? fps : UNPACED_SCENE_FPS);
+        this.scene = new float[width * height];
+        // xorshift needs a non-zero state
+        this.randomState = seed != 0 ? seed : 0x9E3779B97F4A7C15L;
+    }
+
+    @Override
+    public String getName() {
+        return "synthetic";
+    }
+
+    public void setBackground(float celsius) {
+        this.backgroundCelsius = celsius;
+    }
+
+    /**
+     * Temperature added from the left edge (0) to the right edge
+     */
+    public void setGradient(float celsiusAcrossWidth) {
+        this.gradientCelsius = celsiusAcrossWidth;
+    }
+
+    /**
+     * Peak amplitude of the per-pixel noise (triangular distribution)
+     */
+    public void setNoise(float celsius) {
+        this.noiseCelsius = celsius;
+    }
+
+    /**
+     * Add a hot spot with a smooth falloff reaching the background at
+     * {@code radius}, circling ({@code orbit} px) around its anchor once per
+     * {@code periodSeconds} (0 = static)
+     */
+    public void addHotspot(float peakCelsius, float radius, float anchorX, float anchorY,
+                           float orbit, float periodSeconds) {
+        hotspots.add(new Hotspot(peakCelsius, radius, anchorX, anchorY, orbit, periodSeconds));
+    }
+
+    public long getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Render the next frame into {@code out} without emitting it
+     */
+    public void renderFrame(ThermalFrame out) {
+        renderScene();
+        final short[] raw = out.raw;
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (short) converter.toRaw(scene[i]);
+        }
+        out.sequence = frameIndex;
+    }
+
+    @Override
+    protected boolean render(byte[] out) {
+        renderScene();
+        for (int i = 0, b = 0; i < scene.length; i++, b += 2) {
+            int raw = converter.toRaw(scene[i]);
+            out[b] = (byte) raw;
+            out[b + 1] = (byte) (raw >>> 8);
+        }
+        return true;
+    }
+
+    @Override
+    protected long nextFrameDelayNanos() {
+        return frameIntervalNanos;
+    }
+
+    private void renderScene() {
+        final int width = getWidth();
+        final int height = getHeight();
+        final float[] out = scene;
+        final float step = width > 1 ? gradientCelsius / (width - 1) : 0f;
+        final float noise = noiseCelsius;
+        long state = randomState;
+
+        final float value = backgroundCelsius;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                float n = 0f;
+                if (noise > 0f) {
+                    // Sum of two uniforms minus one: triangular in [-1, 1)
+                    state ^= state << 13;
+                    state ^= state >>> 7;
+                    state ^= state << 17;
+                    n = ((state >>> 40) + ((state >>> 16) & 0xFFFFFF)) * (1f / (1 << 24)) - 1f;
+                }
+                out[i] = value + x * step + n * noise;
+            }
+        }
+        randomState = state;
+
+        float t = frameIndex * sceneSecondsPerFrame;
+        for (int h = 0; h < hotspots.size(); h++) {
+            Hotspot spot = hotspots.get(h);
+            float cx = spot.anchorX;
+            float cy = spot.anchorY;
+            if (spot.periodSeconds > 0f) {
+                double angle = 2 * Math.PI * t / spot.periodSeconds;
+                cx += (float) (spot.orbit * Math.cos(angle));
+                cy += (float) (spot.orbit * Math.sin(angle));
+            }
+            paintHotspot(spot, cx, cy, width, height);
+        }
+        frameIndex++;
+    }
+
+    /**
+     * Raise the disc around (cx, cy) towards the peak with a cosine falloff
+     */
+    private void paintHotspot(Hotspot spot, float cx, float cy, int width, int height) {
+        final float radius = spot.radius;
+        final float radiusSq = radius * radius;
+        int x0 = Math.max(0, (int) Math.floor(cx - radius));
+        int x1 = Math.min(width - 1, (int) Math.ceil(cx + radius));
+        int y0 = Math.max(0, (int) Math.floor(cy - radius));
+        int y1 = Math.min(height - 1, (int) Math.ceil(cy + radius));
+        for (int y = y0; y <= y1; y++) {
+            float dy = y - cy;
+            for (int x = x0; x <= x1; x++) {
+                float dx = x - cx;
+                float distSq = dx * dx + dy * dy;
+                if (distSq >= radiusSq) {
+                    continue;
+                }
+                float weight = 0.5f + 0.5f * (float) Math.cos(Math.PI * Math.sqrt(distSq) / radius);
+                int i = y * width + x;
+                float target = spot.peakCelsius;
+                if (target > scene[i]) {
+                    scene[i] += (target - scene[i]) * weight;
+                }
+            }
+        }
+    }
+}
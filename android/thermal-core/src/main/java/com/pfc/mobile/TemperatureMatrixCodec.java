@@ -0,0 +1,148 @@
+package com.pfc.mobile;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Packs a raw frame as per-pixel temperatures for JS: unsigned 16-bit
+ * centi-Kelvin, little-endian, row-major, so JS can wrap the bytes as a
+ * Uint16Array (Celsius = v / 100 - 273.15). Values are clamped to 0-655.35 K
+ * (382.2 C).
+ *
+ * {@link #DELTA} stores each value minus the previous pixel's (modulo 2^16;
+ * JS undoes it with a running sum masked to 16 bits), which turns a smooth
+ * scene into small numbers; {@link #DEFLATE} then zlib-compresses the bytes
+ * (DecompressionStream("deflate") in the WebView). Delta plus deflate brings
+ * a 256x192 frame from 96 KB to a few tens of KB.
+ *
+ * Buffers and the Deflater are reused: encoding allocates nothing. Not
+ * thread-safe: give each producer its own instance.
+ */
+public class TemperatureMatrixCodec {
+
+    public static final int DELTA = 1;
+    public static final int DEFLATE = 2;
+
+    private static final float KELVIN_OFFSET = 273.15f;
+
+    private final int width;
+    private final int height;
+    private final byte[] packed;
+    private final byte[] compressed;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private byte[] output;
+    private int outputLength;
+
+    public TemperatureMatrixCodec(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.packed = new byte[width * height * 2];
+        // Deflate never grows data by more than a few bytes per 16 KB block
+        this.compressed = new byte[packed.length + packed.length / 1000 + 64];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Encode {@code frame}; the result is {@link #length()} bytes of
+     * {@link #buffer()}, valid until the next call
+     *
+     * @param flags {@link #DELTA} and/or {@link #DEFLATE}
+     */
+    public int encode(ThermalFrame frame, float rawPerKelvin, int flags) {
+        final short[] raw = frame.raw;
+        final byte[] out = packed;
+        final int pixels = width * height;
+        final float centiPerRaw = 100f / rawPerKelvin;
+        final boolean delta = (flags & DELTA) != 0;
+
+        int previous = 0;
+        for (int i = 0, o = 0; i < pixels; i++, o += 2) {
+            int v = (int) ((raw[i] & 0xFFFF) * centiPerRaw + 0.5f);
+            if (v > 0xFFFF) {
+                v = 0xFFFF;
+            }
+            int stored = delta ? (v - previous) & 0xFFFF : v;
+            previous = v;
+            out[o] = (byte) stored;
+            out[o + 1] = (byte) (stored >>> 8);
+        }
+
+        if ((flags & DEFLATE) == 0) {
+            output = packed;
+            outputLength = packed.length;
+            return outputLength;
+        }
+        deflater.reset();
+        deflater.setInput(packed, 0, packed.length);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished() && length < compressed.length) {
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        output = compressed;
+        outputLength = length;
+        return length;
+    }
+
+    public byte[] buffer() {
+        return output;
+    }
+
+    public int length() {
+        return outputLength;
+    }
+
+    public void release() {
+        deflater.end();
+    }
+
+    /**
+     * Reverse of {@link #encode} into centi-Kelvin values (what JS does; used
+     * by tests and tools)
+     */
+    public static void decode(byte[] data, int length, int flags, int[] out) throws DataFormatException {
+        byte[] bytes = data;
+        if ((flags & DEFLATE) != 0) {
+            bytes = new byte[out.length * 2];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data, 0, length);
+                int read = 0;
+                while (!inflater.finished() && read < bytes.length) {
+                    int n = inflater.inflate(bytes, read, bytes.length - read);
+                    if (n == 0 && inflater.needsInput()) {
+                        throw new DataFormatException("Truncated matrix");
+                    }
+                    read += n;
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        int previous = 0;
+        for (int i = 0; i < out.length; i++) {
+            int v = (bytes[2 * i] & 0xFF) | ((bytes[2 * i + 1] & 0xFF) << 8);
+            if ((flags & DELTA) != 0) {
+                v = (previous + v) & 0xFFFF;
+            }
+            out[i] = v;
+            previous = v;
+        }
+    }
+
+    /**
+     * Celsius of a centi-Kelvin value
+     */
+    public static float toCelsius(int centiKelvin) {
+        return centiKelvin / 100f - KELVIN_OFFSET;
+    }
+}
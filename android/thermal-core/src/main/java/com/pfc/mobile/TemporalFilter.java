@@ -0,0 +1,302 @@
+package com.pfc.mobile;
+
+/**
+ * Per-pixel temporal denoising of raw frames, as a {@link FrameProcessor.Stage}.
+ *
+ * Two modes, both in integer arithmetic on preallocated arrays with
+ * branch-free inner loops the JIT/ART can vectorize:
+ * <ul>
+ *   <li>{@link #MODE_EMA}: exponential moving average, 4 fractional bits of state</li>
+ *   <li>{@link #MODE_AVERAGE}: box average of the last N frames (N a power of two, up to 16)</li>
+ * </ul>
+ * The state restarts from the incoming frame when the mean absolute change
+ * exceeds the scene-change threshold (camera moved, new target), so the
+ * filter never smears two scenes together.
+ *
+ * The filtered frame keeps the source sequence and timestamp. It is
+ * converted once and handed to the filter's own stages, which opt in by
+ * registering here instead of on the processor; readers can take a copy of
+ * the latest filtered frame with {@link #copyLatest(ThermalFrame)}.
+ */
+public class TemporalFilter implements FrameProcessor.Stage {
+
+    public static final String MODE_EMA = "ema";
+    public static final String MODE_AVERAGE = "average";
+
+    public static final int MAX_AVERAGE_FRAMES = 16;
+    private static final int EMA_FRACTION_BITS = 4;
+    private static final int ALPHA_BITS = 8;
+    private static final float DEFAULT_EMA_ALPHA = 0.25f;
+    private static final float DEFAULT_SCENE_CHANGE_CELSIUS = 2f;
+    /** Scene-change check looks at one pixel in this many */
+    private static final int SCENE_SAMPLE_STEP = 7;
+    private static final FrameProcessor.Stage[] NO_STAGES = new FrameProcessor.Stage[0];
+
+    /**
+     * Filter settings; replaced as a whole so a frame never sees half an update
+     */
+    private static final class Settings {
+        final boolean ema;
+        final int alpha;
+        final int frameShift;
+        final float sceneChangeCelsius;
+
+        Settings(boolean ema, int alpha, int frameShift, float sceneChangeCelsius) {
+            this.ema = ema;
+            this.alpha = alpha;
+            this.frameShift = frameShift;
+            this.sceneChangeCelsius = sceneChangeCelsius;
+        }
+    }
+
+    private final RadiometricConverter converter;
+    private final int pixelCount;
+
+    // Processor thread only
+    private final int[] accumulator;
+    private final short[][] history;
+    private final ThermalFrame output;
+    private final float[] celsius;
+    private final FrameStats stats = new FrameStats();
+    private Settings applied;
+    private int historySlot;
+    private boolean primed;
+
+    // Latest filtered frame for readers, guarded by this
+    private final ThermalFrame latest;
+    private boolean hasLatest;
+
+    private volatile Settings settings;
+    private volatile boolean resetRequested;
+    private volatile FrameProcessor.Stage[] stages = NO_STAGES;
+    private volatile long sceneResets;
+    private volatile long stageErrorCount;
+
+    public TemporalFilter(int width, int height, RadiometricConverter converter) {
+        this.converter = converter;
+        this.pixelCount = width * height;
+        this.accumulator = new int[pixelCount];
+        this.history = new short[MAX_AVERAGE_FRAMES][pixelCount];
+        this.output = new ThermalFrame(width, height);
+        this.latest = new ThermalFrame(width, height);
+        this.celsius = new float[pixelCount];
+        this.settings = emaSettings(DEFAULT_EMA_ALPHA, DEFAULT_SCENE_CHANGE_CELSIUS);
+    }
+
+    /**
+     * Exponential moving average; {@code alpha} is the weight of the new frame (0..1]
+     */
+    public void configureEma(float alpha) {
+        settings = emaSettings(alpha, settings.sceneChangeCelsius);
+        resetRequested = true;
+    }
+
+    /**
+     * Box average over {@code frames} frames, rounded up to a power of two (max 16)
+     */
+    public void configureAverage(int frames) {
+        int n = Math.max(2, Math.min(MAX_AVERAGE_FRAMES, frames));
+        int shift = 32 - Integer.numberOfLeadingZeros(n - 1);
+        settings = new Settings(false, 0, shift, settings.sceneChangeCelsius);
+        resetRequested = true;
+    }
+
+    /**
+     * Mean absolute change (°C) that restarts the filter
+     */
+    public void setSceneChangeThreshold(float celsius) {
+        Settings current = settings;
+        settings = new Settings(current.ema, current.alpha, current.frameShift, Math.max(0.1f, celsius));
+    }
+
+    public String getMode() {
+        return settings.ema ? MODE_EMA : MODE_AVERAGE;
+    }
+
+    public float getAlpha() {
+        return settings.alpha / (float) (1 << ALPHA_BITS);
+    }
+
+    public int getAverageFrames() {
+        return 1 << settings.frameShift;
+    }
+
+    public long getSceneResets() {
+        return sceneResets;
+    }
+
+    public long getStageErrorCount() {
+        return stageErrorCount;
+    }
+
+    /**
+     * Drop the filter state; the next frame passes through unfiltered
+     */
+    public void reset() {
+        resetRequested = true;
+        synchronized (this) {
+            hasLatest = false;
+        }
+    }
+
+    public synchronized void addStage(FrameProcessor.Stage stage) {
+        FrameProcessor.Stage[] current = stages;
+        for (FrameProcessor.Stage s : current) {
+            if (s == stage) {
+                return;
+            }
+        }
+        FrameProcessor.Stage[] next = new FrameProcessor.Stage[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = stage;
+        stages = next;
+    }
+
+    public synchronized void removeStage(FrameProcessor.Stage stage) {
+        FrameProcessor.Stage[] current = stages;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == stage) {
+                FrameProcessor.Stage[] next = new FrameProcessor.Stage[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                stages = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy the latest filtered frame into {@code dest}
+     *
+     * @return false if nothing has been filtered since the last reset
+     */
+    public synchronized boolean copyLatest(ThermalFrame dest) {
+        if (!hasLatest) {
+            return false;
+        }
+        dest.copyFrom(latest);
+        return true;
+    }
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] frameCelsius, FrameStats frameStats) {
+        Settings current = settings;
+        if (current != applied || resetRequested) {
+            // Mode changes restart the state; threshold-only changes do not
+            boolean restart = resetRequested || applied == null
+                    || current.ema != applied.ema || current.frameShift != applied.frameShift;
+            resetRequested = false;
+            applied = current;
+            if (restart) {
+                primed = false;
+            }
+        }
+
+        if (primed && isSceneChange(frame.raw, current.sceneChangeCelsius)) {
+            sceneResets++;
+            primed = false;
+        }
+
+        if (!primed) {
+            prime(frame.raw, current);
+            primed = true;
+        } else if (current.ema) {
+            filterEma(frame.raw, current.alpha);
+        } else {
+            filterAverage(frame.raw, current.frameShift);
+        }
+        output.sequence = frame.sequence;
+        output.timestampNanos = frame.timestampNanos;
+
+        synchronized (this) {
+            latest.copyFrom(output);
+            hasLatest = true;
+        }
+
+        FrameProcessor.Stage[] children = stages;
+        if (children.length == 0) {
+            return;
+        }
+        converter.convert(output, celsius, stats);
+        for (int i = 0; i < children.length; i++) {
+            try {
+                children[i].onFrame(output, celsius, stats);
+            } catch (RuntimeException e) {
+                // Same isolation as the processor: one failing stage must not starve the others
+                stageErrorCount++;
+            }
+        }
+    }
+
+    /**
+     * Start the state over from a single frame
+     */
+    private void prime(short[] raw, Settings current) {
+        final int[] acc = accumulator;
+        final short[] out = output.raw;
+        final int n = pixelCount;
+        if (current.ema) {
+            for (int i = 0; i < n; i++) {
+                acc[i] = (raw[i] & 0xFFFF) << EMA_FRACTION_BITS;
+            }
+        } else {
+            int frames = 1 << current.frameShift;
+            for (int f = 0; f < frames; f++) {
+                System.arraycopy(raw, 0, history[f], 0, n);
+            }
+            for (int i = 0; i < n; i++) {
+                acc[i] = (raw[i] & 0xFFFF) << current.frameShift;
+            }
+            historySlot = 0;
+        }
+        System.arraycopy(raw, 0, out, 0, n);
+    }
+
+    private void filterEma(short[] raw, int alpha) {
+        final int[] acc = accumulator;
+        final short[] out = output.raw;
+        final int n = pixelCount;
+        final int round = 1 << (EMA_FRACTION_BITS - 1);
+        for (int i = 0; i < n; i++) {
+            int target = (raw[i] & 0xFFFF) << EMA_FRACTION_BITS;
+            int a = acc[i] + (((target - acc[i]) * alpha) >> ALPHA_BITS);
+            acc[i] = a;
+            out[i] = (short) ((a + round) >> EMA_FRACTION_BITS);
+        }
+    }
+
+    private void filterAverage(short[] raw, int shift) {
+        final int[] sum = accumulator;
+        final short[] out = output.raw;
+        final short[] oldest = history[historySlot];
+        final int n = pixelCount;
+        final int round = (1 << shift) >> 1;
+        for (int i = 0; i < n; i++) {
+            int v = raw[i] & 0xFFFF;
+            int s = sum[i] + v - (oldest[i] & 0xFFFF);
+            sum[i] = s;
+            oldest[i] = (short) v;
+            out[i] = (short) ((s + round) >> shift);
+        }
+        historySlot = (historySlot + 1) & ((1 << shift) - 1);
+    }
+
+    /**
+     * Mean absolute difference between the new frame and the filtered one, on a sparse sample
+     */
+    private boolean isSceneChange(short[] raw, float thresholdCelsius) {
+        final short[] filtered = output.raw;
+        long diff = 0;
+        int samples = 0;
+        for (int i = 0; i < pixelCount; i += SCENE_SAMPLE_STEP) {
+            diff += Math.abs((raw[i] & 0xFFFF) - (filtered[i] & 0xFFFF));
+            samples++;
+        }
+        return diff > thresholdCelsius * converter.getRawPerKelvin() * samples;
+    }
+
+    private static Settings emaSettings(float alpha, float sceneChangeCelsius) {
+        int fixed = Math.round(Math.max(0f, Math.min(1f, alpha)) * (1 << ALPHA_BITS));
+        return new Settings(true, Math.max(1, fixed), 0, sceneChangeCelsius);
+    }
+}
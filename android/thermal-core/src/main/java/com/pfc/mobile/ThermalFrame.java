@@ -0,0 +1,46 @@
+package com.pfc.mobile;
+
+/**
+ * Consumer-side copy of one raw Y16 thermal frame.
+ *
+ * Raw values are unsigned 16-bit and stored in a short[]; read them with
+ * {@code raw[i] & 0xFFFF}. Instances are meant to be allocated once and
+ * refilled for every frame.
+ */
+public class ThermalFrame {
+    public final int width;
+    public final int height;
+    public final short[] raw;
+
+    /** Monotonic frame counter assigned by the producer (0 = no frame yet) */
+    public long sequence;
+
+    /** Capture time in {@link System#nanoTime()} units */
+    public long timestampNanos;
+
+    public ThermalFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.raw = new short[width * height];
+    }
+
+    public int pixelCount() {
+        return raw.length;
+    }
+
+    /**
+     * Raw unsigned value at (x, y)
+     */
+    public int rawAt(int x, int y) {
+        return raw[y * width + x] & 0xFFFF;
+    }
+
+    /**
+     * Copy another frame of the same size into this one
+     */
+    public void copyFrom(ThermalFrame other) {
+        System.arraycopy(other.raw, 0, raw, 0, raw.length);
+        sequence = other.sequence;
+        timestampNanos = other.timestampNanos;
+    }
+}
@@ -0,0 +1,42 @@
+package com.pfc.mobile;
+
+/**
+ * Producer of raw Y16 frames for the processing pipeline.
+ *
+ * The app's TopdonCameraManager publishes whatever the active source emits into
+ * its {@link FrameTripleBuffer}, so the same pipeline runs on the USB camera,
+ * on a {@link SyntheticThermalSource} or on a {@link ReplayThermalSource}
+ * reading a recording from disk. Only the USB source depends on the SDK.
+ */
+public interface ThermalFrameSource {
+
+    /**
+     * Receives frames on the source's own thread. {@code data} holds one
+     * little-endian Y16 frame starting at {@code offset} and is reused by the
+     * source: copy it before returning.
+     */
+    interface Sink {
+        void onFrame(byte[] data, int offset, long timestampNanos);
+    }
+
+    /**
+     * Short identifier reported to JS ("usb", "synthetic", "replay")
+     */
+    String getName();
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Start emitting into {@code sink}; a running source switches to the new sink
+     */
+    void start(Sink sink);
+
+    /**
+     * Stop emitting; no frame reaches the sink once this returns
+     */
+    void stop();
+
+    boolean isRunning();
+}
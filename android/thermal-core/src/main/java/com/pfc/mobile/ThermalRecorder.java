@@ -0,0 +1,247 @@
+package com.pfc.mobile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Appends raw radiometric frames to a memory-mapped recording file.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header  64 bytes   magic "PFCRAD01", version, width, height, raw/K,
+ *                      keyframe interval, frame count, start wall time,
+ *                      index offset (0 until closed), data end
+ *   records            [type, payload bytes, timestamp ns, sequence] + payload
+ *   index              [record offset, timestamp ns] per frame, written on close
+ * </pre>
+ * Key frames hold the 16-bit matrix as is; the others hold zigzag varint
+ * deltas against the previous frame, usually one byte per pixel. Every
+ * {@code keyframeInterval}-th frame is a key frame, so a seek decodes at most
+ * that many records. The file is written through {@link MappedByteBuffer}
+ * windows of {@link #MAP_CHUNK_BYTES}: appending a frame is an encode into a
+ * scratch array plus one bulk copy, with no per-frame stream or syscall.
+ *
+ * Runs as a {@link FrameProcessor.Stage}; a write failure stops recording
+ * and is kept in {@link #getFailure()}.
+ */
+public class ThermalRecorder implements FrameProcessor.Stage {
+
+    static final byte[] MAGIC = {'P', 'F', 'C', 'R', 'A', 'D', '0', '1'};
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_HEADER_BYTES = 24;
+    static final int INDEX_ENTRY_BYTES = 16;
+    static final int TYPE_KEY = 1;
+    static final int TYPE_DELTA = 2;
+
+    static final int OFFSET_FRAME_COUNT = 28;
+    static final int OFFSET_START_MILLIS = 32;
+    static final int OFFSET_INDEX = 40;
+    static final int OFFSET_DATA_END = 48;
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 25;
+    private static final int MAP_CHUNK_BYTES = 8 * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final int keyframeInterval;
+    private final int keyPayloadBytes;
+
+    // Guarded by this
+    private final short[] previous;
+    private final byte[] scratch;
+    private MappedByteBuffer window;
+    private long writePosition = HEADER_BYTES;
+    private long[] indexOffsets = new long[1024];
+    private long[] indexTimestamps = new long[1024];
+    private int frameCount;
+    private long firstTimestampNanos;
+    private boolean closed;
+    private IOException failure;
+
+    public ThermalRecorder(File file, int width, int height, float rawPerKelvin, int keyframeInterval)
+            throws IOException {
+        this.file = file;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.keyPayloadBytes = width * height * 2;
+        this.previous = new short[width * height];
+        // Worst case of a delta payload is 3 bytes per pixel
+        this.scratch = new byte[width * height * 3];
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        channel.truncate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.putFloat(rawPerKelvin);
+        header.putInt(this.keyframeInterval);
+        header.putInt(0);
+        header.putLong(System.currentTimeMillis());
+        header.putLong(0);
+        header.putLong(HEADER_BYTES);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+        try {
+            append(frame);
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Append one frame. Ignored once closed or after a write failure.
+     */
+    public synchronized void append(ThermalFrame frame) throws IOException {
+        if (closed || failure != null) {
+            return;
+        }
+        if (frameCount == 0) {
+            firstTimestampNanos = frame.timestampNanos;
+        }
+
+        final short[] raw = frame.raw;
+        int type = TYPE_KEY;
+        int payloadBytes = keyPayloadBytes;
+        if (frameCount % keyframeInterval != 0) {
+            int deltaBytes = encodeDelta(raw);
+            if (deltaBytes < keyPayloadBytes) {
+                type = TYPE_DELTA;
+                payloadBytes = deltaBytes;
+            }
+        }
+
+        ensureWindow(RECORD_HEADER_BYTES + payloadBytes);
+        long offset = writePosition;
+        window.putInt(type);
+        window.putInt(payloadBytes);
+        window.putLong(frame.timestampNanos - firstTimestampNanos);
+        window.putLong(frame.sequence);
+        if (type == TYPE_KEY) {
+            window.asShortBuffer().put(raw);
+            window.position(window.position() + keyPayloadBytes);
+        } else {
+            window.put(scratch, 0, payloadBytes);
+        }
+        writePosition += RECORD_HEADER_BYTES + payloadBytes;
+
+        System.arraycopy(raw, 0, previous, 0, raw.length);
+        addIndexEntry(offset, frame.timestampNanos - firstTimestampNanos);
+    }
+
+    /**
+     * Write the index and final header, trim the file and close it
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (window != null) {
+                window.force();
+                window = null;
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(frameCount * INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < frameCount; i++) {
+                index.putLong(indexOffsets[i]);
+                index.putLong(indexTimestamps[i]);
+            }
+            index.flip();
+            channel.write(index, writePosition);
+            channel.truncate(writePosition + (long) frameCount * INDEX_ENTRY_BYTES);
+
+            ByteBuffer fields = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            fields.putInt(frameCount).flip();
+            channel.write(fields, OFFSET_FRAME_COUNT);
+            fields = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            fields.putLong(writePosition).putLong(writePosition).flip();
+            channel.write(fields, OFFSET_INDEX);
+            channel.force(true);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized long getDurationNanos() {
+        return frameCount == 0 ? 0 : indexTimestamps[frameCount - 1];
+    }
+
+    public synchronized long getBytesWritten() {
+        return writePosition;
+    }
+
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Zigzag varint deltas against the previous frame into {@link #scratch}
+     *
+     * @return encoded length
+     */
+    private int encodeDelta(short[] raw) {
+        final short[] prev = previous;
+        final byte[] out = scratch;
+        int pos = 0;
+        for (int i = 0; i < raw.length; i++) {
+            int delta = (raw[i] & 0xFFFF) - (prev[i] & 0xFFFF);
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                out[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            out[pos++] = (byte) zigzag;
+        }
+        return pos;
+    }
+
+    /**
+     * Make sure the mapped window has room for {@code bytes} at the write position
+     */
+    private void ensureWindow(int bytes) throws IOException {
+        if (window != null && window.remaining() >= bytes) {
+            return;
+        }
+        if (window != null) {
+            window.force();
+        }
+        window = channel.map(FileChannel.MapMode.READ_WRITE, writePosition, Math.max(MAP_CHUNK_BYTES, bytes));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void addIndexEntry(long offset, long timestampNanos) {
+        if (frameCount == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, frameCount * 2);
+            indexTimestamps = Arrays.copyOf(indexTimestamps, frameCount * 2);
+        }
+        indexOffsets[frameCount] = offset;
+        indexTimestamps[frameCount] = timestampNanos;
+        frameCount++;
+    }
+}
@@ -0,0 +1,252 @@
+package com.pfc.mobile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Random access to a file written by {@link ThermalRecorder}.
+ *
+ * The frame index is loaded once, so seeking to a timestamp is a binary
+ * search; decoding a frame reads its key frame and at most
+ * {@code keyframeInterval - 1} deltas, or a single delta when playing
+ * forward. A recording that was never closed (app killed mid-watch) has no
+ * index: it is rebuilt by walking the records once, on open.
+ * Not thread-safe; callers serialize access.
+ */
+public class ThermalRecordingPlayer {
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final float rawPerKelvin;
+    private final int keyframeInterval;
+    private final long startWallMillis;
+    private final long[] offsets;
+    private final long[] timestamps;
+    private final int frameCount;
+
+    private final ByteBuffer recordBuffer;
+    private final ThermalFrame current;
+    private int currentIndex = -1;
+
+    public ThermalRecordingPlayer(File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ThermalRecorder.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            byte[] magic = new byte[ThermalRecorder.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, ThermalRecorder.MAGIC)) {
+                throw new IOException("Not a thermal recording: " + file.getName());
+            }
+            int version = header.getInt();
+            if (version != ThermalRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            width = header.getInt();
+            height = header.getInt();
+            rawPerKelvin = header.getFloat();
+            keyframeInterval = header.getInt();
+            int storedCount = header.getInt();
+            startWallMillis = header.getLong();
+            long indexOffset = header.getLong();
+
+            recordBuffer = ByteBuffer.allocate(ThermalRecorder.RECORD_HEADER_BYTES + width * height * 3)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            current = new ThermalFrame(width, height);
+
+            if (indexOffset > 0) {
+                frameCount = storedCount;
+                offsets = new long[frameCount];
+                timestamps = new long[frameCount];
+                ByteBuffer index = ByteBuffer.allocate(frameCount * ThermalRecorder.INDEX_ENTRY_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                readFully(index, indexOffset);
+                for (int i = 0; i < frameCount; i++) {
+                    offsets[i] = index.getLong();
+                    timestamps[i] = index.getLong();
+                }
+            } else {
+                long[][] rebuilt = rebuildIndex();
+                offsets = rebuilt[0];
+                timestamps = rebuilt[1];
+                frameCount = offsets.length;
+            }
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getRawPerKelvin() {
+        return rawPerKelvin;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getStartWallMillis() {
+        return startWallMillis;
+    }
+
+    public long getDurationNanos() {
+        return frameCount == 0 ? 0 : timestamps[frameCount - 1];
+    }
+
+    /**
+     * Index of the last frame at or before {@code timestampNanos} (relative to the first frame)
+     */
+    public int indexAt(long timestampNanos) {
+        int i = Arrays.binarySearch(timestamps, 0, frameCount, timestampNanos);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return Math.max(0, Math.min(frameCount - 1, i));
+    }
+
+    public long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Decode frame {@code index} into {@code out}; its timestamp is relative to the first frame
+     */
+    public void readFrame(int index, ThermalFrame out) throws IOException {
+        if (index < 0 || index >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+        }
+        if (index != currentIndex) {
+            int start;
+            if (currentIndex >= 0 && currentIndex < index && index - currentIndex < keyframeInterval) {
+                start = currentIndex + 1;
+            } else {
+                start = (index / keyframeInterval) * keyframeInterval;
+            }
+            for (int i = start; i <= index; i++) {
+                decodeRecord(i);
+            }
+        }
+        out.copyFrom(current);
+    }
+
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Apply record {@code index} to {@link #current}
+     */
+    private void decodeRecord(int index) throws IOException {
+        ByteBuffer buffer = recordBuffer;
+        buffer.clear();
+        buffer.limit(ThermalRecorder.RECORD_HEADER_BYTES);
+        readFully(buffer, offsets[index]);
+        int type = buffer.getInt();
+        int payloadBytes = buffer.getInt();
+        long timestampNanos = buffer.getLong();
+        long sequence = buffer.getLong();
+        if (type == ThermalRecorder.TYPE_DELTA && currentIndex != index - 1) {
+            throw new IOException("Delta frame " + index + " without its predecessor");
+        }
+        // Invalid until this record is fully applied
+        currentIndex = -1;
+
+        buffer.clear();
+        buffer.limit(payloadBytes);
+        readFully(buffer, offsets[index] + ThermalRecorder.RECORD_HEADER_BYTES);
+
+        final short[] raw = current.raw;
+        if (type == ThermalRecorder.TYPE_KEY) {
+            buffer.asShortBuffer().get(raw);
+        } else if (type == ThermalRecorder.TYPE_DELTA) {
+            final byte[] payload = buffer.array();
+            int pos = buffer.arrayOffset();
+            for (int i = 0; i < raw.length; i++) {
+                int zigzag = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = payload[pos++];
+                    zigzag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                int delta = (zigzag >>> 1) ^ -(zigzag & 1);
+                raw[i] = (short) ((raw[i] & 0xFFFF) + delta);
+            }
+        } else {
+            throw new IOException("Corrupt record " + index);
+        }
+        current.sequence = sequence;
+        current.timestampNanos = timestampNanos;
+        currentIndex = index;
+    }
+
+    /**
+     * Walk the records of an unfinished recording: {offsets, timestamps}
+     */
+    private long[][] rebuildIndex() throws IOException {
+        long size = channel.size();
+        long[] foundOffsets = new long[1024];
+        long[] foundTimestamps = new long[1024];
+        int count = 0;
+        long position = ThermalRecorder.HEADER_BYTES;
+        int maxPayload = width * height * 3;
+        ByteBuffer header = ByteBuffer.allocate(ThermalRecorder.RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (position + ThermalRecorder.RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int type = header.getInt();
+            int payloadBytes = header.getInt();
+            long timestampNanos = header.getLong();
+            // The mapped tail past the last record is zero-filled
+            if ((type != ThermalRecorder.TYPE_KEY && type != ThermalRecorder.TYPE_DELTA)
+                    || payloadBytes <= 0 || payloadBytes > maxPayload
+                    || position + ThermalRecorder.RECORD_HEADER_BYTES + payloadBytes > size) {
+                break;
+            }
+            if (count == foundOffsets.length) {
+                foundOffsets = Arrays.copyOf(foundOffsets, count * 2);
+                foundTimestamps = Arrays.copyOf(foundTimestamps, count * 2);
+            }
+            foundOffsets[count] = position;
+            foundTimestamps[count] = timestampNanos;
+            count++;
+            position += ThermalRecorder.RECORD_HEADER_BYTES + payloadBytes;
+        }
+        return new long[][]{Arrays.copyOf(foundOffsets, count), Arrays.copyOf(foundTimestamps, count)};
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of recording");
+            }
+            position += n;
+        }
+        buffer.flip();
+    }
+}
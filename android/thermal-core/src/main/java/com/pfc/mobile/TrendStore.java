@@ -0,0 +1,426 @@
+package com.pfc.mobile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Temperature trends over a watch session, for charts and reports.
+ *
+ * Runs as a {@link FrameProcessor.Stage} after the {@link RoiEngine}: each
+ * frame appends the frame min/max/mean/center and the max and mean of up to
+ * {@link #MAX_ZONES} zones to three fixed rings of primitive arrays:
+ * <ul>
+ *   <li>every frame, {@link #FULL_RATE_CAPACITY} entries (a minute at 30 fps)</li>
+ *   <li>1 s buckets for an hour</li>
+ *   <li>10 s buckets for a day</li>
+ * </ul>
+ * A bucket keeps the min of the min series, the max of the max series and
+ * the mean of the others, so a short spike is never averaged away. Memory is
+ * fixed (about 1.2 MB) however long the session runs.
+ *
+ * {@link #query} reads the finest ring that still covers the requested
+ * range and reduces each series to at most maxPoints with {@link Lttb};
+ * the frames themselves are never kept or scanned. Recording allocates
+ * nothing; all methods are thread-safe.
+ */
+public class TrendStore implements FrameProcessor.Stage {
+
+    public static final int MAX_ZONES = 8;
+    public static final int FULL_RATE_CAPACITY = 1800;
+
+    public static final String SERIES_MIN = "min";
+    public static final String SERIES_MAX = "max";
+    public static final String SERIES_MEAN = "mean";
+    public static final String SERIES_CENTER = "center";
+
+    private static final String[] FRAME_SERIES = {SERIES_MIN, SERIES_MAX, SERIES_MEAN, SERIES_CENTER};
+    private static final int ZONE_BASE = FRAME_SERIES.length;
+    private static final int CHANNELS = ZONE_BASE + 2 * MAX_ZONES;
+
+    private static final int AGG_MIN = 0;
+    private static final int AGG_MAX = 1;
+    private static final int AGG_MEAN = 2;
+
+    /**
+     * One downsampled series of a {@link Trend}
+     */
+    public static final class Series {
+        /** {@link #SERIES_MIN} etc. for the frame, "max" or "mean" for a zone */
+        public final String name;
+        /** Zone id, or null for a frame series */
+        public final String zone;
+        /** Wall-clock milliseconds */
+        public final long[] times;
+        /** Celsius */
+        public final float[] values;
+
+        Series(String name, String zone, long[] times, float[] values) {
+            this.name = name;
+            this.zone = zone;
+            this.times = times;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Result of {@link #query}
+     */
+    public static final class Trend {
+        public final long from;
+        public final long to;
+        /** 0 when read at frame rate, else the bucket length in ms */
+        public final long resolutionMillis;
+        /** Points in the range before downsampling */
+        public final int sourcePoints;
+        public final List<Series> series;
+
+        Trend(long from, long to, long resolutionMillis, int sourcePoints, List<Series> series) {
+            this.from = from;
+            this.to = to;
+            this.resolutionMillis = resolutionMillis;
+            this.sourcePoints = sourcePoints;
+            this.series = series;
+        }
+    }
+
+    /**
+     * Fixed ring of timestamps and CHANNELS values per entry; bucketed rings
+     * accumulate the current bucket until a sample falls past it
+     */
+    private static final class Ring {
+        final long bucketMillis;
+        final int capacity;
+        final long[] times;
+        final float[] values;
+        int head;
+        int size;
+
+        long bucketStart = Long.MIN_VALUE;
+        final float[] acc = new float[CHANNELS];
+        final int[] counts = new int[CHANNELS];
+
+        Ring(long bucketMillis, int capacity) {
+            this.bucketMillis = bucketMillis;
+            this.capacity = capacity;
+            this.times = new long[capacity];
+            this.values = new float[capacity * CHANNELS];
+        }
+
+        void append(long time, float[] sample) {
+            times[head] = time;
+            System.arraycopy(sample, 0, values, head * CHANNELS, CHANNELS);
+            head = (head + 1) % capacity;
+            if (size < capacity) {
+                size++;
+            }
+        }
+
+        void accumulate(long time, float[] sample) {
+            long start = time - Math.floorMod(time, bucketMillis);
+            if (start != bucketStart) {
+                flush();
+                bucketStart = start;
+            }
+            for (int c = 0; c < CHANNELS; c++) {
+                float v = sample[c];
+                if (Float.isNaN(v)) {
+                    continue;
+                }
+                if (counts[c] == 0) {
+                    acc[c] = v;
+                } else {
+                    switch (AGGREGATION[c]) {
+                        case AGG_MIN:
+                            acc[c] = Math.min(acc[c], v);
+                            break;
+                        case AGG_MAX:
+                            acc[c] = Math.max(acc[c], v);
+                            break;
+                        default:
+                            acc[c] += v;
+                            break;
+                    }
+                }
+                counts[c]++;
+            }
+        }
+
+        boolean hasOpenBucket() {
+            return bucketStart != Long.MIN_VALUE;
+        }
+
+        /**
+         * Values of the open bucket so far into dst[offset..]
+         */
+        void bucketValues(float[] dst, int offset) {
+            for (int c = 0; c < CHANNELS; c++) {
+                int n = counts[c];
+                float v = n == 0 ? Float.NaN : acc[c];
+                if (n > 1 && AGGREGATION[c] == AGG_MEAN) {
+                    v /= n;
+                }
+                dst[offset + c] = v;
+            }
+        }
+
+        /**
+         * Close the open bucket into the ring
+         */
+        void flush() {
+            if (!hasOpenBucket()) {
+                return;
+            }
+            bucketValues(values, head * CHANNELS);
+            times[head] = bucketStart;
+            head = (head + 1) % capacity;
+            if (size < capacity) {
+                size++;
+            }
+            Arrays.fill(counts, 0);
+            bucketStart = Long.MIN_VALUE;
+        }
+
+        long oldest() {
+            return times[(head - size + capacity) % capacity];
+        }
+
+        void clearChannels(int first, int count) {
+            for (int i = 0; i < capacity; i++) {
+                Arrays.fill(values, i * CHANNELS + first, i * CHANNELS + first + count, Float.NaN);
+            }
+            for (int c = first; c < first + count; c++) {
+                counts[c] = 0;
+            }
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+            bucketStart = Long.MIN_VALUE;
+            Arrays.fill(counts, 0);
+        }
+    }
+
+    private static final int[] AGGREGATION = new int[CHANNELS];
+
+    static {
+        Arrays.fill(AGGREGATION, AGG_MEAN);
+        AGGREGATION[0] = AGG_MIN;
+        AGGREGATION[1] = AGG_MAX;
+        for (int z = 0; z < MAX_ZONES; z++) {
+            AGGREGATION[ZONE_BASE + 2 * z] = AGG_MAX;
+        }
+    }
+
+    private final RoiEngine zones;
+    private final Ring[] rings = {
+            new Ring(0, FULL_RATE_CAPACITY),
+            new Ring(1000, 3600),
+            new Ring(10000, 8640),
+    };
+    private final float[] sample = new float[CHANNELS];
+    // Zone id per channel pair; kept after the zone is removed so its history stays readable
+    private final String[] zoneIds = new String[MAX_ZONES];
+    private long sessionStart = Long.MIN_VALUE;
+
+    /**
+     * @param zones zone stats to record, or null for the frame series only
+     */
+    public TrendStore(RoiEngine zones) {
+        this.zones = zones;
+    }
+
+    @Override
+    public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+        long wallMillis = System.currentTimeMillis()
+                - (System.nanoTime() - frame.timestampNanos) / 1000000L;
+        record(wallMillis, stats);
+    }
+
+    /**
+     * Append one sample taken at {@code timeMillis} (non-decreasing)
+     */
+    public synchronized void record(long timeMillis, FrameStats stats) {
+        if (sessionStart == Long.MIN_VALUE) {
+            sessionStart = timeMillis;
+        }
+        float[] s = sample;
+        s[0] = stats.min;
+        s[1] = stats.max;
+        s[2] = stats.mean;
+        s[3] = stats.center;
+        Arrays.fill(s, ZONE_BASE, CHANNELS, Float.NaN);
+        if (zones != null) {
+            for (RoiEngine.Roi roi : zones.current()) {
+                int slot = slotFor(roi.id);
+                if (slot >= 0) {
+                    roi.readLatest(s, ZONE_BASE + 2 * slot);
+                }
+            }
+        }
+
+        rings[0].append(timeMillis, s);
+        for (int r = 1; r < rings.length; r++) {
+            rings[r].accumulate(timeMillis, s);
+        }
+    }
+
+    /**
+     * Forget everything, e.g. when a new watch session starts
+     */
+    public synchronized void reset() {
+        for (Ring ring : rings) {
+            ring.clear();
+        }
+        Arrays.fill(zoneIds, null);
+        sessionStart = Long.MIN_VALUE;
+    }
+
+    /**
+     * Wall-clock time of the first sample, or 0 if nothing was recorded
+     */
+    public synchronized long getSessionStart() {
+        return sessionStart == Long.MIN_VALUE ? 0 : sessionStart;
+    }
+
+    /**
+     * Series over [from, to] (wall-clock ms), each reduced to at most
+     * {@code maxPoints} by LTTB. Zone series are included for every zone
+     * that has data in the range, removed zones too.
+     */
+    public Trend query(long from, long to, int maxPoints) {
+        long[] times;
+        float[] values;
+        int n;
+        long resolution;
+        String[] ids;
+        synchronized (this) {
+            Ring ring = pickRing(from);
+            if (ring == null) {
+                return new Trend(from, to, 0, 0, new ArrayList<Series>());
+            }
+            resolution = ring.bucketMillis;
+            int first = -1;
+            n = 0;
+            for (int k = 0; k < ring.size; k++) {
+                int i = (ring.head - ring.size + k + ring.capacity) % ring.capacity;
+                long t = ring.times[i];
+                if (t >= from && t <= to) {
+                    if (first < 0) {
+                        first = k;
+                    }
+                    n++;
+                } else if (t > to) {
+                    break;
+                }
+            }
+            // The bucket still filling is the most recent point
+            boolean open = ring.hasOpenBucket() && ring.bucketStart >= from && ring.bucketStart <= to;
+            times = new long[open ? n + 1 : n];
+            values = new float[times.length * CHANNELS];
+            for (int k = 0; k < n; k++) {
+                int i = (ring.head - ring.size + first + k + ring.capacity) % ring.capacity;
+                times[k] = ring.times[i];
+                System.arraycopy(ring.values, i * CHANNELS, values, k * CHANNELS, CHANNELS);
+            }
+            if (open) {
+                times[n] = ring.bucketStart;
+                ring.bucketValues(values, n * CHANNELS);
+                n++;
+            }
+            ids = zoneIds.clone();
+        }
+
+        List<Series> series = new ArrayList<>();
+        long[] seriesTimes = new long[n];
+        float[] seriesValues = new float[n];
+        int[] kept = new int[Math.max(n, 2)];
+        for (int c = 0; c < CHANNELS; c++) {
+            String zone = null;
+            String name;
+            if (c < ZONE_BASE) {
+                name = FRAME_SERIES[c];
+            } else {
+                int slot = (c - ZONE_BASE) / 2;
+                zone = ids[slot];
+                if (zone == null) {
+                    continue;
+                }
+                name = (c - ZONE_BASE) % 2 == 0 ? SERIES_MAX : SERIES_MEAN;
+            }
+
+            int count = 0;
+            for (int k = 0; k < n; k++) {
+                float v = values[k * CHANNELS + c];
+                if (!Float.isNaN(v)) {
+                    seriesTimes[count] = times[k];
+                    seriesValues[count] = v;
+                    count++;
+                }
+            }
+            if (count == 0 && zone != null) {
+                continue;
+            }
+            int selected = Lttb.select(seriesTimes, seriesValues, count, maxPoints, kept);
+            long[] outTimes = new long[selected];
+            float[] outValues = new float[selected];
+            for (int k = 0; k < selected; k++) {
+                outTimes[k] = seriesTimes[kept[k]];
+                outValues[k] = seriesValues[kept[k]];
+            }
+            series.add(new Series(name, zone, outTimes, outValues));
+        }
+        return new Trend(from, to, resolution, n, series);
+    }
+
+    /**
+     * Finest ring whose history reaches back to {@code from} (or to the
+     * session start), else the coarsest one with data
+     */
+    private Ring pickRing(long from) {
+        long since = Math.max(from, sessionStart);
+        Ring fallback = null;
+        for (Ring ring : rings) {
+            if (ring.size == 0) {
+                continue;
+            }
+            if (ring.oldest() <= since) {
+                return ring;
+            }
+            fallback = ring;
+        }
+        return fallback;
+    }
+
+    /**
+     * Channel pair of zone {@code id}, claiming a free one or the one of a
+     * zone that no longer exists; -1 when all are taken by live zones
+     */
+    private int slotFor(String id) {
+        int free = -1;
+        for (int z = 0; z < MAX_ZONES; z++) {
+            if (id.equals(zoneIds[z])) {
+                return z;
+            }
+            if (free < 0 && zoneIds[z] == null) {
+                free = z;
+            }
+        }
+        if (free < 0) {
+            for (int z = 0; z < MAX_ZONES && free < 0; z++) {
+                if (!zones.contains(zoneIds[z])) {
+                    free = z;
+                }
+            }
+            if (free < 0) {
+                return -1;
+            }
+        }
+        for (Ring ring : rings) {
+            ring.clearChannels(ZONE_BASE + 2 * free, 2);
+        }
+        zoneIds[free] = id;
+        return free;
+    }
+}
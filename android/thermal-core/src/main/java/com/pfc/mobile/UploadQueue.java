@@ -0,0 +1,820 @@
+package com.pfc.mobile;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Persistent queue of file uploads, streamed over HTTP straight from disk.
+ *
+ * {@link #enqueue} copies the file into the queue directory (capture rings
+ * reuse their slots) and records the job in an append-only journal. One
+ * worker thread uploads jobs in order with {@link HttpURLConnection} in
+ * fixed-length streaming mode, reading the file through a single
+ * {@link #setChunkBytes chunk} buffer: memory per upload does not depend on
+ * the file size, and nothing goes through the WebView.
+ *
+ * Network errors, 408, 429 and 5xx are retried with exponential backoff and
+ * jitter (Retry-After is honored); other statuses fail the job for good,
+ * except credential errors (401, 403, or a 400 about the JWT, as Supabase
+ * Storage sends for an expired token): the job then waits for new
+ * credentials. Credentials that expire belong in
+ * {@link #setSessionHeader session headers}, which are kept in memory only
+ * and added to each request when it is sent; they are never journaled.
+ * Journal records (added, attempt failed, finished) are a few dozen bytes:
+ * they are buffered and written with one append and one sync per batch, at
+ * most {@link #setFlushDelayMillis flush delay} after the first one, except
+ * that a job is always journaled before its first byte goes out. Losing the
+ * last batch in a crash means at worst a finished upload is sent again.
+ * On open the journal is replayed, rewritten compactly and data files it
+ * does not know are deleted.
+ */
+public class UploadQueue {
+
+    public interface Listener {
+        /** {@code sentBytes} of {@code upload.bytes} sent in the current attempt */
+        void onProgress(Upload upload, long sentBytes);
+
+        void onCompleted(Upload upload, int status);
+
+        /**
+         * @param willRetry false when the job has been dropped from the queue
+         */
+        void onFailed(Upload upload, String error, boolean willRetry);
+    }
+
+    /**
+     * A queued job. Identity fields are final; attempt state is updated by
+     * the queue and read through the getters.
+     */
+    public static final class Upload {
+        public final String id;
+        public final String url;
+        public final String method;
+        public final String contentType;
+        public final Map<String, String> headers;
+        public final String tag;
+        public final long bytes;
+        public final long createdMillis;
+        final File file;
+
+        private volatile int attempts;
+        // AWAITING_CREDENTIALS while the server refuses the credentials
+        private volatile long nextAttemptMillis;
+        private volatile String lastError;
+        // Guarded by the queue: ADD record written to the journal file
+        private boolean journaled;
+
+        Upload(String id, String url, String method, String contentType, Map<String, String> headers,
+               String tag, long bytes, long createdMillis, File file) {
+            this.id = id;
+            this.url = url;
+            this.method = method;
+            this.contentType = contentType;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.tag = tag;
+            this.bytes = bytes;
+            this.createdMillis = createdMillis;
+            this.file = file;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Wall time of the next attempt (0: as soon as possible)
+         */
+        public long getNextAttemptMillis() {
+            return nextAttemptMillis;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        /**
+         * True when the last attempt was refused for its credentials and the
+         * job waits for {@link #setSessionHeader new ones}
+         */
+        public boolean isAwaitingCredentials() {
+            return nextAttemptMillis == AWAITING_CREDENTIALS;
+        }
+    }
+
+    static final String JOURNAL = "queue.journal";
+    private static final String DATA_SUFFIX = ".upload";
+
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_ATTEMPT = 2;
+    private static final byte RECORD_REMOVE = 3;
+
+    public static final int DEFAULT_CHUNK_BYTES = 64 * 1024;
+    private static final long AWAITING_CREDENTIALS = Long.MAX_VALUE;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final int ERROR_BODY_CHARS = 300;
+
+    private final File dir;
+    private final File journalFile;
+    private final Listener listener;
+    private final Random jitter = new Random();
+
+    // Guarded by this
+    private final List<Upload> uploads = new ArrayList<>();
+    private final ByteArrayOutputStream journalBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream journalOut = new DataOutputStream(journalBuffer);
+    private long journalDirtySinceMillis;
+    private long nextSequence;
+    private boolean running;
+    private Thread worker;
+    private Upload current;
+    private boolean currentCancelled;
+    private HttpURLConnection currentConnection;
+    private final Map<String, String> sessionHeaders = new LinkedHashMap<>();
+    private String requiredSessionHeader;
+
+    private volatile long baseDelayMillis = 2000;
+    private volatile long maxDelayMillis = 120000;
+    private volatile int maxAttempts;
+    private volatile long flushDelayMillis = 500;
+    private volatile int chunkBytes = DEFAULT_CHUNK_BYTES;
+    private volatile int connectTimeoutMillis = 15000;
+    private volatile int readTimeoutMillis = 30000;
+
+    /**
+     * Open (or create) the queue in {@code dir}, restoring pending jobs
+     */
+    public UploadQueue(File dir, Listener listener) throws IOException {
+        this.dir = dir;
+        this.journalFile = new File(dir, JOURNAL);
+        this.listener = listener;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        restore();
+    }
+
+    /**
+     * Backoff after a failed attempt: {@code baseMillis} doubled per attempt
+     * up to {@code maxMillis}; drop the job after {@code maxAttempts} (0: never)
+     */
+    public void setRetryPolicy(long baseMillis, long maxMillis, int maxAttempts) {
+        this.baseDelayMillis = Math.max(1, baseMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxMillis);
+        this.maxAttempts = Math.max(0, maxAttempts);
+    }
+
+    public void setFlushDelayMillis(long millis) {
+        this.flushDelayMillis = Math.max(0, millis);
+    }
+
+    public void setChunkBytes(int bytes) {
+        this.chunkBytes = Math.max(1024, bytes);
+    }
+
+    public void setTimeouts(int connectMillis, int readMillis) {
+        this.connectTimeoutMillis = connectMillis;
+        this.readTimeoutMillis = readMillis;
+    }
+
+    /**
+     * Header added to every request when it is sent (overriding a job header
+     * of the same name) and never written to disk, e.g. a bearer token that
+     * expires; null removes it. Setting a value releases the jobs waiting
+     * for credentials.
+     */
+    public synchronized void setSessionHeader(String name, String value) {
+        if (value == null) {
+            sessionHeaders.remove(name);
+            return;
+        }
+        sessionHeaders.put(name, value);
+        for (Upload upload : uploads) {
+            if (upload.isAwaitingCredentials()) {
+                upload.nextAttemptMillis = 0;
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Send nothing while session header {@code name} is not set (e.g. before
+     * the app has a token), rather than spend attempts on refused requests
+     */
+    public synchronized void requireSessionHeader(String name) {
+        requiredSessionHeader = name;
+        notifyAll();
+    }
+
+    /**
+     * Queue {@code source} for upload; the file is copied, so the caller may
+     * reuse or delete it as soon as this returns.
+     *
+     * @param method  "POST" or "PUT"
+     * @param headers request headers (auth, upsert...), may be null
+     * @param tag     caller data kept with the job and returned in events
+     * @throws IllegalArgumentException for an unsupported method or a malformed URL
+     */
+    public Upload enqueue(File source, String url, String method, String contentType,
+                          Map<String, String> headers, String tag) throws IOException {
+        if (!source.isFile()) {
+            throw new IOException("No such file: " + source);
+        }
+        String verb = method == null ? "POST" : method.toUpperCase();
+        if (!"POST".equals(verb) && !"PUT".equals(verb)) {
+            throw new IllegalArgumentException("Unsupported method: " + method);
+        }
+        // Reject a malformed URL now rather than on every attempt
+        URI.create(url).toURL();
+
+        String id;
+        long created = System.currentTimeMillis();
+        synchronized (this) {
+            id = Long.toString(created, 36) + "-" + (nextSequence++);
+        }
+        File file = new File(dir, id + DATA_SUFFIX);
+        long bytes = copy(source, file);
+        Upload upload = new Upload(id, url, verb,
+                contentType != null ? contentType : "application/octet-stream",
+                headers != null ? new LinkedHashMap<>(headers) : new LinkedHashMap<String, String>(),
+                tag != null ? tag : "", bytes, created, file);
+
+        synchronized (this) {
+            try {
+                appendAdd(upload);
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+            uploads.add(upload);
+            notifyAll();
+        }
+        return upload;
+    }
+
+    /**
+     * Pending jobs, oldest first
+     */
+    public synchronized List<Upload> getUploads() {
+        return new ArrayList<>(uploads);
+    }
+
+    public synchronized int size() {
+        return uploads.size();
+    }
+
+    /**
+     * Drop a job (aborting it if it is being sent)
+     *
+     * @return false if no such job is queued
+     */
+    public boolean cancel(String id) {
+        HttpURLConnection abort = null;
+        synchronized (this) {
+            Upload upload = find(id);
+            if (upload == null) {
+                return false;
+            }
+            if (upload == current) {
+                currentCancelled = true;
+                abort = currentConnection;
+            } else {
+                remove(upload);
+            }
+            notifyAll();
+        }
+        if (abort != null) {
+            abort.disconnect();
+        }
+        return true;
+    }
+
+    /**
+     * Connectivity is back: attempt every waiting job now
+     */
+    public synchronized void retryNow() {
+        for (Upload upload : uploads) {
+            upload.nextAttemptMillis = 0;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Write buffered journal records now
+     */
+    public synchronized void flush() throws IOException {
+        if (journalBuffer.size() == 0) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            journalBuffer.writeTo(out);
+            out.getFD().sync();
+        }
+        journalBuffer.reset();
+        for (Upload upload : uploads) {
+            upload.journaled = true;
+        }
+        if (uploads.isEmpty()) {
+            // Nothing live: the whole journal is history
+            new FileOutputStream(journalFile).close();
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                workLoop();
+            }
+        }, "UploadQueue");
+        worker.start();
+    }
+
+    /**
+     * Stop the worker (an upload in flight is aborted and retried on the next
+     * start) and write the journal
+     */
+    public void stop() {
+        Thread t;
+        HttpURLConnection abort;
+        synchronized (this) {
+            running = false;
+            t = worker;
+            worker = null;
+            abort = currentConnection;
+            notifyAll();
+        }
+        if (abort != null) {
+            abort.disconnect();
+        }
+        if (t != null) {
+            try {
+                t.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            // Jobs not journaled yet are lost; their data files go on next open
+        }
+    }
+
+    private void workLoop() {
+        final byte[] buffer = new byte[chunkBytes];
+        while (true) {
+            Upload upload;
+            synchronized (this) {
+                upload = awaitDueUpload();
+                if (upload == null) {
+                    return;
+                }
+                current = upload;
+                currentCancelled = false;
+            }
+            try {
+                send(upload, buffer);
+            } finally {
+                synchronized (this) {
+                    current = null;
+                    currentConnection = null;
+                    if (currentCancelled) {
+                        remove(upload);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Block (holding the lock) until a job is due, flushing the journal when
+     * its delay runs out. Null once stopped.
+     */
+    private Upload awaitDueUpload() {
+        while (running) {
+            long now = System.currentTimeMillis();
+            long flushAt = journalBuffer.size() > 0 ? journalDirtySinceMillis + flushDelayMillis : Long.MAX_VALUE;
+            Upload due = null;
+            long nextDue = Long.MAX_VALUE;
+            boolean held = requiredSessionHeader != null && !sessionHeaders.containsKey(requiredSessionHeader);
+            for (Upload upload : held ? Collections.<Upload>emptyList() : uploads) {
+                if (upload.nextAttemptMillis <= now) {
+                    due = upload;
+                    break;
+                }
+                nextDue = Math.min(nextDue, upload.nextAttemptMillis);
+            }
+            if (now >= flushAt || (due != null && !due.journaled)) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    // Keep the records buffered and try again with the next batch
+                    journalDirtySinceMillis = now;
+                    flushAt = now + Math.max(1000, flushDelayMillis);
+                }
+            }
+            if (due != null) {
+                return due;
+            }
+            long wakeAt = Math.min(nextDue, journalBuffer.size() > 0 ? flushAt : Long.MAX_VALUE);
+            try {
+                if (wakeAt == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(Math.max(1, wakeAt - now));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One attempt at {@code upload}, streaming its file through {@code buffer}
+     */
+    private void send(Upload upload, byte[] buffer) {
+        HttpURLConnection connection = null;
+        int status = -1;
+        String error;
+        long retryAfterMillis = -1;
+        try {
+            connection = (HttpURLConnection) URI.create(upload.url).toURL().openConnection();
+            connection.setRequestMethod(upload.method);
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setFixedLengthStreamingMode(upload.bytes);
+            connection.setRequestProperty("Content-Type", upload.contentType);
+            for (Map.Entry<String, String> header : upload.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            synchronized (this) {
+                if (currentCancelled || !running) {
+                    return;
+                }
+                currentConnection = connection;
+                for (Map.Entry<String, String> header : sessionHeaders.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            listener.onProgress(upload, 0);
+            long sent = 0;
+            long lastProgress = System.currentTimeMillis();
+            try (InputStream in = new FileInputStream(upload.file);
+                 OutputStream out = connection.getOutputStream()) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                    sent += read;
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        listener.onProgress(upload, sent);
+                    }
+                }
+            }
+            listener.onProgress(upload, sent);
+
+            status = connection.getResponseCode();
+            if (status >= 200 && status < 300) {
+                // The server has the file: a response body cut short changes nothing
+                try {
+                    drain(connection.getInputStream(), buffer);
+                } catch (IOException ignored) {
+                    // Only costs the connection's reuse
+                }
+                completed(upload, status);
+                return;
+            }
+            error = "HTTP " + status + errorBody(connection, buffer);
+            retryAfterMillis = retryAfter(connection);
+        } catch (IOException e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+        if (status == 401 || status == 403
+                || (status == 400 && error.toLowerCase(Locale.ROOT).contains("jwt"))) {
+            refused(upload, error);
+            return;
+        }
+        failed(upload, error, status < 0 || status == 408 || status == 429 || status >= 500, retryAfterMillis);
+    }
+
+    /**
+     * The server refused the credentials: park the job until new ones are set
+     */
+    private void refused(Upload upload, String error) {
+        synchronized (this) {
+            if (currentCancelled || !running || find(upload.id) == null) {
+                return;
+            }
+            upload.attempts++;
+            upload.lastError = error;
+            upload.nextAttemptMillis = AWAITING_CREDENTIALS;
+            appendAttempt(upload);
+        }
+        listener.onFailed(upload, error, true);
+    }
+
+    private void completed(Upload upload, int status) {
+        synchronized (this) {
+            if (!remove(upload)) {
+                return;
+            }
+        }
+        listener.onCompleted(upload, status);
+    }
+
+    private void failed(Upload upload, String error, boolean retryable, long retryAfterMillis) {
+        boolean willRetry;
+        synchronized (this) {
+            if (currentCancelled || !running || find(upload.id) == null) {
+                // Cancelled or stopped mid-upload: not the job's fault
+                return;
+            }
+            upload.attempts++;
+            upload.lastError = error;
+            willRetry = retryable && (maxAttempts == 0 || upload.attempts < maxAttempts);
+            if (willRetry) {
+                upload.nextAttemptMillis = System.currentTimeMillis() + backoff(upload.attempts, retryAfterMillis);
+                appendAttempt(upload);
+            } else {
+                remove(upload);
+            }
+        }
+        listener.onFailed(upload, error, willRetry);
+    }
+
+    /**
+     * Exponential delay with jitter in [delay/2, delay], or the server's
+     * Retry-After when longer
+     */
+    private long backoff(int attempts, long retryAfterMillis) {
+        long delay = baseDelayMillis << Math.min(20, attempts - 1);
+        delay = Math.min(maxDelayMillis, delay);
+        delay = delay / 2 + (long) (jitter.nextDouble() * (delay / 2 + 1));
+        return Math.max(delay, Math.min(retryAfterMillis, maxDelayMillis));
+    }
+
+    /**
+     * Remove a job, journal it and delete its data (holding the lock)
+     */
+    private boolean remove(Upload upload) {
+        if (!uploads.remove(upload)) {
+            return false;
+        }
+        upload.file.delete();
+        record(RECORD_REMOVE, upload.id);
+        return true;
+    }
+
+    private Upload find(String id) {
+        for (Upload upload : uploads) {
+            if (upload.id.equals(id)) {
+                return upload;
+            }
+        }
+        return null;
+    }
+
+    private void appendAdd(Upload upload) throws IOException {
+        startRecord(RECORD_ADD, upload.id);
+        writeAdd(journalOut, upload);
+    }
+
+    private void appendAttempt(Upload upload) {
+        record(RECORD_ATTEMPT, upload.id);
+        try {
+            journalOut.writeInt(upload.attempts);
+            journalOut.writeLong(upload.nextAttemptMillis);
+        } catch (IOException e) {
+            // In-memory stream
+        }
+    }
+
+    private void record(byte type, String id) {
+        try {
+            startRecord(type, id);
+        } catch (IOException e) {
+            // In-memory stream
+        }
+    }
+
+    private void startRecord(byte type, String id) throws IOException {
+        if (journalBuffer.size() == 0) {
+            journalDirtySinceMillis = System.currentTimeMillis();
+        }
+        journalOut.writeByte(type);
+        journalOut.writeUTF(id);
+    }
+
+    private static void writeAdd(DataOutputStream out, Upload upload) throws IOException {
+        out.writeUTF(upload.url);
+        out.writeUTF(upload.method);
+        out.writeUTF(upload.contentType);
+        out.writeShort(upload.headers.size());
+        for (Map.Entry<String, String> header : upload.headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        out.writeUTF(upload.tag);
+        out.writeLong(upload.bytes);
+        out.writeLong(upload.createdMillis);
+    }
+
+    /**
+     * Replay the journal (a torn last record is ignored), rewrite it with the
+     * live jobs only and delete data files without a job
+     */
+    private void restore() throws IOException {
+        Map<String, Upload> live = new LinkedHashMap<>();
+        if (journalFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(journalFile)))) {
+                while (true) {
+                    byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    try {
+                        String id = in.readUTF();
+                        if (type == RECORD_ADD) {
+                            live.put(id, readAdd(in, id));
+                        } else if (type == RECORD_ATTEMPT) {
+                            int attempts = in.readInt();
+                            long next = in.readLong();
+                            Upload upload = live.get(id);
+                            if (upload != null) {
+                                upload.attempts = attempts;
+                                upload.nextAttemptMillis = next;
+                            }
+                        } else if (type == RECORD_REMOVE) {
+                            live.remove(id);
+                        } else {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        Set<String> files = new HashSet<>();
+        for (Upload upload : new ArrayList<>(live.values())) {
+            if (upload.file.isFile() && upload.file.length() == upload.bytes) {
+                files.add(upload.file.getName());
+                upload.journaled = true;
+                uploads.add(upload);
+            }
+        }
+        File[] existing = dir.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                if (file.getName().endsWith(DATA_SUFFIX) && !files.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+        // Compact: one ADD (and ATTEMPT) per live job
+        File compacted = new File(dir, JOURNAL + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(compacted)) {
+            DataOutputStream out = new DataOutputStream(file);
+            for (Upload upload : uploads) {
+                out.writeByte(RECORD_ADD);
+                out.writeUTF(upload.id);
+                writeAdd(out, upload);
+                if (upload.attempts > 0) {
+                    out.writeByte(RECORD_ATTEMPT);
+                    out.writeUTF(upload.id);
+                    out.writeInt(upload.attempts);
+                    out.writeLong(upload.nextAttemptMillis);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!compacted.renameTo(journalFile)) {
+            throw new IOException("Cannot replace " + journalFile);
+        }
+    }
+
+    private Upload readAdd(DataInputStream in, String id) throws IOException {
+        String url = in.readUTF();
+        String method = in.readUTF();
+        String contentType = in.readUTF();
+        int headerCount = in.readShort();
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+        String tag = in.readUTF();
+        long bytes = in.readLong();
+        long created = in.readLong();
+        return new Upload(id, url, method, contentType, headers, tag, bytes, created,
+                new File(dir, id + DATA_SUFFIX));
+    }
+
+    /**
+     * Copy through the channels, no user-space buffer
+     */
+    private static long copy(File source, File target) throws IOException {
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel channel = out.getChannel();
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, channel);
+            }
+            out.getFD().sync();
+            return size;
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        }
+    }
+
+    private static void drain(InputStream in, byte[] buffer) throws IOException {
+        try {
+            while (in.read(buffer) > 0) {
+                // Let the connection be reused
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String errorBody(HttpURLConnection connection, byte[] buffer) {
+        InputStream in = connection.getErrorStream();
+        if (in == null) {
+            return "";
+        }
+        try {
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            String body = new String(buffer, 0, length, "UTF-8").trim();
+            return body.isEmpty() ? "" : ": " + body.substring(0, Math.min(ERROR_BODY_CHARS, body.length()));
+        } catch (IOException e) {
+            return "";
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Retry-After in seconds, or -1
+     */
+    private static long retryAfter(HttpURLConnection connection) {
+        String value = connection.getHeaderField("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim()) * 1000L;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
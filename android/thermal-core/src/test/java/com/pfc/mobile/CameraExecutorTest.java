@@ -0,0 +1,150 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CameraExecutorTest {
+
+    private CameraExecutor executor;
+    private final List<Object> results = new CopyOnWriteArrayList<>();
+    private final List<Exception> errors = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        executor = new CameraExecutor("camera-test", new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void pendingCallsUnderOneKeyShareOneRun() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            executor.submit("capture", blockingJob("frame"), callback(delivered));
+        }
+        release.countDown();
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(3, results.size());
+        for (Object result : results) {
+            assertEquals("frame", result);
+        }
+        assertEquals(2, executor.getCoalescedCount());
+    }
+
+    @Test
+    public void errorsReachEveryCoalescedCaller() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(2);
+        final CountDownLatch started = new CountDownLatch(1);
+        CameraExecutor.Job<String> failing = new CameraExecutor.Job<String>() {
+            @Override
+            public String call() throws Exception {
+                runs.incrementAndGet();
+                started.countDown();
+                release.await();
+                throw new IllegalStateException("camera gone");
+            }
+        };
+        executor.submit("open", failing, callback(delivered));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // Joins the run already in progress
+        executor.submit("open", failing, callback(delivered));
+        release.countDown();
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(2, errors.size());
+        assertEquals("camera gone", errors.get(1).getMessage());
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void finishedRunsAndNullKeysDoNotCoalesce() throws Exception {
+        release.countDown();
+        CountDownLatch first = new CountDownLatch(1);
+        executor.submit("stats", blockingJob("a"), callback(first));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch next = new CountDownLatch(3);
+        executor.submit("stats", blockingJob("b"), callback(next));
+        executor.submit(null, blockingJob("c"), callback(next));
+        executor.submit(null, blockingJob("d"), callback(next));
+
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+        assertEquals(4, runs.get());
+        assertEquals(0, executor.getCoalescedCount());
+    }
+
+    @Test
+    public void executeAndWaitRunsInlineOnTheCameraThread() throws Exception {
+        final AtomicInteger inner = new AtomicInteger();
+        final boolean[] onCameraThread = new boolean[1];
+        boolean done = executor.executeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                onCameraThread[0] = executor.isCameraThread();
+                // Would deadlock if it were queued behind this task
+                executor.executeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        inner.incrementAndGet();
+                    }
+                }, 1000);
+            }
+        }, 5000);
+
+        assertTrue(done);
+        assertTrue(onCameraThread[0]);
+        assertEquals(1, inner.get());
+        assertFalse(executor.isCameraThread());
+    }
+
+    private CameraExecutor.Job<String> blockingJob(final String value) {
+        return new CameraExecutor.Job<String>() {
+            @Override
+            public String call() throws Exception {
+                runs.incrementAndGet();
+                release.await();
+                return value;
+            }
+        };
+    }
+
+    private CameraExecutor.Callback<String> callback(final CountDownLatch delivered) {
+        return new CameraExecutor.Callback<String>() {
+            @Override
+            public void onResult(String value) {
+                results.add(value);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(Exception error) {
+                errors.add(error);
+                delivered.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.pfc.mobile.CameraStateMachine.State;
+
+public class CameraStateMachineTest {
+
+    private CameraStateMachine machine;
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        machine = new CameraStateMachine(new CameraStateMachine.Listener() {
+            @Override
+            public void onStateChanged(State previous, State state, String reason) {
+                events.add(previous + "->" + state + ":" + reason);
+            }
+        });
+    }
+
+    @Test
+    public void connectsThroughPermissionAndTheFirstFrame() {
+        assertEquals(State.DETACHED, machine.getState());
+        assertTrue(machine.transition(State.PERMISSION_PENDING, "attached"));
+        assertTrue(machine.transition(State.OPENING, "granted"));
+        assertFalse(machine.isStreaming());
+
+        assertTrue(machine.onFrame(System.nanoTime()));
+        assertTrue(machine.isStreaming());
+        assertTrue(machine.getLastTimeToFirstFrameNanos() >= 0);
+        assertEquals(3, events.size());
+        assertEquals("DETACHED->PERMISSION_PENDING:attached", events.get(0));
+        assertTrue(events.get(2).startsWith("OPENING->STREAMING:first frame after "));
+    }
+
+    @Test
+    public void illegalAndRepeatedTransitionsAreRefusedSilently() {
+        assertFalse("not opened yet", machine.transition(State.STREAMING, "frame"));
+        assertFalse("already there", machine.transition(State.DETACHED, "detach"));
+        assertTrue(machine.transition(State.PERMISSION_PENDING, "attached"));
+        assertFalse(machine.transition(State.PERMISSION_PENDING, "attached again"));
+        assertFalse(machine.transition(State.STREAMING, "late frame"));
+
+        assertEquals(State.PERMISSION_PENDING, machine.getState());
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void onlyTheFirstFrameCompletesTheConnection() {
+        assertFalse("no frame expected while detached", machine.onFrame(1));
+        machine.transition(State.OPENING, "open");
+        assertTrue(machine.onFrame(System.nanoTime()));
+        assertFalse(machine.onFrame(System.nanoTime()));
+        assertFalse(machine.onFrame(System.nanoTime()));
+        assertEquals(2, events.size());
+
+        // A reopen waits for a new first frame
+        assertTrue(machine.transition(State.OPENING, "reopen"));
+        assertFalse(machine.isStreaming());
+        assertTrue(machine.onFrame(System.nanoTime()));
+        assertEquals(4, events.size());
+    }
+
+    @Test
+    public void errorsAreKeptAndRecoverable() {
+        machine.transition(State.OPENING, "open");
+        assertTrue(machine.transition(State.ERROR, "open failed: -1"));
+        assertEquals("open failed: -1", machine.getLastError());
+        assertFalse("a late frame does not revive it", machine.onFrame(System.nanoTime()));
+        assertEquals(State.ERROR, machine.getState());
+        assertFalse(machine.transition(State.STREAMING, "frame"));
+
+        assertTrue(machine.transition(State.OPENING, "retry"));
+        assertTrue(machine.transition(State.DETACHED, "detached"));
+        assertEquals("open failed: -1", machine.getLastError());
+    }
+}
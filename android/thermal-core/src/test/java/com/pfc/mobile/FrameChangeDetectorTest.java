@@ -0,0 +1,74 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameChangeDetectorTest {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    private final RadiometricConverter converter = new RadiometricConverter();
+    private SyntheticThermalSource source;
+    private FrameChangeDetector detector;
+    private ThermalFrame frame;
+    private FrameStats stats;
+
+    @Before
+    public void setUp() {
+        source = new SyntheticThermalSource(WIDTH, HEIGHT, 25f, 7);
+        source.setBackground(22f);
+        source.setNoise(0.3f);
+        detector = new FrameChangeDetector(WIDTH, HEIGHT, FrameChangeDetector.DEFAULT_BLOCK_SIZE);
+        detector.setThreshold(0.5f, converter.getRawPerKelvin());
+        frame = new ThermalFrame(WIDTH, HEIGHT);
+        stats = new FrameStats();
+    }
+
+    @Test
+    public void sensorNoiseIsNotAChange() {
+        assertTrue("first frame is always a change", next());
+        for (int i = 0; i < 50; i++) {
+            assertFalse("noise-only frame " + i, next());
+        }
+    }
+
+    @Test
+    public void smallHotSpotIsAChange() {
+        next();
+        // A hot spot a few pixels wide, far below the frame size
+        source.addHotspot(90f, 2f, 100f, 80f, 0f, 1f);
+        assertTrue(next());
+        assertFalse("new reference", next());
+    }
+
+    @Test
+    public void slowDriftAddsUpAgainstTheReference() {
+        next();
+        int changes = 0;
+        for (int i = 1; i <= 20; i++) {
+            // 0.1 °C per frame: each step is below the threshold, the total is not
+            source.setBackground(22f + i * 0.1f);
+            if (next()) {
+                changes++;
+            }
+        }
+        assertTrue("drift of 2 °C went unnoticed", changes >= 2);
+        assertTrue("every small step counted as a change", changes <= 5);
+    }
+
+    @Test
+    public void resetForcesAChange() {
+        next();
+        detector.reset();
+        assertTrue(next());
+    }
+
+    private boolean next() {
+        source.renderFrame(frame);
+        converter.convert(frame, null, stats);
+        return detector.update(frame, stats);
+    }
+}
@@ -0,0 +1,122 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FrameUpscalerTest {
+
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final int LOW_RAW = 1000;
+
+    private final ParallelStripes stripes = new ParallelStripes(3, "upscaler-test");
+    private final FrameUpscaler upscaler = new FrameUpscaler(stripes);
+
+    @After
+    public void tearDown() {
+        stripes.shutdown();
+    }
+
+    @Test
+    public void rawInterpolationMatchesFloatReference() {
+        ThermalFrame frame = randomFrame(new Random(1));
+        // Palette index == raw - LOW_RAW over a 255 raw span
+        int[] lut = new int[256];
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = i;
+        }
+        for (int scale = 1; scale <= FrameUpscaler.MAX_SCALE; scale++) {
+            int[] out = new int[WIDTH * scale * HEIGHT * scale];
+            upscaler.upscaleRaw(frame, scale, lut, LOW_RAW, LOW_RAW + 255, -1, 0, out);
+            for (int oy = 0; oy < HEIGHT * scale; oy++) {
+                for (int ox = 0; ox < WIDTH * scale; ox++) {
+                    double expected = reference(frame, scale, ox, oy) - LOW_RAW;
+                    // 7-bit weights: one palette step plus rounding at 3x
+                    assertEquals("scale " + scale + " at " + ox + "," + oy,
+                            expected, out[oy * WIDTH * scale + ox], 1.5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void isothermMarksPixelsAboveThreshold() {
+        ThermalFrame frame = new ThermalFrame(WIDTH, HEIGHT);
+        java.util.Arrays.fill(frame.raw, (short) LOW_RAW);
+        frame.raw[10 * WIDTH + 10] = (short) (LOW_RAW + 200);
+        int[] lut = new int[256];
+        int scale = 3;
+        int[] out = new int[WIDTH * scale * HEIGHT * scale];
+        upscaler.upscaleRaw(frame, scale, lut, LOW_RAW, LOW_RAW + 255, LOW_RAW + 100, 0xFF00FF00, out);
+
+        int marked = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == 0xFF00FF00) {
+                marked++;
+            }
+        }
+        // The hot pixel's own block is marked, its surroundings fade below the threshold
+        assertEquals(0xFF00FF00, out[(10 * scale + 1) * WIDTH * scale + 10 * scale + 1]);
+        assertTrue(marked >= 1 && marked < 4 * scale * scale);
+    }
+
+    @Test
+    public void argbInterpolationMatchesFloatReferencePerChannel() {
+        Random random = new Random(2);
+        int[] argb = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt();
+        }
+        int scale = 4;
+        int[] out = new int[WIDTH * scale * HEIGHT * scale];
+        upscaler.upscaleArgb(argb, WIDTH, HEIGHT, scale, out);
+
+        ThermalFrame channel = new ThermalFrame(WIDTH, HEIGHT);
+        for (int shift = 0; shift < 32; shift += 8) {
+            for (int i = 0; i < argb.length; i++) {
+                channel.raw[i] = (short) ((argb[i] >>> shift) & 0xFF);
+            }
+            for (int oy = 0; oy < HEIGHT * scale; oy++) {
+                for (int ox = 0; ox < WIDTH * scale; ox++) {
+                    double expected = reference(channel, scale, ox, oy);
+                    int actual = (out[oy * WIDTH * scale + ox] >>> shift) & 0xFF;
+                    assertEquals(expected, actual, 2.0);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedScale() {
+        upscaler.upscaleArgb(new int[WIDTH * HEIGHT * 25], WIDTH, HEIGHT, 5, new int[WIDTH * HEIGHT * 25]);
+    }
+
+    private static ThermalFrame randomFrame(Random random) {
+        ThermalFrame frame = new ThermalFrame(WIDTH, HEIGHT);
+        for (int i = 0; i < frame.raw.length; i++) {
+            frame.raw[i] = (short) (LOW_RAW + random.nextInt(256));
+        }
+        return frame;
+    }
+
+    /**
+     * Pixel-center aligned bilinear sample in floating point
+     */
+    private static double reference(ThermalFrame frame, int scale, int ox, int oy) {
+        double sx = Math.max(0, (ox + 0.5) / scale - 0.5);
+        double sy = Math.max(0, (oy + 0.5) / scale - 0.5);
+        int x0 = Math.min((int) sx, frame.width - 1);
+        int y0 = Math.min((int) sy, frame.height - 1);
+        int x1 = Math.min(x0 + 1, frame.width - 1);
+        int y1 = Math.min(y0 + 1, frame.height - 1);
+        double fx = x0 == x1 ? 0 : sx - x0;
+        double fy = y0 == y1 ? 0 : sy - y0;
+        double top = frame.rawAt(x0, y0) * (1 - fx) + frame.rawAt(x1, y0) * fx;
+        double bottom = frame.rawAt(x0, y1) * (1 - fx) + frame.rawAt(x1, y1) * fx;
+        return top * (1 - fy) + bottom * fy;
+    }
+}
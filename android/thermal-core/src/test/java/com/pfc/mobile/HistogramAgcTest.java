@@ -0,0 +1,115 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistogramAgcTest {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    private final RadiometricConverter converter = new RadiometricConverter();
+    private HistogramAgc agc;
+    private ThermalFrame frame;
+
+    @Before
+    public void setUp() {
+        agc = new HistogramAgc();
+        agc.configure(1f, 99f, false, 0);
+        frame = new ThermalFrame(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void percentileSpanIgnoresAFewHotPixels() {
+        // 20-30 C ramp across the width, plus 50 pixels at 400 C
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame.raw[y * WIDTH + x] = (short) converter.toRaw(20f + 10f * x / (WIDTH - 1));
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            frame.raw[i * 37] = (short) converter.toRaw(400f);
+        }
+        next(0);
+
+        assertEquals(20.1f, converter.toCelsius(agc.getLowRaw()), 0.3f);
+        assertEquals(29.9f, converter.toCelsius(agc.getHighRaw()), 0.3f);
+    }
+
+    @Test
+    public void smoothingMovesTheSpanGradually() {
+        agc.configure(0f, 100f, false, 1000);
+        fill(20f);
+        next(0);
+        int start = agc.getHighRaw();
+
+        fill(40f);
+        next(100);
+        int afterOne = agc.getHighRaw();
+        assertTrue("moved up", afterOne > start);
+        assertTrue("not all the way", afterOne < converter.toRaw(39f));
+
+        for (int i = 2; i <= 100; i++) {
+            next(100L * i);
+        }
+        assertEquals(40f, converter.toCelsius(agc.getHighRaw()), 0.5f);
+    }
+
+    @Test
+    public void sameFrameIsCountedOnce() {
+        agc.configure(0f, 100f, false, 1000);
+        fill(20f);
+        next(0);
+        fill(40f);
+        next(100);
+        int high = agc.getHighRaw();
+        // A capture rendering the stream's frame again
+        agc.update(frame);
+        assertEquals(high, agc.getHighRaw());
+    }
+
+    @Test
+    public void equalizationIsMonotonicAndSpreadsTheBackground() {
+        agc.configure(0f, 100f, true, 0);
+        // Three quarters of the frame at 20 C, the rest a 20-60 C ramp
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                float celsius = y < HEIGHT * 3 / 4 ? 20f : 20f + 40f * x / (WIDTH - 1);
+                frame.raw[y * WIDTH + x] = (short) converter.toRaw(celsius);
+            }
+        }
+        next(0);
+
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = i;
+        }
+        int[] binArgb = new int[HistogramAgc.BINS];
+        agc.mapBins(palette, binArgb);
+        for (int b = 1; b < HistogramAgc.BINS; b++) {
+            assertTrue("monotonic at bin " + b, binArgb[b] >= binArgb[b - 1]);
+        }
+        assertEquals(0, binArgb[0]);
+        assertEquals(255, binArgb[HistogramAgc.BINS - 1]);
+
+        // The plateau keeps the 20 C background from taking most of the palette
+        int background = binArgb[converter.toRaw(20f) >>> 2];
+        assertTrue("background index " + background, background < 128);
+        int mid = binArgb[converter.toRaw(40f) >>> 2];
+        assertTrue("ramp keeps contrast: " + mid, mid - background > 64);
+    }
+
+    private void fill(float celsius) {
+        Arrays.fill(frame.raw, (short) converter.toRaw(celsius));
+    }
+
+    private void next(long millis) {
+        frame.sequence++;
+        frame.timestampNanos = millis * 1000000L;
+        agc.update(frame);
+    }
+}
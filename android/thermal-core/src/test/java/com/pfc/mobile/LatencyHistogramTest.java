@@ -0,0 +1,47 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndMonotonic() {
+        for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+            long low = LatencyHistogram.lowerBoundNanos(i);
+            assertTrue(low > LatencyHistogram.lowerBoundNanos(i - 1));
+            assertEquals(i, LatencyHistogram.bucketOf(low));
+            assertEquals(i - 1, LatencyHistogram.bucketOf(low - 1));
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1..1000 µs, uniformly
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000L, histogram.getMaxNanos());
+        assertEquals(500500.0, histogram.getMeanNanos(), 1e-6);
+        assertEquals(500000, histogram.percentileNanos(50), 500000 * 0.125);
+        assertEquals(990000, histogram.percentileNanos(99), 990000 * 0.125);
+        assertTrue(histogram.percentileNanos(100) <= histogram.getMaxNanos());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentileNanos(50));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE / 2));
+        assertEquals(Long.MAX_VALUE / 2, histogram.percentileNanos(100));
+    }
+}
@@ -0,0 +1,75 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RadiometricSnapshotTest {
+
+    private static final long NOW = 1700000000000L;
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshots").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void writtenSnapshotsReadBack() throws IOException {
+        ThermalFrame frame = new ThermalFrame(8, 4);
+        for (int i = 0; i < frame.raw.length; i++) {
+            frame.raw[i] = (short) (4700 + i);
+        }
+        frame.sequence = 12;
+        FrameStats stats = new FrameStats();
+        stats.max = 42f;
+        File file = new File(dir, "a" + RadiometricSnapshot.EXTENSION);
+        RadiometricSnapshot.write(file, frame, stats, 16f, NOW, "{\"site\":1}", null);
+
+        RadiometricSnapshot read = RadiometricSnapshot.read(file);
+        assertArrayEquals(frame.raw, read.frame.raw);
+        assertEquals(12, read.frame.sequence);
+        assertEquals(42f, read.stats.max, 0f);
+        assertEquals("{\"site\":1}", read.metadataJson);
+    }
+
+    @Test
+    public void pruneDropsExpiredThenOldestBeyondTheCount() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            touch("snap_" + i + RadiometricSnapshot.EXTENSION, NOW - i * DAY);
+        }
+        touch("keep.txt", NOW - 30 * DAY);
+
+        // Older than 4 days: snap_5; beyond the newest 3: snap_3, snap_4
+        assertEquals(3, RadiometricSnapshot.prune(dir, 3, 4 * DAY, NOW));
+        for (int i = 0; i < 6; i++) {
+            assertEquals("snap_" + i, i < 3, new File(dir, "snap_" + i + RadiometricSnapshot.EXTENSION).exists());
+        }
+        assertTrue("other files are left alone", new File(dir, "keep.txt").exists());
+    }
+
+    private void touch(String name, long modified) throws IOException {
+        File file = new File(dir, name);
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(modified));
+    }
+}
@@ -0,0 +1,64 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TemperatureMatrixCodecTest {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    private final RadiometricConverter converter = new RadiometricConverter();
+    private TemperatureMatrixCodec codec;
+    private ThermalFrame frame;
+
+    @Before
+    public void setUp() {
+        SyntheticThermalSource source = new SyntheticThermalSource(WIDTH, HEIGHT, 25f, 3);
+        source.setGradient(4f);
+        source.setNoise(0.3f);
+        source.addHotspot(180f, 12f, WIDTH / 2f, HEIGHT / 2f, 0f, 1f);
+        frame = new ThermalFrame(WIDTH, HEIGHT);
+        source.renderFrame(frame);
+        codec = new TemperatureMatrixCodec(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void everyEncodingDecodesToThePointTemperatures() throws Exception {
+        int[] flagSets = {0, TemperatureMatrixCodec.DELTA, TemperatureMatrixCodec.DEFLATE,
+                TemperatureMatrixCodec.DELTA | TemperatureMatrixCodec.DEFLATE};
+        int[] decoded = new int[WIDTH * HEIGHT];
+        for (int flags : flagSets) {
+            int length = codec.encode(frame, converter.getRawPerKelvin(), flags);
+            TemperatureMatrixCodec.decode(codec.buffer(), length, flags, decoded);
+            for (int i = 0; i < decoded.length; i += 7) {
+                float expected = converter.toCelsius(frame.raw[i] & 0xFFFF);
+                assertEquals("flags " + flags + " pixel " + i, expected,
+                        TemperatureMatrixCodec.toCelsius(decoded[i]), 0.006f);
+            }
+        }
+    }
+
+    @Test
+    public void deltaAndDeflateFitInAFewTensOfKilobytes() {
+        int plain = codec.encode(frame, converter.getRawPerKelvin(), 0);
+        assertEquals(WIDTH * HEIGHT * 2, plain);
+        int deflated = codec.encode(frame, converter.getRawPerKelvin(), TemperatureMatrixCodec.DEFLATE);
+        int both = codec.encode(frame, converter.getRawPerKelvin(),
+                TemperatureMatrixCodec.DELTA | TemperatureMatrixCodec.DEFLATE);
+        assertTrue("delta helps: " + both + " vs " + deflated, both < deflated);
+        assertTrue("compressed to " + both, both < 48 * 1024);
+    }
+
+    @Test
+    public void valuesAboveTheRangeSaturate() throws Exception {
+        frame.raw[0] = (short) 0xFFFF;
+        int length = codec.encode(frame, converter.getRawPerKelvin(), TemperatureMatrixCodec.DELTA);
+        int[] decoded = new int[WIDTH * HEIGHT];
+        TemperatureMatrixCodec.decode(codec.buffer(), length, TemperatureMatrixCodec.DELTA, decoded);
+        assertEquals(0xFFFF, decoded[0]);
+        assertEquals(converter.toCelsius(frame.raw[1] & 0xFFFF), TemperatureMatrixCodec.toCelsius(decoded[1]), 0.006f);
+    }
+}
@@ -0,0 +1,275 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frame pipeline end to end on the JVM: source -> triple buffer ->
+ * processor -> stages, without a camera or a device.
+ */
+public class ThermalPipelineTest {
+
+    // TC001 sensor resolution
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    private FrameTripleBuffer buffer;
+    private RadiometricConverter converter;
+    private FrameProcessor processor;
+    private ThermalFrameSource source;
+    private File recording;
+
+    private final ThermalFrameSource.Sink sink = new ThermalFrameSource.Sink() {
+        @Override
+        public void onFrame(byte[] data, int offset, long timestampNanos) {
+            if (buffer.publish(data, offset, timestampNanos)) {
+                processor.signal();
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        buffer = new FrameTripleBuffer(WIDTH, HEIGHT);
+        converter = new RadiometricConverter();
+        processor = new FrameProcessor(buffer, converter);
+    }
+
+    @After
+    public void tearDown() {
+        if (source != null) {
+            source.stop();
+        }
+        processor.stop();
+        if (recording != null) {
+            recording.delete();
+        }
+    }
+
+    @Test
+    public void syntheticSourceIsProcessedAtFullRateWithLowLatency() throws Exception {
+        SyntheticThermalSource synthetic = new SyntheticThermalSource(WIDTH, HEIGHT, 50f, 42);
+        synthetic.setNoise(0.3f);
+        synthetic.addHotspot(150f, 10f, WIDTH / 2f, HEIGHT / 2f, 30f, 4f);
+        source = synthetic;
+
+        LatencyStage latency = new LatencyStage(50);
+        processor.addStage(latency);
+        processor.start();
+        source.start(sink);
+
+        assertTrue("50 frames within 3 s", latency.done.await(3, TimeUnit.SECONDS));
+        source.stop();
+        processor.stop();
+
+        long emitted = synthetic.getEmittedCount();
+        assertTrue("processed " + processor.getProcessedCount() + " of " + emitted,
+                processor.getProcessedCount() >= emitted * 9 / 10);
+        assertTrue("p95 latency " + latency.percentileMillis(95) + " ms", latency.percentileMillis(95) < 20);
+        assertEquals(150f, latency.lastMax, 1f);
+        assertEquals(0, processor.getStageErrorCount());
+    }
+
+    @Test
+    public void unpacedPipelineSustainsMoreThanCameraRate() throws Exception {
+        SyntheticThermalSource synthetic = new SyntheticThermalSource(WIDTH, HEIGHT, 0f, 7);
+        synthetic.setGradient(5f);
+        synthetic.setNoise(0.5f);
+        synthetic.addHotspot(300f, 8f, 60f, 60f, 20f, 2f);
+        source = synthetic;
+
+        RoiEngine roiEngine = new RoiEngine(WIDTH, HEIGHT, converter);
+        roiEngine.put(roiEngine.rect("rect", 10, 10, 100, 80));
+        roiEngine.put(roiEngine.ellipse("ellipse", 100, 50, 120, 100));
+        processor.addStage(roiEngine);
+        FireWatchMonitor.Config config = new FireWatchMonitor.Config();
+        config.maxTemperature = 200f;
+        config.riseRate = 5f;
+        processor.addStage(new FireWatchMonitor(config, roiEngine, new FireWatchMonitor.Listener() {
+            @Override
+            public void onAlarm(FireWatchMonitor.Alarm alarm) {
+            }
+        }));
+
+        processor.start();
+        long start = System.nanoTime();
+        source.start(sink);
+        Thread.sleep(1000);
+        source.stop();
+        processor.stop();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double fps = processor.getProcessedCount() / seconds;
+        assertTrue("processed " + fps + " fps", fps > 25);
+        assertEquals(0, processor.getStageErrorCount());
+    }
+
+    @Test
+    public void fireWatchTripsOnSyntheticHotspot() throws Exception {
+        SyntheticThermalSource synthetic = new SyntheticThermalSource(WIDTH, HEIGHT, 0f, 3);
+        synthetic.addHotspot(260f, 6f, 200f, 40f, 0f, 0f);
+        source = synthetic;
+
+        FireWatchMonitor.Config config = new FireWatchMonitor.Config();
+        config.maxTemperature = 200f;
+        final List<FireWatchMonitor.Alarm> alarms = new ArrayList<>();
+        final CountDownLatch tripped = new CountDownLatch(1);
+        processor.addStage(new FireWatchMonitor(config, null, new FireWatchMonitor.Listener() {
+            @Override
+            public void onAlarm(FireWatchMonitor.Alarm alarm) {
+                synchronized (alarms) {
+                    alarms.add(alarm);
+                }
+                tripped.countDown();
+            }
+        }));
+        processor.start();
+        source.start(sink);
+
+        assertTrue(tripped.await(2, TimeUnit.SECONDS));
+        synchronized (alarms) {
+            FireWatchMonitor.Alarm alarm = alarms.get(0);
+            assertTrue(alarm.tripped);
+            assertEquals(FireWatchMonitor.KIND_ABSOLUTE, alarm.kind);
+            assertEquals(260f, alarm.temperature, 1f);
+            assertEquals(200, alarm.x);
+            assertEquals(40, alarm.y);
+            // A steady hotspot trips once
+            assertEquals(1, alarms.size());
+        }
+    }
+
+    @Test
+    public void replaySourceReproducesRecordedFrames() throws Exception {
+        recording = File.createTempFile("pipeline", ".pfcr");
+        SyntheticThermalSource generator = new SyntheticThermalSource(WIDTH, HEIGHT, 25f, 11);
+        generator.setNoise(1f);
+        generator.addHotspot(90f, 15f, 128f, 96f, 40f, 1f);
+
+        int frames = 60;
+        List<short[]> expected = new ArrayList<>();
+        ThermalRecorder recorder = new ThermalRecorder(recording, WIDTH, HEIGHT,
+                converter.getRawPerKelvin(), ThermalRecorder.DEFAULT_KEYFRAME_INTERVAL);
+        ThermalFrame frame = new ThermalFrame(WIDTH, HEIGHT);
+        for (int i = 0; i < frames; i++) {
+            generator.renderFrame(frame);
+            frame.timestampNanos = i * 40000000L;
+            recorder.append(frame);
+            expected.add(frame.raw.clone());
+        }
+        recorder.close();
+
+        ReplayThermalSource replay = new ReplayThermalSource(recording, 0f, false);
+        source = replay;
+        final List<short[]> received = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(frames);
+        replay.start(new ThermalFrameSource.Sink() {
+            @Override
+            public void onFrame(byte[] data, int offset, long timestampNanos) {
+                short[] raw = new short[WIDTH * HEIGHT];
+                for (int i = 0; i < raw.length; i++) {
+                    int b = offset + i * 2;
+                    raw[i] = (short) ((data[b] & 0xFF) | (data[b + 1] << 8));
+                }
+                synchronized (received) {
+                    received.add(raw);
+                }
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // The source stops by itself at the end of a non-looping recording
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (replay.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(replay.isRunning());
+        assertNull(replay.getFailure());
+        replay.close();
+
+        synchronized (received) {
+            assertEquals(frames, received.size());
+            for (int i = 0; i < frames; i++) {
+                assertTrue("frame " + i, Arrays.equals(expected.get(i), received.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void replayHonoursRecordedTiming() throws Exception {
+        recording = File.createTempFile("pipeline", ".pfcr");
+        ThermalRecorder recorder = new ThermalRecorder(recording, WIDTH, HEIGHT,
+                converter.getRawPerKelvin(), ThermalRecorder.DEFAULT_KEYFRAME_INTERVAL);
+        SyntheticThermalSource generator = new SyntheticThermalSource(WIDTH, HEIGHT, 25f, 5);
+        ThermalFrame frame = new ThermalFrame(WIDTH, HEIGHT);
+        for (int i = 0; i < 11; i++) {
+            generator.renderFrame(frame);
+            frame.timestampNanos = i * 20000000L;
+            recorder.append(frame);
+        }
+        recorder.close();
+
+        // 200 ms recorded, played at double speed
+        ReplayThermalSource replay = new ReplayThermalSource(recording, 2f, false);
+        source = replay;
+        final long[] times = new long[11];
+        final CountDownLatch done = new CountDownLatch(times.length);
+        replay.start(new ThermalFrameSource.Sink() {
+            private int count;
+
+            @Override
+            public void onFrame(byte[] data, int offset, long timestampNanos) {
+                times[count++] = timestampNanos;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        replay.close();
+
+        double elapsedMillis = (times[times.length - 1] - times[0]) / 1e6;
+        assertEquals(100, elapsedMillis, 40);
+    }
+
+    /**
+     * Publish-to-stage latency of the first {@code frames} processed frames
+     */
+    private static class LatencyStage implements FrameProcessor.Stage {
+        final long[] latencies;
+        final CountDownLatch done = new CountDownLatch(1);
+        int count;
+        volatile float lastMax;
+
+        LatencyStage(int frames) {
+            latencies = new long[frames];
+        }
+
+        @Override
+        public void onFrame(ThermalFrame frame, float[] celsius, FrameStats stats) {
+            if (count < latencies.length) {
+                latencies[count++] = System.nanoTime() - frame.timestampNanos;
+                lastMax = stats.max;
+                if (count == latencies.length) {
+                    done.countDown();
+                }
+            }
+        }
+
+        double percentileMillis(int percentile) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int index = Math.min(sorted.length - 1, sorted.length * percentile / 100);
+            return sorted[index] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrendStoreTest {
+
+    private static final long START = 1700000000000L;
+
+    private TrendStore store;
+    private final FrameStats stats = new FrameStats();
+
+    @Before
+    public void setUp() {
+        store = new TrendStore(null);
+    }
+
+    @Test
+    public void theLastMinuteIsKeptAtFrameRate() {
+        for (int i = 0; i < 100; i++) {
+            record(START + 40L * i, 20f + i * 0.1f);
+        }
+        TrendStore.Trend trend = store.query(0, Long.MAX_VALUE, 1000);
+        assertEquals(0, trend.resolutionMillis);
+        assertEquals(100, trend.sourcePoints);
+
+        TrendStore.Series mean = series(trend, TrendStore.SERIES_MEAN, null);
+        assertEquals(100, mean.times.length);
+        assertEquals(START + 40L * 99, mean.times[99]);
+        assertEquals(29.9f, mean.values[99], 0.001f);
+    }
+
+    @Test
+    public void olderRangesComeFromSecondBucketsThatKeepExtremes() {
+        // 5 minutes at 25 fps, one hot frame at 2:00.520
+        long spike = START + 120520;
+        for (long t = START; t < START + 300000; t += 40) {
+            stats.min = 18f;
+            stats.max = t == spike ? 95f : 30f;
+            stats.mean = 24f;
+            stats.center = 25f;
+            store.record(t, stats);
+        }
+
+        TrendStore.Trend trend = store.query(START, START + 300000, 1000);
+        assertEquals(1000, trend.resolutionMillis);
+        assertEquals(300, trend.sourcePoints);
+        TrendStore.Series max = series(trend, TrendStore.SERIES_MAX, null);
+        assertEquals(95f, peak(max), 0f);
+        assertEquals(24f, series(trend, TrendStore.SERIES_MEAN, null).values[10], 0.001f);
+
+        // A window inside the last minute is read at frame rate
+        TrendStore.Trend recent = store.query(START + 290000, START + 300000, 1000);
+        assertEquals(0, recent.resolutionMillis);
+        assertEquals(250, recent.sourcePoints);
+    }
+
+    @Test
+    public void longSessionsStayBoundedAndDownsampleToMaxPoints() {
+        // 3 hours at 10 fps: only the 10 s ring reaches back to the start
+        long end = START + 3 * 3600000L;
+        long spike = START + 5000000;
+        for (long t = START; t < end; t += 100) {
+            record(t, t == spike ? 120f : 20f + (float) Math.sin(t / 60000.0));
+        }
+
+        TrendStore.Trend trend = store.query(START, end, 200);
+        assertEquals(10000, trend.resolutionMillis);
+        assertEquals(1080, trend.sourcePoints);
+        TrendStore.Series max = series(trend, TrendStore.SERIES_MAX, null);
+        assertEquals(200, max.times.length);
+        assertEquals(START, max.times[0]);
+        assertEquals(end - 10000, max.times[199]);
+        assertEquals("LTTB keeps the spike", 120f, peak(max), 0f);
+    }
+
+    @Test
+    public void zonesAreRecordedUnderTheirIds() {
+        RadiometricConverter converter = new RadiometricConverter();
+        RoiEngine zones = new RoiEngine(16, 16, converter);
+        zones.put(zones.rect("door", 0, 0, 4, 4));
+        store = new TrendStore(zones);
+
+        ThermalFrame frame = new ThermalFrame(16, 16);
+        for (int i = 0; i < 10; i++) {
+            Arrays.fill(frame.raw, (short) converter.toRaw(30f + i));
+            frame.sequence = i + 1;
+            zones.onFrame(frame, null, stats);
+            record(START + 100L * i, 20f);
+        }
+        zones.remove("door");
+        record(START + 1000, 20f);
+
+        TrendStore.Trend trend = store.query(0, Long.MAX_VALUE, 100);
+        TrendStore.Series doorMax = series(trend, TrendStore.SERIES_MAX, "door");
+        assertEquals("removed zones keep their history", 10, doorMax.times.length);
+        assertEquals(39f, doorMax.values[9], 0.1f);
+        assertNotNull(series(trend, TrendStore.SERIES_MEAN, "door"));
+
+        store.reset();
+        assertEquals(0, store.query(0, Long.MAX_VALUE, 100).series.size());
+    }
+
+    @Test
+    public void lttbKeepsEndpointsAndThePeak() {
+        int n = 1000;
+        long[] x = new long[n];
+        float[] y = new float[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = i == 437 ? 50f : (i % 7) * 0.01f;
+        }
+        int[] kept = new int[n];
+        int count = Lttb.select(x, y, n, 20, kept);
+        assertEquals(20, count);
+        assertEquals(0, kept[0]);
+        assertEquals(n - 1, kept[count - 1]);
+        boolean peak = false;
+        for (int i = 0; i < count; i++) {
+            peak |= kept[i] == 437;
+            if (i > 0) {
+                assertTrue(kept[i] > kept[i - 1]);
+            }
+        }
+        assertTrue(peak);
+    }
+
+    private void record(long t, float value) {
+        stats.min = value - 5f;
+        stats.max = value;
+        stats.mean = value;
+        stats.center = value;
+        store.record(t, stats);
+    }
+
+    private static TrendStore.Series series(TrendStore.Trend trend, String name, String zone) {
+        for (TrendStore.Series s : trend.series) {
+            if (s.name.equals(name) && (zone == null ? s.zone == null : zone.equals(s.zone))) {
+                return s;
+            }
+        }
+        fail("no series " + name + " " + zone);
+        return null;
+    }
+
+    private static float peak(TrendStore.Series s) {
+        float peak = Float.NEGATIVE_INFINITY;
+        for (float v : s.values) {
+            peak = Math.max(peak, v);
+        }
+        return peak;
+    }
+}
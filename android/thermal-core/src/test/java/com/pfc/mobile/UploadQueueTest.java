@@ -0,0 +1,293 @@
+package com.pfc.mobile;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Against a local stand-in for the storage endpoint
+ */
+public class UploadQueueTest {
+
+    private HttpServer server;
+    private File dir;
+    private File source;
+    private UploadQueue queue;
+
+    // What the server saw
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<Long> receivedBytes = new CopyOnWriteArrayList<>();
+    private final List<Long> receivedCrcs = new CopyOnWriteArrayList<>();
+    private final List<String> contentLengths = new CopyOnWriteArrayList<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private volatile int failFirst;
+    private volatile int failStatus = 503;
+    private volatile boolean stallResponse;
+
+    // What the listener saw
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<Long> progress = new CopyOnWriteArrayList<>();
+    private final List<Boolean> retries = new CopyOnWriteArrayList<>();
+    private volatile int completedStatus;
+
+    private final UploadQueue.Listener listener = new UploadQueue.Listener() {
+        @Override
+        public void onProgress(UploadQueue.Upload upload, long sentBytes) {
+            progress.add(sentBytes);
+        }
+
+        @Override
+        public void onCompleted(UploadQueue.Upload upload, int status) {
+            completedStatus = status;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(UploadQueue.Upload upload, String error, boolean willRetry) {
+            retries.add(willRetry);
+            if (!willRetry) {
+                done.countDown();
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/storage/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int n = requests.incrementAndGet();
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[8192];
+                long total = 0;
+                try (InputStream in = exchange.getRequestBody()) {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        crc.update(buffer, 0, read);
+                        total += read;
+                    }
+                }
+                contentLengths.add(String.valueOf(exchange.getRequestHeaders().getFirst("Content-Length")));
+                authorizations.add(String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")));
+                int status = n <= failFirst ? failStatus : 200;
+                if (status == 200) {
+                    receivedBytes.add(total);
+                    receivedCrcs.add(crc.getValue());
+                }
+                byte[] body = "{}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                if (stallResponse) {
+                    // Accepted, but the body never comes
+                    exchange.getResponseBody().flush();
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        dir = Files.createTempDirectory("uploads").toFile();
+        source = File.createTempFile("capture", ".jpg");
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.stop();
+        }
+        server.stop(0);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+        source.delete();
+    }
+
+    @Test
+    public void streamsTheFileWithItsLengthAndHeaders() throws Exception {
+        long crc = writeSource(3 * 1024 * 1024 + 17);
+        queue = new UploadQueue(dir, listener);
+        queue.enqueue(source, url("a.jpg"), "POST", "image/jpeg",
+                Collections.singletonMap("Authorization", "Bearer token"), "verification:42");
+        // The queue owns a copy: the capture slot may be reused right away
+        writeSource(10);
+        queue.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(200, completedStatus);
+        assertEquals(Long.valueOf(3 * 1024 * 1024 + 17), receivedBytes.get(0));
+        assertEquals(Long.valueOf(crc), receivedCrcs.get(0));
+        // Fixed-length streaming, not buffered and not chunked
+        assertEquals(String.valueOf(3 * 1024 * 1024 + 17), contentLengths.get(0));
+        assertEquals("Bearer token", authorizations.get(0));
+        assertEquals(Long.valueOf(0), progress.get(0));
+        assertEquals(Long.valueOf(3 * 1024 * 1024 + 17), progress.get(progress.size() - 1));
+        assertEquals(0, queue.size());
+        assertEquals(0, dataFiles());
+    }
+
+    @Test
+    public void serverErrorsAreRetriedWithBackoff() throws Exception {
+        failFirst = 2;
+        long crc = writeSource(5000);
+        queue = new UploadQueue(dir, listener);
+        queue.setRetryPolicy(20, 100, 0);
+        queue.enqueue(source, url("b.jpg"), "PUT", "image/jpeg", null, null);
+        queue.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(200, completedStatus);
+        assertEquals(3, requests.get());
+        assertEquals(2, retries.size());
+        assertTrue(retries.get(0) && retries.get(1));
+        assertEquals(Long.valueOf(crc), receivedCrcs.get(0));
+    }
+
+    @Test
+    public void clientErrorDropsTheJob() throws Exception {
+        failFirst = 1;
+        failStatus = 400;
+        writeSource(100);
+        queue = new UploadQueue(dir, listener);
+        queue.setRetryPolicy(20, 100, 0);
+        queue.enqueue(source, url("c.jpg"), "POST", null, null, null);
+        queue.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(false), retries);
+        assertEquals(1, requests.get());
+        assertEquals(0, queue.size());
+        assertEquals(0, dataFiles());
+    }
+
+    @Test
+    public void anAcceptedUploadCompletesEvenIfItsResponseTimesOut() throws Exception {
+        stallResponse = true;
+        writeSource(1000);
+        queue = new UploadQueue(dir, listener);
+        queue.setRetryPolicy(20, 100, 0);
+        queue.setTimeouts(1000, 200);
+        queue.enqueue(source, url("f.jpg"), "POST", "image/jpeg", null, null);
+        queue.start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(200, completedStatus);
+        assertTrue(retries.isEmpty());
+        assertEquals(1, requests.get());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void expiredCredentialsWaitForNewOnesAndAreNeverJournaled() throws Exception {
+        failFirst = 1;
+        failStatus = 401;
+        writeSource(1000);
+        queue = new UploadQueue(dir, listener);
+        queue.setRetryPolicy(20, 100, 0);
+        queue.requireSessionHeader("Authorization");
+        UploadQueue.Upload upload = queue.enqueue(source, url("e.jpg"), "POST", "image/jpeg", null, null);
+        queue.start();
+
+        // Nothing goes out without a token
+        Thread.sleep(200);
+        assertEquals(0, requests.get());
+
+        queue.setSessionHeader("Authorization", "Bearer expired");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (retries.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList(true), retries);
+        assertTrue(upload.isAwaitingCredentials());
+        Thread.sleep(200);
+        assertEquals("parked, not retried on a timer", 1, requests.get());
+
+        queue.flush();
+        String journal = new String(Files.readAllBytes(new File(dir, UploadQueue.JOURNAL).toPath()), "ISO-8859-1");
+        assertFalse(journal.contains("expired"));
+
+        queue.setSessionHeader("Authorization", "Bearer fresh");
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(200, completedStatus);
+        assertEquals(Arrays.asList("Bearer expired", "Bearer fresh"), authorizations);
+    }
+
+    @Test
+    public void pendingJobsSurviveARestart() throws Exception {
+        long crc = writeSource(20000);
+        UploadQueue first = new UploadQueue(dir, listener);
+        UploadQueue.Upload upload = first.enqueue(source, url("d.jpg"), "POST", "image/jpeg",
+                Collections.singletonMap("x-upsert", "true"), "{\"verificationId\":7}");
+        first.flush();
+        // A torn record after it, and a data file whose journal record never made it
+        try (FileOutputStream out = new FileOutputStream(new File(dir, UploadQueue.JOURNAL), true)) {
+            out.write(new byte[]{1, 0, 9, 'x'});
+        }
+        new FileOutputStream(new File(dir, "orphan.upload")).close();
+
+        queue = new UploadQueue(dir, listener);
+        List<UploadQueue.Upload> restored = queue.getUploads();
+        assertEquals(1, restored.size());
+        assertEquals(upload.id, restored.get(0).id);
+        assertEquals("{\"verificationId\":7}", restored.get(0).tag);
+        assertEquals("true", restored.get(0).headers.get("x-upsert"));
+        assertEquals(1, dataFiles());
+
+        queue.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(crc), receivedCrcs.get(0));
+    }
+
+    private String url(String name) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/storage/" + name;
+    }
+
+    private long writeSource(int bytes) throws IOException {
+        byte[] data = new byte[bytes];
+        new Random(bytes).nextBytes(data);
+        Files.write(source.toPath(), data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private int dataFiles() {
+        int count = 0;
+        for (String name : dir.list()) {
+            if (name.endsWith(".upload")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
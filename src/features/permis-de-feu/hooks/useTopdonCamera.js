@@ -1,13 +1,58 @@
 // src/hooks/useTopdonCamera.js
 
-import { useState, useEffect, useCallback } from 'react';
+import { useState, useEffect, useCallback, useMemo } from 'react';
+import { Capacitor } from '@capacitor/core';
 import TopdonThermal from '../plugins/topdon-thermal';
 
-export const useTopdonCamera = () => {
+// Events from every attached camera share the same listeners: keep the ones
+// for this hook's camera (cameraId, or slot 0 = the default camera)
+const isOwnEvent = (cameraId, event) =>
+  cameraId ? event.cameraId === cameraId : !event.slot;
+
+// Unpack the "matrix" of a capture or stream frame (16-bit centi-Kelvin,
+// optionally delta-encoded and deflated) into per-pixel temperatures
+export const decodeTemperatureMatrix = async (matrix) => {
+  let bytes;
+  if (matrix.path) {
+    const response = await fetch(Capacitor.convertFileSrc(matrix.path), { cache: 'no-store' });
+    bytes = new Uint8Array(await response.arrayBuffer());
+  } else {
+    bytes = Uint8Array.from(atob(matrix.data), (c) => c.charCodeAt(0));
+  }
+  if (matrix.compression === 'deflate') {
+    const inflated = new Blob([bytes]).stream().pipeThrough(new DecompressionStream('deflate'));
+    bytes = new Uint8Array(await new Response(inflated).arrayBuffer());
+  }
+  const { width, height } = matrix;
+  // Android is little-endian, so the bytes are usable as is
+  const centiKelvin = new Uint16Array(bytes.buffer, bytes.byteOffset, width * height);
+  if (matrix.delta) {
+    let previous = 0;
+    for (let i = 0; i < centiKelvin.length; i++) {
+      previous = (previous + centiKelvin[i]) & 0xffff;
+      centiKelvin[i] = previous;
+    }
+  }
+  return {
+    width,
+    height,
+    centiKelvin,
+    temperatureAt: (x, y) => centiKelvin[y * width + x] / 100 - 273.15,
+  };
+};
+
+export const useTopdonCamera = (cameraId = null) => {
+  // Options every call targets this camera with; none for the default camera
+  const camera = useMemo(() => (cameraId ? { cameraId } : {}), [cameraId]);
   const [isInitialized, setIsInitialized] = useState(false);
   const [isReady, setIsReady] = useState(false);
+  const [cameraState, setCameraState] = useState('DETACHED');
   const [isCapturing, setIsCapturing] = useState(false);
   const [error, setError] = useState(null);
+  const [isStreaming, setIsStreaming] = useState(false);
+  const [latestFrame, setLatestFrame] = useState(null);
+  const [isFireWatching, setIsFireWatching] = useState(false);
+  const [lastAlarm, setLastAlarm] = useState(null);
 
   // Initialize camera on mount
   useEffect(() => {
@@ -19,7 +64,7 @@ export const useTopdonCamera = () => {
           console.log('Topdon camera initialized:', result.message);
           
           // Check if camera is ready
-          const readyResult = await TopdonThermal.isReady();
+          const readyResult = await TopdonThermal.isReady(camera);
           setIsReady(readyResult.ready);
         }
       } catch (err) {
@@ -32,30 +77,39 @@ export const useTopdonCamera = () => {
 
     // Cleanup on unmount
     return () => {
-      TopdonThermal.release().catch(console.error);
+      TopdonThermal.release(camera).catch(console.error);
     };
-  }, []);
+  }, [camera]);
 
-  // Check camera readiness periodically
+  // Readiness follows the native connection state machine; no polling
   useEffect(() => {
     if (!isInitialized) return;
 
-    const checkReady = async () => {
-      try {
-        const result = await TopdonThermal.isReady();
-        setIsReady(result.ready);
-      } catch (err) {
-        console.error('Failed to check camera readiness:', err);
+    const handlePromise = TopdonThermal.addListener('cameraStateChanged', (event) => {
+      if (!isOwnEvent(cameraId, event)) return;
+      setCameraState(event.state);
+      setIsReady(event.ready);
+      if (event.state === 'ERROR' && event.error) {
+        setError(event.error);
       }
-    };
+    });
 
-    // Check every 2 seconds
-    const interval = setInterval(checkReady, 2000);
-    return () => clearInterval(interval);
-  }, [isInitialized]);
+    // Catch up on any change made before the listener was attached
+    TopdonThermal.getCameraState(camera)
+      .then((event) => {
+        setCameraState(event.state);
+        setIsReady(event.ready);
+      })
+      .catch((err) => console.error('Failed to get camera state:', err));
+
+    return () => {
+      handlePromise.then((handle) => handle.remove()).catch(console.error);
+    };
+  }, [isInitialized, camera, cameraId]);
 
   // Capture image
-  const captureImage = useCallback(async () => {
+  // options: captureImage plugin options, e.g. { matrix: true }
+  const captureImage = useCallback(async (options = {}) => {
     if (!isReady) {
       setError('Camera not ready. Please connect Topdon TC001.');
       return null;
@@ -65,7 +119,10 @@ export const useTopdonCamera = () => {
     setError(null);
 
     try {
-      const result = await TopdonThermal.captureImage();
+      const result = await TopdonThermal.captureImage({ ...options, ...camera });
+      if (result.matrix) {
+        result.temperatures = await decodeTemperatureMatrix(result.matrix);
+      }
       console.log('Image captured:', {
         width: result.width,
         height: result.height,
@@ -80,7 +137,139 @@ export const useTopdonCamera = () => {
     } finally {
       setIsCapturing(false);
     }
-  }, [isReady]);
+  }, [isReady, camera]);
+
+  // Live stream: frames are pushed by the plugin as "thermalFrame" events
+  useEffect(() => {
+    if (!isStreaming) return;
+
+    const handlePromise = TopdonThermal.addListener('thermalFrame', async (frame) => {
+      if (!isOwnEvent(cameraId, frame)) return;
+      if (frame.unchanged) {
+        // Static scene: fresh stats, same image
+        setLatestFrame((previous) => ({ ...previous, ...frame }));
+        return;
+      }
+      // File transport: frames rotate through a few cache files, so add the
+      // frame id to bust the WebView image cache
+      const src = frame.path
+        ? `${Capacitor.convertFileSrc(frame.path)}?v=${frame.frameId}`
+        : frame.image
+          ? `data:${frame.mimeType || 'image/jpeg'};base64,${frame.image}`
+          : null;
+      const temperatures = frame.matrix ? await decodeTemperatureMatrix(frame.matrix) : null;
+      setLatestFrame({ ...frame, src, temperatures });
+    });
+
+    return () => {
+      handlePromise.then((handle) => handle.remove()).catch(console.error);
+    };
+  }, [isStreaming, cameraId]);
+
+  // Acknowledge each frame once React has rendered it, so the native side
+  // only sends the next one when the WebView can keep up
+  useEffect(() => {
+    if (!latestFrame) return;
+    TopdonThermal.ackFrame({ ...camera, frameId: latestFrame.frameId }).catch(console.error);
+  }, [latestFrame, camera]);
+
+  const startStream = useCallback(async ({
+    fps = 10,
+    format = 'image',
+    transport = 'file',
+    encoding = 'jpeg',
+    quality = 80,
+    // °C; frames that moved less come back as "unchanged" ticks, no image
+    changeThreshold = 0.3,
+    // Per-pixel temperatures on each frame (latestFrame.temperatures)
+    matrix = false,
+  } = {}) => {
+    try {
+      await TopdonThermal.startStream({
+        ...camera, fps, format, transport, encoding, quality, changeThreshold, matrix,
+      });
+      setIsStreaming(true);
+    } catch (err) {
+      const errorMsg = err.message || String(err);
+      console.error('Failed to start stream:', errorMsg);
+      setError(errorMsg);
+    }
+  }, [camera]);
+
+  const stopStream = useCallback(async () => {
+    try {
+      await TopdonThermal.stopStream(camera);
+    } catch (err) {
+      console.error('Failed to stop stream:', err);
+    } finally {
+      setIsStreaming(false);
+      setLatestFrame(null);
+    }
+  }, [camera]);
+
+  // Fire watch runs natively on every frame; only trips/clears come back
+  useEffect(() => {
+    if (!isFireWatching) return;
+
+    const handlePromise = TopdonThermal.addListener('thermalAlarm', (alarm) => {
+      if (!isOwnEvent(cameraId, alarm)) return;
+      setLastAlarm(alarm);
+    });
+    // The watch can also end natively (notification action, camera released)
+    const stoppedPromise = TopdonThermal.addListener('fireWatchStopped', (event) => {
+      if (!isOwnEvent(cameraId, event)) return;
+      setIsFireWatching(false);
+    });
+
+    return () => {
+      handlePromise.then((handle) => handle.remove()).catch(console.error);
+      stoppedPromise.then((handle) => handle.remove()).catch(console.error);
+    };
+  }, [isFireWatching, cameraId]);
+
+  const startFireWatch = useCallback(async (options) => {
+    try {
+      const status = await TopdonThermal.startFireWatch({ ...camera, ...options });
+      setLastAlarm(null);
+      setIsFireWatching(true);
+      return status;
+    } catch (err) {
+      const errorMsg = err.message || String(err);
+      console.error('Failed to start fire watch:', errorMsg);
+      setError(errorMsg);
+      return null;
+    }
+  }, [camera]);
+
+  const stopFireWatch = useCallback(async () => {
+    try {
+      await TopdonThermal.stopFireWatch(camera);
+    } catch (err) {
+      console.error('Failed to stop fire watch:', err);
+    } finally {
+      setIsFireWatching(false);
+    }
+  }, [camera]);
+
+  // Temperature history of the session, downsampled natively:
+  // { from, to, maxPoints } -> { series: { min, max, mean, center },
+  // zones: { [id]: { max, mean } } }, each series { t: [ms], v: [°C] }
+  const getTrend = useCallback(async (options = {}) => {
+    try {
+      return await TopdonThermal.getTrend({ ...camera, ...options });
+    } catch (err) {
+      console.error('Failed to get trend:', err);
+      return null;
+    }
+  }, [camera]);
+
+  const resetTrend = useCallback(async () => {
+    try {
+      await TopdonThermal.resetTrend(camera);
+    } catch (err) {
+      console.error('Failed to reset trend:', err);
+    }
+  }, [camera]);
 
   // Get connected devices (for debugging)
   const getConnectedDevices = useCallback(async () => {
@@ -96,9 +285,20 @@ export const useTopdonCamera = () => {
   return {
     isInitialized,
     isReady,
+    cameraState,
     isCapturing,
+    isStreaming,
+    latestFrame,
+    isFireWatching,
+    lastAlarm,
     error,
     captureImage,
+    startStream,
+    stopStream,
+    startFireWatch,
+    stopFireWatch,
+    getTrend,
+    resetTrend,
     getConnectedDevices,
   };
 };
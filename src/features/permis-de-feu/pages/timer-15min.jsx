@@ -6,6 +6,7 @@ import { useIsMobile } from "@/hooks/use-mobile";
 import { PhotoUploader } from "../components/PhotoUploader";
 import { Capacitor } from '@capacitor/core';
 import TopdonThermal from '../plugins/topdon-thermal';
+import { queueThermalCapture, linkThermalPhoto, discardThermalCapture } from '../utils/thermal-uploads';
 
 
   const FormComponent = ({
@@ -299,6 +300,9 @@ const PauseDejeunerTimer = () => {
   const [loading, setLoading] = useState(true);
 
 const [thermalImage, setThermalImage] = useState('');
+// Uploads queued when thermalImage was captured, with its radiometric
+// snapshotPath (see queueThermalCapture)
+const [thermalCapture, setThermalCapture] = useState(null);
 const [cameraReady, setCameraReady] = useState(false);
 const [cameraError, setCameraError] = useState('');
 
@@ -1235,25 +1239,39 @@ if (entreprise?.id) {
   };
 
 
-// 👇 add this helper function somewhere above handleCaptureThermal
-const waitForCameraReady = async (timeoutMs = 4000) => {
-  const start = Date.now();
-
-  while (Date.now() - start < timeoutMs) {
-    try {
-      const { ready } = await TopdonThermal.isReady();
-      console.log('TopdonThermal isReady() ->', ready);
-      if (ready) return true;
-    } catch (e) {
-      console.warn('isReady() error:', e);
-    }
-
-    // wait a bit before checking again
-    await new Promise(res => setTimeout(res, 300));
-  }
+// Resolves once the default camera is STREAMING (true), or on ERROR or
+// timeout (false): follows the native state machine instead of polling
+const waitForCameraReady = (timeoutMs = 4000) => new Promise((resolve) => {
+  let settled = false;
+  let handle = null;
+  let timer = null;
+  const settle = (ready) => {
+    if (settled) return;
+    settled = true;
+    clearTimeout(timer);
+    if (handle) handle.remove().catch(console.error);
+    resolve(ready);
+  };
+  const onState = (event) => {
+    if (event.state === 'STREAMING') settle(true);
+    else if (event.state === 'ERROR') settle(false);
+  };
 
-  return false;
-};
+  timer = setTimeout(() => settle(false), timeoutMs);
+  // Listen first so a change between the two calls is not missed
+  TopdonThermal.addListener('cameraStateChanged', (event) => {
+    if (!event.slot) onState(event);
+  }).then((h) => {
+    handle = h;
+    if (settled) h.remove().catch(console.error);
+    return TopdonThermal.getCameraState();
+  }).then((event) => {
+    if (event) onState(event);
+  }).catch((e) => {
+    console.warn('Camera state unavailable:', e);
+    settle(false);
+  });
+});
 
 
 //new
@@ -1277,8 +1295,18 @@ const handleCaptureThermal = async () => {
     }
 
     // 3) NOW it should be connected → capture
-    const result = await TopdonThermal.captureImage();
-    setThermalImage(`data:image/png;base64,${result.image}`);
+    // Radiometric snapshot on disk; only paths and stats cross the bridge
+    const result = await TopdonThermal.captureImage({
+      radiometric: true,
+      quality: 95,
+      metadata: { source: 'timer-15min', capturedAt: new Date().toISOString() },
+    });
+    // Uploaded from now on, while the form is being filled in; the ring
+    // file behind result.path may be reused by later captures
+    const capture = await queueThermalCapture({ path: result.path, snapshotPath: result.snapshotPath });
+    if (thermalCapture) discardThermalCapture(thermalCapture);
+    setThermalImage(Capacitor.convertFileSrc(result.path));
+    setThermalCapture(capture);
     alert(`✅ Capturé! Temp: ${result.centerTemperature}°C`);
   } catch (error) {
     console.error('TopdonThermal capture error', error);
@@ -1415,10 +1443,18 @@ const submitVerificationForm = async (date, type, equipement, intervenant, resul
         }
 
       }
-if (thermalImage) {
+if (thermalImage && thermalCapture && Capacitor.isNativePlatform()) {
+  // Queued at capture time and retried until the site has signal; the
+  // photo row is inserted once the file is in Storage
+  await linkThermalPhoto({ fileName: thermalCapture.fileName, verificationId: newVerificationId });
+
+  setThermalImage('');
+  setThermalCapture(null);
+} else if (thermalImage) {
   const response = await fetch(thermalImage);
   const blob = await response.blob();
-  const thermalFileName = `${newVerificationId}/thermal_${Date.now()}.png`;
+  const extension = blob.type === 'image/png' ? 'png' : 'jpg';
+  const thermalFileName = `${newVerificationId}/thermal_${Date.now()}.${extension}`;
   
   await supabase.storage.from('verification-images').upload(thermalFileName, blob);
   const { data: { publicUrl } } = supabase.storage.from('verification-images').getPublicUrl(thermalFileName);
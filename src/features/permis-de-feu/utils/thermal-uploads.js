@@ -0,0 +1,200 @@
+// utils/thermal-uploads.js
+// Native upload queue glue: credentials only live in memory on the native
+// side and are refreshed from the Supabase session, so queued captures
+// never carry a token that will have expired by the time the site has signal.
+// Captures are queued as soon as they are taken: the JPEG and, next to it
+// under the same name, the radiometric snapshot (.pfcs). The photo's
+// verification_photos row is inserted once the JPEG is in Storage and the
+// verification it belongs to has been saved, whichever comes last.
+
+import { Capacitor } from '@capacitor/core';
+import { supabase, supabaseUrl, supabaseKey } from '@/features/auth/utils/supabase-client';
+import TopdonThermal from '../plugins/topdon-thermal';
+
+const BUCKET = 'verification-images';
+const THERMAL_PHOTO = 'verification-thermal';
+const THERMAL_SNAPSHOT = 'verification-thermal-snapshot';
+// Captures whose row is not in yet: { [fileName]: { uploaded, verificationId, createdAt } },
+// kept across restarts
+const PENDING_ROWS_KEY = 'pendingThermalPhotoRows';
+// Captures never saved with a verification are forgotten after a week
+const UNLINKED_MAX_AGE_MS = 7 * 24 * 3600 * 1000;
+
+let started = false;
+
+const setAuthToken = (session) =>
+  TopdonThermal.setAuthToken({ token: session?.access_token ?? null })
+    .catch((err) => console.error('Failed to pass the token to the upload queue:', err));
+
+const parseTag = (tag) => {
+  try {
+    const job = JSON.parse(tag);
+    return job?.kind === THERMAL_PHOTO || job?.kind === THERMAL_SNAPSHOT ? job : null;
+  } catch {
+    return null;
+  }
+};
+
+const readPendingRows = () => {
+  try {
+    const rows = JSON.parse(localStorage.getItem(PENDING_ROWS_KEY));
+    return rows && !Array.isArray(rows) ? rows : {};
+  } catch {
+    return {};
+  }
+};
+
+const writePendingRows = (rows) => localStorage.setItem(PENDING_ROWS_KEY, JSON.stringify(rows));
+
+const updatePendingRow = (fileName, changes) => {
+  const rows = readPendingRows();
+  const row = { uploaded: false, verificationId: null, createdAt: Date.now(), ...rows[fileName], ...changes };
+  writePendingRows({ ...rows, [fileName]: row });
+  return row;
+};
+
+const removePendingRow = (fileName) => {
+  const { [fileName]: _removed, ...rows } = readPendingRows();
+  writePendingRows(rows);
+};
+
+// Insert the row unless it exists: a finished upload may be reported twice
+const insertPhotoRow = async ({ verificationId, fileName }) => {
+  const { data: { publicUrl } } = supabase.storage.from(BUCKET).getPublicUrl(fileName);
+  const { data: existing, error: selectError } = await supabase
+    .from('verification_photos')
+    .select('id')
+    .eq('photo_url', publicUrl)
+    .limit(1);
+  if (selectError) throw selectError;
+  if (existing.length > 0) return;
+
+  const { error } = await supabase.from('verification_photos').insert({
+    photo_url: publicUrl,
+    verification_id: verificationId,
+    is_thermal: true,
+  });
+  if (error) throw error;
+};
+
+// Insert the row once the file is uploaded and the verification is known;
+// a failed insert stays pending and is retried on the next start
+const savePhotoRow = async (fileName) => {
+  const row = readPendingRows()[fileName];
+  if (!row?.uploaded || !row.verificationId) return;
+  try {
+    await insertPhotoRow({ fileName, verificationId: row.verificationId });
+    removePendingRow(fileName);
+  } catch (err) {
+    console.error('Failed to save the thermal photo row, will retry:', err);
+  }
+};
+
+const retryPendingRows = async () => {
+  for (const [fileName, row] of Object.entries(readPendingRows())) {
+    if (!row.verificationId && Date.now() - row.createdAt > UNLINKED_MAX_AGE_MS) {
+      removePendingRow(fileName);
+    } else {
+      await savePhotoRow(fileName);
+    }
+  }
+};
+
+const onUploadCompleted = (event) => {
+  const job = parseTag(event.tag);
+  // Snapshots have no row; discarded captures are no longer pending
+  if (job?.kind !== THERMAL_PHOTO || !readPendingRows()[job.fileName]) return;
+  updatePendingRow(job.fileName, { uploaded: true });
+  savePhotoRow(job.fileName);
+};
+
+const onUploadFailed = (event) => {
+  // Transient errors and expired tokens are retried natively
+  if (event.willRetry) return;
+  const job = parseTag(event.tag);
+  if (!job) return;
+  console.error('Thermal capture upload dropped:', job.fileName, event.error);
+  if (job.kind === THERMAL_PHOTO) removePendingRow(job.fileName);
+  const what = job.kind === THERMAL_PHOTO
+    ? "La photo thermique n'a pas pu être envoyée."
+    : "Le relevé radiométrique n'a pas pu être envoyé.";
+  alert(`❌ ${what}\n\n${event.error}`);
+};
+
+// Call once at startup. Completion and failure events that fired while no
+// page was listening are retained natively and replayed to these listeners.
+export const initThermalUploads = () => {
+  if (started || !Capacitor.isNativePlatform()) return;
+  started = true;
+
+  TopdonThermal.addListener('uploadCompleted', onUploadCompleted);
+  TopdonThermal.addListener('uploadFailed', onUploadFailed);
+
+  supabase.auth.getSession().then(({ data: { session } }) => {
+    setAuthToken(session);
+    if (session) retryPendingRows();
+  });
+  // Sign-in, sign-out and every token refresh
+  supabase.auth.onAuthStateChange((event, session) => setAuthToken(session));
+};
+
+const enqueue = ({ path, fileName, contentType, kind }) =>
+  // The user's token is added natively when each attempt is sent (setAuthToken)
+  TopdonThermal.enqueueUpload({
+    path,
+    url: `${supabaseUrl}/storage/v1/object/${BUCKET}/${fileName}`,
+    contentType,
+    headers: {
+      apikey: supabaseKey,
+      'x-upsert': 'true',
+    },
+    tag: JSON.stringify({ kind, fileName }),
+  });
+
+// Queue a capture right after it is taken, before the verification exists:
+// path is the JPEG, snapshotPath the radiometric snapshot (both native
+// files, copied by the queue). Resolves with the handle for
+// linkThermalPhoto / discardThermalCapture: { fileName, snapshotPath, uploadIds }.
+export const queueThermalCapture = async ({ path, snapshotPath }) => {
+  const stem = `thermal/${Date.now()}_${Math.random().toString(36).slice(2, 8)}`;
+  const fileName = `${stem}.jpg`;
+  updatePendingRow(fileName, {});
+  const uploads = [enqueue({ path, fileName, contentType: 'image/jpeg', kind: THERMAL_PHOTO })];
+  if (snapshotPath) {
+    uploads.push(enqueue({
+      path: snapshotPath,
+      fileName: `${stem}.pfcs`,
+      contentType: 'application/octet-stream',
+      kind: THERMAL_SNAPSHOT,
+    }));
+  }
+  const queued = await Promise.allSettled(uploads);
+  const uploadIds = queued
+    .filter((outcome) => outcome.status === 'fulfilled')
+    .map((outcome) => outcome.value.uploadId);
+  const failure = queued.find((outcome) => outcome.status === 'rejected');
+  if (failure) {
+    // Half a capture is not worth keeping
+    await discardThermalCapture({ fileName, snapshotPath, uploadIds });
+    throw failure.reason;
+  }
+  return { fileName, snapshotPath, uploadIds };
+};
+
+// The verification was saved: its photo row goes in once the JPEG is uploaded
+export const linkThermalPhoto = async ({ fileName, verificationId }) => {
+  // Gone if its upload was dropped (the user was alerted)
+  if (!readPendingRows()[fileName]) return;
+  updatePendingRow(fileName, { verificationId });
+  await savePhotoRow(fileName);
+};
+
+// The capture was replaced or abandoned before being saved with a verification
+export const discardThermalCapture = async ({ fileName, snapshotPath, uploadIds }) => {
+  removePendingRow(fileName);
+  await Promise.all(uploadIds.map((uploadId) =>
+    TopdonThermal.cancelUpload({ uploadId }).catch(console.error)));
+  if (snapshotPath) {
+    await TopdonThermal.deleteSnapshot({ path: snapshotPath }).catch(console.error);
+  }
+};
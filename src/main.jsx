@@ -7,6 +7,9 @@ import { AuthProvider } from './features/auth/utils/auth-context'
 import { BrowserRouter, Route, Routes } from 'react-router-dom'
 import Navbar from './components/app-navbar'
 import Login from './features/auth/pages/login'
+import { initThermalUploads } from './features/permis-de-feu/utils/thermal-uploads'
+
+initThermalUploads()
 
 createRoot(document.getElementById('root')).render(
   <StrictMode>